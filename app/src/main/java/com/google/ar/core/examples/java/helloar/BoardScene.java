@@ -0,0 +1,284 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar;
+
+import android.opengl.Matrix;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+import com.google.ar.core.examples.java.helloar.model.Pinboard;
+import com.google.ar.core.examples.java.helloar.model.TileStreamer;
+import com.google.ar.core.examples.java.helloar.picking.GazePicker;
+import com.google.ar.core.examples.java.helloar.picking.HitTestMode;
+import com.google.ar.core.examples.java.helloar.picking.PickingService;
+import com.google.ar.core.examples.java.helloar.picking.PickingSnapshot;
+import com.google.ar.core.examples.java.helloar.picking.TapRingBuffer;
+import com.google.ar.core.examples.java.helloar.picking.TileDragController;
+import com.google.ar.core.examples.java.helloar.rendering.FrameArena;
+import com.google.ar.core.examples.java.helloar.rendering.ObjectRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.RenderQueue;
+import com.google.ar.core.examples.java.helloar.rendering.TileBatchRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.ViewFrustum;
+
+/**
+ * The part of a frame that needs no ARCore objects: handling the queued touches, streaming the
+ * tiles, culling, queueing the boards and their tiles, and the gaze highlight. The activity reads
+ * the camera and anchor poses from ARCore and hands them over as matrices. Must only be used on
+ * the GL thread.
+ */
+public class BoardScene {
+    private final ObjectRenderer mBoard;
+    private final ObjectRenderer[] mTiles;
+    private final Tile[] mTileIds;
+    private final TileBatchRenderer mTileBatchRenderer;
+    private final Pinboard mPinboard;
+    private final TileStreamer mTileStreamer;
+    private final PickingService mPickingService;
+    private final GazePicker mGazePicker;
+    private final TileDragController mTileDragController;
+
+    private final FrameArena mFrameArena;
+    private final ViewFrustum mViewFrustum;
+    private final RenderQueue mRenderQueue;
+
+    // Board to clip space transform of the last drawn anchor, used to drag tiles along the board.
+    private final float[] mBoardModelViewMatrix = new float[16];
+    private final float[] mBoardViewProjectionMatrix = new float[16];
+
+    private int mViewWidth;
+    private int mViewHeight;
+
+    /**
+     * @param board The renderer of the boards, drawn once per anchor.
+     * @param tiles The tiles that can be picked, in the order they are tested.
+     * @param tileIds The tile each renderer stands for, reported when it is picked.
+     * @param tileBatchRenderer Draws the tiles of every board together.
+     * @param pinboard The pinboard whose tiles are streamed in and out.
+     * @param tileStreamer Loads the tiles once the user comes close to a board.
+     * @param pickingService Resolves taps off the GL thread.
+     * @param gazePicker Picks the tile at the centre of the screen.
+     * @param frameArena Scratch of the frame, reset by the caller at its start.
+     * @param viewFrustum Culls what is out of view, and counts it.
+     * @param renderQueue Draws of the frame, executed by the caller.
+     */
+    public BoardScene(ObjectRenderer board, ObjectRenderer[] tiles, Tile[] tileIds,
+            TileBatchRenderer tileBatchRenderer, Pinboard pinboard, TileStreamer tileStreamer,
+            PickingService pickingService, GazePicker gazePicker, FrameArena frameArena,
+            ViewFrustum viewFrustum, RenderQueue renderQueue) {
+        mBoard = board;
+        mTiles = tiles;
+        mTileIds = tileIds;
+        mTileBatchRenderer = tileBatchRenderer;
+        mPinboard = pinboard;
+        mTileStreamer = tileStreamer;
+        mPickingService = pickingService;
+        mGazePicker = gazePicker;
+        mTileDragController = new TileDragController(tiles.length);
+        mFrameArena = frameArena;
+        mViewFrustum = viewFrustum;
+        mRenderQueue = renderQueue;
+    }
+
+    /** Selects how taps and drags are tested against the tiles. */
+    public void setHitTestMode(HitTestMode hitTestMode) {
+        mPickingService.setHitTestMode(hitTestMode);
+        mTileDragController.setHitTestMode(hitTestMode);
+    }
+
+    /** Records the size of the view, in pixels, which touches are given in. */
+    public void setViewportSize(int width, int height) {
+        mViewWidth = width;
+        mViewHeight = height;
+    }
+
+    /**
+     * Handles every touch of the batch against the tiles as they were drawn in the last frame.
+     * Taps are handed to the picking service in one snapshot, or dropped if both of its
+     * snapshots are still busy. Long presses grab a tile, which then follows the drag along the
+     * board until the finger is lifted.
+     *
+     * @param tracking Whether the camera is tracking. Without tracking the last frame's matrices
+     *     are stale, so only the end of a drag is handled, and the drag cannot get stuck.
+     */
+    public void handleTaps(TapRingBuffer.Batch taps, boolean tracking) {
+        PickingSnapshot snapshot = null;
+        for (int i = 0; i < taps.getCount(); i++) {
+            if (!tracking && taps.getKind(i) != TapRingBuffer.Kind.DRAG_END) {
+                continue;
+            }
+            float ndcX = toNormalizedX(taps.getX(i));
+            float ndcY = toNormalizedY(taps.getY(i));
+            switch (taps.getKind(i)) {
+                case SINGLE_TAP:
+                    if (snapshot == null) {
+                        snapshot = obtainPickingSnapshot();
+                    }
+                    if (snapshot != null) {
+                        snapshot.addTouch(ndcX, ndcY);
+                    }
+                    break;
+                case LONG_PRESS:
+                    mTileDragController.begin(mTiles, mBoardViewProjectionMatrix, ndcX, ndcY);
+                    break;
+                case DRAG_MOVE:
+                    if (mTileDragController.move(mBoardViewProjectionMatrix, ndcX, ndcY)) {
+                        mGazePicker.invalidate();
+                    }
+                    break;
+                case DRAG_END:
+                    mTileDragController.end();
+                    break;
+            }
+        }
+        if (snapshot != null) {
+            mPickingService.submit(snapshot);
+        }
+    }
+
+    /**
+     * Streams the tiles, then queues every board in view with its tiles and highlights the tile
+     * at the centre of the screen, applied from the next frame.
+     *
+     * @param cameraView A 4x4 view matrix, in column-major order.
+     * @param cameraPerspective A 4x4 projection matrix, in column-major order.
+     * @param cameraPosition The camera position in world space.
+     * @param anchorMatrices World matrices of the tracked anchors.
+     * @param anchorIds A number per anchor that stays the same while the anchor is kept, so that
+     *     every board keeps its own level of detail.
+     * @param anchorCount Number of tracked anchors.
+     * @param nowMillis The current time, e.g. from {@code SystemClock.uptimeMillis()}.
+     */
+    public void update(float[] cameraView, float[] cameraPerspective, float[] cameraPosition,
+            float[][] anchorMatrices, int[] anchorIds, int anchorCount, long nowMillis) {
+        // Stream the tiles in and out with the distance to the closest tracked board.
+        float boardDistance = Float.POSITIVE_INFINITY;
+        for (int a = 0; a < anchorCount; a++) {
+            boardDistance = Math.min(boardDistance, distance(cameraPosition, anchorMatrices[a]));
+        }
+        mTileStreamer.update(mPinboard, boardDistance, nowMillis);
+
+        float scaleFactor = 1.0f;
+        float[] tileModelMatrix = mFrameArena.matrix();
+        float[] viewProjection = mFrameArena.matrix();
+        Matrix.multiplyMM(viewProjection, 0, cameraPerspective, 0, cameraView, 0);
+        mViewFrustum.update(viewProjection);
+        mTileBatchRenderer.begin();
+        // The board pops in once its assets are uploaded.
+        int drawnAnchorCount = mBoard.isCreated() ? anchorCount : 0;
+        // The last board with anything in view, which gaze, taps and drags act on.
+        int focusedAnchor = -1;
+        for (int a = 0; a < drawnAnchorCount; a++) {
+            float[] anchorMatrix = anchorMatrices[a];
+
+            // Update and queue the model and its shadow.
+
+            mBoard.updateModelMatrix(anchorMatrix, scaleFactor);
+            placeTiles(anchorMatrix, tileModelMatrix, scaleFactor);
+            // Only what intersects the view is queued.
+            boolean anyVisible = false;
+            if (mBoard.isVisible(mViewFrustum)) {
+                // Every board keeps its own level of detail.
+                mBoard.submit(mRenderQueue, cameraView, anchorIds[a]);
+                anyVisible = true;
+            }
+            for (int i = 0; i < mTiles.length; i++) {
+                ObjectRenderer tile = mTiles[i];
+                if (tile.isVisible(mViewFrustum)) {
+                    mTileBatchRenderer.add(tile, cameraView, cameraPerspective);
+                    anyVisible = true;
+                } else if (tile.isCreated()) {
+                    // Not drawn, but still moved off screen for picking, so that taps do not
+                    // hit where the tile was before it left the view.
+                    tile.updateViewProjection(cameraView, cameraPerspective);
+                }
+            }
+            if (anyVisible) {
+                focusedAnchor = a;
+            }
+        }
+
+        // Highlight the tile at the centre of the screen, applied from the next frame. The
+        // tiles are pickable where they were placed last, so a later board out of view hands
+        // them back to the focused one.
+        int focusedTile = -1;
+        if (focusedAnchor < 0) {
+            // Nothing of any board can be at the centre of the screen or dragged.
+            mGazePicker.clear();
+        } else {
+            float[] anchorMatrix = anchorMatrices[focusedAnchor];
+            if (focusedAnchor != drawnAnchorCount - 1) {
+                placeTiles(anchorMatrix, tileModelMatrix, scaleFactor);
+                for (int i = 0; i < mTiles.length; i++) {
+                    if (mTiles[i].isCreated()) {
+                        mTiles[i].updateViewProjection(cameraView, cameraPerspective);
+                    }
+                }
+            }
+            Matrix.multiplyMM(mBoardModelViewMatrix, 0, cameraView, 0, anchorMatrix, 0);
+            Matrix.multiplyMM(
+                mBoardViewProjectionMatrix, 0, cameraPerspective, 0, mBoardModelViewMatrix, 0);
+            focusedTile = mGazePicker.update(cameraView, anchorMatrix, mTiles, mTileIds);
+        }
+        for (int i = 0; i < mTiles.length; i++) {
+            mTiles[i].setHighlighted(i == focusedTile);
+        }
+        // The tiles of all boards in one go.
+        mTileBatchRenderer.submit(mRenderQueue, cameraView);
+    }
+
+    private PickingSnapshot obtainPickingSnapshot() {
+        PickingSnapshot snapshot = mPickingService.obtainSnapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        for (int i = 0; i < mTiles.length; i++) {
+            ObjectRenderer tile = mTiles[i];
+            if (tile.getBvh() == null) {
+                continue;
+            }
+            snapshot.addTarget(mTileIds[i], tile.getModelViewProjectionMatrix(),
+                tile.getCollisionMesh(), tile.getBvh(), tile.getScreenBounds());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Places the tiles on a board, each at the offset it was dragged to.
+     *
+     * @param tileModelMatrix Scratch matrix.
+     */
+    private void placeTiles(float[] anchorMatrix, float[] tileModelMatrix, float scaleFactor) {
+        for (int i = 0; i < mTiles.length; i++) {
+            Matrix.translateM(tileModelMatrix, 0, anchorMatrix, 0,
+                mTileDragController.getOffsetX(i), mTileDragController.getOffsetY(i), 0.0f);
+            mTiles[i].updateModelMatrix(tileModelMatrix, scaleFactor);
+        }
+    }
+
+    /** Returns the distance from a point to the origin of a model matrix. */
+    private static float distance(float[] from, float[] toMatrix) {
+        float dx = toMatrix[12] - from[0];
+        float dy = toMatrix[13] - from[1];
+        float dz = toMatrix[14] - from[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private float toNormalizedX(float touchX) {
+        return (touchX / (mViewWidth / 2.f)) - 1.f;
+    }
+
+    private float toNormalizedY(float touchY) {
+        return ((touchY / (mViewHeight / 2.0f)) - 1.f) * -1.f;
+    }
+}
@@ -16,12 +16,14 @@
 
 package com.google.ar.core.examples.java.helloar;
 
+import android.app.ActivityManager;
+import android.app.Fragment;
 import android.app.FragmentTransaction;
 import android.net.Uri;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.design.widget.BaseTransientBottomBar;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
@@ -42,17 +44,33 @@ import com.google.ar.core.Session;
 import com.google.ar.core.Trackable.TrackingState;
 import com.google.ar.core.examples.java.helloar.content.FunnyTileFragment;
 import com.google.ar.core.examples.java.helloar.content.NewsTileFragment;
+import com.google.ar.core.examples.java.helloar.content.Tile;
+import com.google.ar.core.examples.java.helloar.model.GeneratePinboardObject;
+import com.google.ar.core.examples.java.helloar.model.Pinboard;
+import com.google.ar.core.examples.java.helloar.model.TileStreamer;
+import com.google.ar.core.examples.java.helloar.picking.GazePicker;
+import com.google.ar.core.examples.java.helloar.picking.HitTestMode;
+import com.google.ar.core.examples.java.helloar.picking.PickResult;
+import com.google.ar.core.examples.java.helloar.picking.PickingService;
+import com.google.ar.core.examples.java.helloar.picking.TapRingBuffer;
+import com.google.ar.core.examples.java.helloar.rendering.AssetCache;
+import com.google.ar.core.examples.java.helloar.rendering.AssetLoader;
 import com.google.ar.core.examples.java.helloar.rendering.BackgroundRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.FrameArena;
+import com.google.ar.core.examples.java.helloar.rendering.GlStateTracker;
 import com.google.ar.core.examples.java.helloar.rendering.ObjectRenderer;
 import com.google.ar.core.examples.java.helloar.rendering.PlaneRenderer;
 import com.google.ar.core.examples.java.helloar.rendering.PointCloudRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.RenderQueue;
+import com.google.ar.core.examples.java.helloar.rendering.TextureAtlas;
+import com.google.ar.core.examples.java.helloar.rendering.TileBatchRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.ViewFrustum;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Arrays;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -62,8 +80,29 @@ import javax.microedition.khronos.opengles.GL10;
  * ARCore API. The application will display any detected planes and will allow the user to tap on a
  * plane to place a 3d model of the Android robot.
  */
-public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.Renderer, NewsTileFragment.OnFragmentInteractionListener, FunnyTileFragment.OnFragmentInteractionListener {
+public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.Renderer, NewsTileFragment.OnFragmentInteractionListener, FunnyTileFragment.OnFragmentInteractionListener, PickingService.Listener, GazePicker.Listener {
     private static final String TAG = HelloArActivity.class.getSimpleName();
+
+    // Tiles are loaded within this many meters of their board.
+    private static final float TILE_LOAD_DISTANCE = 5.0f;
+    // How long a board must stay out of range before its tiles are released.
+    private static final long TILE_UNLOAD_DELAY_MILLIS = 10000;
+    // Taps and drags cast a ray through each tile's triangle hierarchy, whose cost grows with
+    // the log of the triangle count. SCREEN_SPACE projects every vertex instead; neither mode
+    // allocates per pick.
+    private static final HitTestMode TAP_HIT_TEST_MODE = HitTestMode.RAY;
+    // The tile textures share one atlas page; 4 pixels of padding keep two mip levels clean.
+    private static final int TILE_ATLAS_PAGE_SIZE = 2048;
+    private static final int TILE_ATLAS_PADDING = 4;
+    // How often the issued and skipped GL state calls, and the culled objects, of a frame are
+    // logged in debug builds.
+    private static final int GL_STATE_LOG_INTERVAL_FRAMES = 300;
+    // Scratch a frame starts with; the arena grows if the scene needs more.
+    private static final int FRAME_ARENA_MATRICES = 8;
+    private static final int FRAME_ARENA_VECTORS = 4;
+    // Touches waiting for the GL thread, and the most one picking snapshot has to hold.
+    private static final int MAX_QUEUED_TAPS = 64;
+
     private GLSurfaceView mSurfaceView;
 
     private Session mSession;
@@ -71,26 +110,63 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
     private Snackbar mMessageSnackbar;
     private DisplayRotationHelper mDisplayRotationHelper;
 
-    private final BackgroundRenderer mBackgroundRenderer = new BackgroundRenderer();
-    private final ObjectRenderer mVirtualObject = new ObjectRenderer();
-    private final ObjectRenderer mVirtualFirstTile = new ObjectRenderer();
-    private final ObjectRenderer mVirtualSecondTile = new ObjectRenderer();
-
-    private final PlaneRenderer mPlaneRenderer = new PlaneRenderer();
-    private final PointCloudRenderer mPointCloud = new PointCloudRenderer();
+    // Textures, meshes and programs shared by the object renderers.
+    private final AssetCache mAssetCache = new AssetCache();
+
+    // Every renderer changes GL state through the cache's tracker, which drops redundant calls.
+    private final GlStateTracker mGlState = mAssetCache.getGlStateTracker();
+    private int mFrameCount;
+    // Scratch matrices and vectors of the frame, taken back at its start.
+    private final FrameArena mFrameArena =
+        new FrameArena(FRAME_ARENA_MATRICES, FRAME_ARENA_VECTORS);
+    // Objects outside of it are not drawn; counts what was culled in the frame.
+    private final ViewFrustum mViewFrustum = new ViewFrustum();
+
+    // Draws of the frame, issued in sort key order once everything is submitted.
+    private final RenderQueue mRenderQueue = new RenderQueue();
+
+    private final BackgroundRenderer mBackgroundRenderer = new BackgroundRenderer(mGlState);
+    private final ObjectRenderer mVirtualObject = new ObjectRenderer(mAssetCache, "pinboard5.obj", "6443928-large-corkboard-texture-or-background--Stock-Photo.jpg");
+    private final ObjectRenderer mVirtualFirstTile = new ObjectRenderer(mAssetCache, "newsTileNew.obj", "newsTile.jpg");
+    private final ObjectRenderer mVirtualSecondTile = new ObjectRenderer(mAssetCache, "funnyTileNew2.obj", "funnyTile.jpg");
+    // Both tile textures in one texture, so the tiles never rebind between them.
+    private final TextureAtlas mTileAtlas = new TextureAtlas(mAssetCache, TILE_ATLAS_PAGE_SIZE,
+        TILE_ATLAS_PADDING, "newsTile.jpg", "funnyTile.jpg");
+    // Draws the tiles of every board together, one draw call per tile mesh.
+    private final TileBatchRenderer mTileBatchRenderer = new TileBatchRenderer(mAssetCache);
+
+    private final PlaneRenderer mPlaneRenderer = new PlaneRenderer(mGlState, "trigrid.png");
+    private final PointCloudRenderer mPointCloud = new PointCloudRenderer(mGlState);
+
+    // Decodes the board assets in the background while the camera feed is already drawn.
+    private AssetLoader mAssetLoader;
+    // Loads the tiles once the user comes close to the board, only accessed on the GL thread.
+    private TileStreamer mTileStreamer;
+    private final Pinboard mPinboard = new GeneratePinboardObject().getGeneratedPinboard();
 
     private boolean isInitialPositionReceived = false;
 
-    private final float[] mAnchorMatrix = new float[16];
+    // World matrices of the anchors tracked in the frame, taken from the frame arena.
+    private float[][] mTrackedAnchorMatrices = new float[4][];
+    // Their index in mAnchors, which stays the same while the anchor is kept.
+    private int[] mTrackedAnchorIndices = new int[4];
     private Anchor initialPinboardAnchor;
 
-    private final ArrayBlockingQueue<MotionEvent> mQueuedSingleTaps = new ArrayBlockingQueue<>(16);
-    private ArrayBlockingQueue<MotionEvent> mQueuedLongPress = new ArrayBlockingQueue<>(16);
+    // Touches travel from the UI thread to the GL thread as primitive records.
+    private final TapRingBuffer mQueuedTaps = new TapRingBuffer(MAX_QUEUED_TAPS);
+    private final TapRingBuffer.Batch mTapBatch = mQueuedTaps.createBatch();
 
     private final ArrayList<Anchor> mAnchors = new ArrayList<>();
 
-    private int viewWidth = 0;
-    private int viewHeight = 0;
+    // Tiles that can be picked, in the order they are tested.
+    private final ObjectRenderer[] mPickableTiles = {mVirtualFirstTile, mVirtualSecondTile};
+    private final Tile[] mPickableTileIds = {Tile.NEWS, Tile.FUNNY};
+    private PickingService mPickingService;
+    private GazePicker mGazePicker;
+    // Taps, streaming, culling and gaze of every frame, only accessed on the GL thread.
+    private BoardScene mBoardScene;
+    // Whether the current gesture turned into a drag, only accessed on the UI thread.
+    private boolean mDragGesture;
 
 
     @Override
@@ -99,6 +175,19 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
         setContentView(R.layout.activity_main);
         mSurfaceView = findViewById(R.id.surfaceview);
         mDisplayRotationHelper = new DisplayRotationHelper(/*context=*/ this);
+        mPickingService = new PickingService(/*listener=*/ this, mPickableTiles.length,
+            MAX_QUEUED_TAPS);
+        mGazePicker = new GazePicker(/*listener=*/ this);
+        mAssetLoader = new AssetLoader(/*context=*/ this);
+        mTileStreamer =
+            new TileStreamer(mAssetLoader, TILE_LOAD_DISTANCE, TILE_UNLOAD_DELAY_MILLIS);
+        mBoardScene = new BoardScene(mVirtualObject, mPickableTiles, mPickableTileIds,
+            mTileBatchRenderer, mPinboard, mTileStreamer, mPickingService, mGazePicker,
+            mFrameArena, mViewFrustum, mRenderQueue);
+        mBoardScene.setHitTestMode(TAP_HIT_TEST_MODE);
+        mPinboard.setVirtualObject(mVirtualObject);
+        mPinboard.getPinboardTilesiList().get(0).setTileVirtualObject(mVirtualFirstTile);
+        mPinboard.getPinboardTilesiList().get(1).setTileVirtualObject(mVirtualSecondTile);
 
         // Set up tap listener.
         mGestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
@@ -110,7 +199,9 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
             @Override
             public void onLongPress(MotionEvent e) {
-                mQueuedLongPress.offer(e);
+                mDragGesture = true;
+                mQueuedTaps.offer(e.getX(), e.getY(), e.getEventTime(),
+                    TapRingBuffer.Kind.LONG_PRESS);
             }
 
             @Override
@@ -122,6 +213,9 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
         mSurfaceView.setOnTouchListener(new View.OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
+                if (mDragGesture) {
+                    onDragTouch(event);
+                }
                 return mGestureDetector.onTouchEvent(event);
             }
         });
@@ -129,7 +223,8 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
         // Set up renderer.
         mSurfaceView.setPreserveEGLContextOnPause(true);
-        mSurfaceView.setEGLContextClientVersion(2);
+        // ES 3 where available, for instanced tile batches; the shaders run on both.
+        mSurfaceView.setEGLContextClientVersion(getSupportedGlEsMajorVersion());
         mSurfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0); // Alpha used for plane blending.
         mSurfaceView.setRenderer(this);
         mSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
@@ -202,6 +297,13 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPickingService.shutdown();
+        mAssetLoader.shutdown();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] results) {
         if (!CameraPermissionHelper.hasCameraPermission(this)) {
@@ -233,7 +335,24 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
 
     private void onSingleTap(MotionEvent e) {
         // Queue tap if there is space. Tap is lost if queue is full.
-        mQueuedSingleTaps.offer(e);
+        mQueuedTaps.offer(e.getX(), e.getY(), e.getEventTime(), TapRingBuffer.Kind.SINGLE_TAP);
+    }
+
+    private void onDragTouch(MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                mQueuedTaps.offer(e.getX(), e.getY(), e.getEventTime(),
+                    TapRingBuffer.Kind.DRAG_MOVE);
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mQueuedTaps.offer(e.getX(), e.getY(), e.getEventTime(),
+                    TapRingBuffer.Kind.DRAG_END);
+                mDragGesture = false;
+                break;
+            default:
+                break;
+        }
     }
 
     @Override
@@ -246,41 +365,66 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             mSession.setCameraTextureName(mBackgroundRenderer.getTextureId());
         }
 
-        // Prepare the other rendering objects.
-        try {
-            mVirtualObject.createOnGlThread(/*context=*/this, "pinboard5.obj", "6443928-large-corkboard-texture-or-background--Stock-Photo.jpg");
-            mVirtualObject.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
-
-            mVirtualFirstTile.createOnGlThread(this, "newsTileNew.obj","newsTile.jpg");
-            mVirtualFirstTile.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
-
-            mVirtualSecondTile.createOnGlThread(this, "funnyTileNew2.obj", "funnyTile.jpg");
-            mVirtualSecondTile.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
-
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to read obj file");
-        }
-        try {
-            mPlaneRenderer.createOnGlThread(/*context=*/this, "trigrid.png");
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to read plane texture");
-        }
         mPointCloud.createOnGlThread(/*context=*/this);
+
+        // Prepare the other rendering objects in the background; they are uploaded by
+        // onDrawFrame() once decoded, so the camera feed shows right away.
+        // The board is never picked, only its bounds are needed.
+        mVirtualObject.setCollisionShape(ObjectRenderer.CollisionShape.BoundingBox);
+        mVirtualObject.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+        mVirtualFirstTile.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+        mVirtualSecondTile.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+        // The tiles are flat printed cards, so they share the cheaper matte program.
+        mVirtualFirstTile.setShaderDefines("NO_SPECULAR");
+        mVirtualSecondTile.setShaderDefines("NO_SPECULAR");
+        mTileBatchRenderer.setShaderDefines("NO_SPECULAR");
+
+        // A new surface means a new GL context, so everything is uploaded again.
+        mAssetLoader.cancel();
+        mAssetCache.clear();
+        mAssetCache.queryCapabilities();
+        mVirtualObject.onGlContextLost();
+        mVirtualFirstTile.onGlContextLost();
+        mVirtualSecondTile.onGlContextLost();
+        mTileStreamer.reset();
+        mTileBatchRenderer.onGlContextLost();
+        mTileBatchRenderer.createOnGlThread(/*context=*/ this);
+        mTileAtlas.onGlContextLost();
+        mAssetLoader.load(mTileAtlas);
+        mAssetLoader.load(mVirtualObject);
+        mAssetLoader.load(mPlaneRenderer);
+        // The tiles are loaded by the streamer once the board is near.
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         mDisplayRotationHelper.onSurfaceChanged(width, height);
         GLES20.glViewport(0, 0, width, height);
-        viewWidth = width;
-        viewHeight = height;
+        mBoardScene.setViewportSize(width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        mGlState.beginFrame();
+        mFrameArena.reset();
+        // Building the messages allocates, so release builds skip them.
+        if (BuildConfig.DEBUG && ++mFrameCount % GL_STATE_LOG_INTERVAL_FRAMES == 0) {
+            Log.d(TAG, "GL state calls last frame: " + mGlState.getIssuedCallCount()
+                + " issued, " + mGlState.getSkippedCallCount() + " skipped");
+            Log.d(TAG, "Objects last frame: " + mViewFrustum.getVisibleCount() + " visible, "
+                + mViewFrustum.getCulledCount() + " culled");
+            Log.d(TAG, "Gaze updates over budget so far: " + mGazePicker.getOverBudgetCount());
+        }
+
         // Clear screen to notify driver it should not load any pixels from previous frame.
+        // The depth buffer is only cleared while depth writes are enabled.
+        mGlState.depthMask(true);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
+        mAssetLoader.uploadPrepared();
+        // Anything left over from a frame that threw.
+        mRenderQueue.clear();
+
         if (mSession == null) {
             return;
         }
@@ -294,51 +438,42 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
             // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
             // camera framerate.
             Frame frame = mSession.update();
+            // ARCore changes GL state around the tracker; the frame's only invalidation, as
+            // the asset uploads invalidate on their own.
+            mGlState.invalidate();
             Camera camera = frame.getCamera();
 
-            // Handle taps. Handling only one tap per frame, as taps are usually low frequency
-            // compared to frame rate.
-            MotionEvent tap = mQueuedSingleTaps.poll();
-
-
-            if (tap != null && camera.getTrackingState() == TrackingState.TRACKING) {
-                Log.d("Test1", "----------");
-
-                if (checkIfHit(mVirtualFirstTile,tap,1)) {
-                    NewsTileFragment fragment = NewsTileFragment.newInstance(null,null);
-                    FragmentTransaction transaction = getFragmentManager().beginTransaction();
-                    transaction.replace(R.id.surface_layout, fragment).addToBackStack(null);
-                    transaction.commit();
-
-                } else if (checkIfHit(mVirtualSecondTile,tap,2)){
-                    FunnyTileFragment fragment = FunnyTileFragment.newInstance(null,null);
-                    FragmentTransaction transaction = getFragmentManager().beginTransaction();
-                    transaction.replace(R.id.surface_layout, fragment).addToBackStack(null);
-                    transaction.commit();
-                }
-            }
-            mBackgroundRenderer.draw(frame);
-
-            // If not tracking, don't draw 3d objects.
-            if (camera.getTrackingState() == TrackingState.PAUSED) {
-                return;
+            // Handle taps. Every touch queued since the last frame is picked in one pass against
+            // the geometry projected by the last frame, so fast tapping never waits for frames.
+            mQueuedTaps.drainTo(mTapBatch);
+            if (mTapBatch.getCount() > 0) {
+                mBoardScene.handleTaps(
+                    mTapBatch, camera.getTrackingState() == TrackingState.TRACKING);
             }
+            mBackgroundRenderer.update(frame);
+            mBackgroundRenderer.submit(mRenderQueue);
 
             // Get projection matrix.
-            float[] projmtx = new float[16];
+            float[] projmtx = mFrameArena.matrix();
             camera.getProjectionMatrix(projmtx, 0, 0.1f, 100.0f);
 
             // Get camera matrix and draw.
-            float[] viewmtx = new float[16];
+            float[] viewmtx = mFrameArena.matrix();
             camera.getViewMatrix(viewmtx, 0);
 
             // Compute lighting from average intensity of the image.
             final float lightIntensity = frame.getLightEstimate().getPixelIntensity();
 
+            // If not tracking, don't draw 3d objects.
+            if (camera.getTrackingState() == TrackingState.PAUSED) {
+                mRenderQueue.execute(viewmtx, projmtx, lightIntensity);
+                return;
+            }
+
             // Visualize tracked points.
             PointCloud pointCloud = frame.acquirePointCloud();
             mPointCloud.update(pointCloud);
-            mPointCloud.draw(viewmtx, projmtx);
+            mPointCloud.submit(mRenderQueue);
 
             pointCloud.release();
 
@@ -352,25 +487,35 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
                 isInitialPositionReceived = true;
             }
 
-            float scaleFactor = 1.0f;
-            for (Anchor anchor : mAnchors) {
+            // Get the current pose of every tracked Anchor in world space, once, as ARCore
+            // returns a new Pose for every query. The Anchor pose is updated during calls to
+            // session.update() as ARCore refines its estimate of the world.
+            float[] cameraPosition = mFrameArena.vector();
+            camera.getPose().getTranslation(cameraPosition, 0);
+            int trackedAnchorCount = 0;
+            for (int i = 0; i < mAnchors.size(); i++) {
+                Anchor anchor = mAnchors.get(i);
                 if (anchor.getTrackingState() != TrackingState.TRACKING) {
                     continue;
                 }
-                // Get the current pose of an Anchor in world space. The Anchor pose is updated
-                // during calls to session.update() as ARCore refines its estimate of the world.
-                anchor.getPose().toMatrix(mAnchorMatrix, 0);
-
-                // Update and draw the model and its shadow.
-
-                mVirtualObject.updateModelMatrix(mAnchorMatrix, scaleFactor);
-                mVirtualFirstTile.updateModelMatrix(mAnchorMatrix, scaleFactor);
-                mVirtualSecondTile.updateModelMatrix(mAnchorMatrix, scaleFactor);
-                mVirtualObject.draw(viewmtx, projmtx, lightIntensity);
-                mVirtualFirstTile.draw(viewmtx, projmtx, lightIntensity);
-                mVirtualSecondTile.draw(viewmtx, projmtx, lightIntensity);
+                float[] anchorMatrix = mFrameArena.matrix();
+                anchor.getPose().toMatrix(anchorMatrix, 0);
+                if (trackedAnchorCount == mTrackedAnchorMatrices.length) {
+                    mTrackedAnchorMatrices = Arrays.copyOf(
+                        mTrackedAnchorMatrices, 2 * mTrackedAnchorMatrices.length);
+                    mTrackedAnchorIndices = Arrays.copyOf(
+                        mTrackedAnchorIndices, 2 * mTrackedAnchorIndices.length);
+                }
+                mTrackedAnchorIndices[trackedAnchorCount] = i;
+                mTrackedAnchorMatrices[trackedAnchorCount++] = anchorMatrix;
             }
 
+            // Streaming, culling, queueing and gaze; allocation free once warmed up.
+            mBoardScene.update(viewmtx, projmtx, cameraPosition, mTrackedAnchorMatrices,
+                mTrackedAnchorIndices, trackedAnchorCount, SystemClock.uptimeMillis());
+
+            mRenderQueue.execute(viewmtx, projmtx, lightIntensity);
+
         } catch (Throwable t) {
             // Avoid crashing the application due to unhandled exceptions.
             Log.e(TAG, "Exception on the OpenGL thread", t);
@@ -403,209 +548,52 @@ public class HelloArActivity extends AppCompatActivity implements GLSurfaceView.
         mMessageSnackbar.show();
     }
 
-    private Boolean checkIfHit(ObjectRenderer renderer, MotionEvent event, final int cubeIndex){
-        if(isMVPMatrixHitMotionEvent2(renderer,event)) {
-            // long press hit a tile, show content menu for the tile
-            Log.d("Test1", "TILE: " + cubeIndex + " HIT <3");
-
-            final String tileIndex = "" + cubeIndex;
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    Toast.makeText(getApplicationContext(), tileIndex, Toast.LENGTH_SHORT).show();
-                }
-            });
-            return true;
-       } else {
-            final String tileIndex = "" + cubeIndex;
-            Log.d("Test1", "TILE: " + tileIndex + " NOT HIT");
-            return false;
+    @Override
+    public void onTilePicked(PickResult result) {
+        if (isDestroyed()) {
+            return;
         }
-
-    }
-    private boolean isMVPMatrixHitMotionEvent2(ObjectRenderer object, MotionEvent event){
-
-        float[] mvpMatrix = object.getmModelViewProjectionMatrix();
-
-        Log.d("Test", "------START COMPARING------");
-        Log.d("Test", "MVP Matrix: " + mvpMatrix.toString());
-
-        for (int i = 0; i < object.triangles.size(); i++)
-        {
-            ObjectRenderer.Triangle triangle = object.triangles.get(i);
-
-            float[] point1 = new float[4];
-            float[] point2 = new float[4];
-            float[] point3 = new float[4];
-
-            point1[0] = triangle.vertex1[0];
-            point1[1] = triangle.vertex1[1];
-            point1[2] = triangle.vertex1[2];
-            point1[3] = 0;
-
-            point2[0] = triangle.vertex2[0];
-            point2[1] = triangle.vertex2[1];
-            point2[2] = triangle.vertex2[2];
-            point2[3] = 0;
-
-            point3[0] = triangle.vertex3[0];
-            point3[1] = triangle.vertex3[1];
-            point3[2] = triangle.vertex3[2];
-            point3[3] = 0;
-
-            Log.d("Test", "Point1: " + point1[0] + " " + point1[1]+ " " + point1[2]+ " " + point1[3]);
-            Log.d("Test", "Point2: " + point2[0] + " " + point2[1]+ " " + point2[2]+ " " + point2[3]);
-            Log.d("Test", "Point3: " + point3[0] + " " + point3[1]+ " " + point3[2]+ " " + point3[3]);
-
-            float[] calculatedPoint1 = new float[4];
-            float[] calculatedPoint2 = new float[4];
-            float[] calculatedPoint3 = new float[4];
-
-            Matrix.multiplyMV(calculatedPoint1, 0, mvpMatrix, 0, point1, 0);
-            Matrix.multiplyMV(calculatedPoint2, 0, mvpMatrix, 0, point2, 0);
-            Matrix.multiplyMV(calculatedPoint3, 0, mvpMatrix, 0, point3, 0);
-
-            float[] point12D = {calculatedPoint1[0], calculatedPoint1[1]};
-            float[] point22D = {calculatedPoint2[0], calculatedPoint2[1]};
-            float[] point32D = {calculatedPoint3[0], calculatedPoint3[1]};
-
-            Log.d("Test", "Point12D: " + point12D[0] + " " + point12D[1]);
-            Log.d("Test", "Point22D: " + point22D[0] + " " + point22D[1]);
-            Log.d("Test", "Point32D: " + point32D[0] + " " + point32D[1]);
-
-            // Get Touchposition
-            float[] touchPosition = {event.getX(), event.getY()};
-            float[] convertedTouchPosition = convertToFrame(touchPosition, mSurfaceView.getWidth(), mSurfaceView.getHeight());
-
-            Log.d("Test", "ConvertedTouch: " + convertedTouchPosition[0] + " " + convertedTouchPosition[1]);
-
-            boolean b1,b2,b3;
-
-            b1 = sign(convertedTouchPosition, point12D, point22D) < 0.0f;
-            b2 = sign(convertedTouchPosition, point22D, point32D) < 0.0f;
-            b3 = sign(convertedTouchPosition, point32D, point12D) < 0.0f;
-
-            Log.d("Test", "b1: " + b1);
-            Log.d("Test", "b2: " + b2);
-            Log.d("Test", "b3: " + b3);
-
-            Log.d("Test", "------END COMPARING------");
-
-            if ((b1 == b2) && (b2 == b3)) {
-                Log.d("Test", "TOTAL   ---> TRUE");
-                return true;
-            } else {
-                Log.d("Test", "TOTAL  ---> FALSE");
-            }
+        // a touch hit a tile, show content menu for the tile
+        Tile tile = result.getTile();
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "TILE: " + tile + " HIT at depth " + result.getDepth() + ", triangle "
+                + result.getTriangleIndex() + " (" + result.getU() + ", " + result.getV() + ")");
         }
-
-        return false;
-    }
-
-    public float sign(float[] point1, float[] point2, float[] point3) {
-        return (point1[0] - point3[0]) * (point2[1] - point3[1]) - (point2[0] - point3[0]) * (point1[1] - point3[1]);
-    }
-
-    private boolean isMVPMatrixHitMotionEvent(ObjectRenderer object, MotionEvent event){
-
-        float[] mvpMatrix = object.getmModelViewProjectionMatrix();
-
-        Log.d("Test", "------START COMPARING------");
-        Log.d("Test", "MVP Matrix: " + mvpMatrix.toString());
-
-        for (int i = 0; i < object.triangles.size(); i++)
-        {
-            ObjectRenderer.Triangle triangle = object.triangles.get(i);
-
-            float[] point1 = new float[4];
-            float[] point2 = new float[4];
-            float[] point3 = new float[4];
-
-            point1[0] = triangle.vertex1[0];
-            point1[1] = triangle.vertex1[1];
-            point1[2] = triangle.vertex1[2];
-            point1[3] = 0;
-
-            point2[0] = triangle.vertex2[0];
-            point2[1] = triangle.vertex2[1];
-            point2[2] = triangle.vertex2[2];
-            point2[3] = 0;
-
-            point3[0] = triangle.vertex3[0];
-            point3[1] = triangle.vertex3[1];
-            point3[2] = triangle.vertex3[2];
-            point3[3] = 0;
-
-            Log.d("Test", "Point1: " + point1[0] + " " + point1[1]+ " " + point1[2]+ " " + point1[3]);
-            Log.d("Test", "Point2: " + point2[0] + " " + point2[1]+ " " + point2[2]+ " " + point2[3]);
-            Log.d("Test", "Point3: " + point3[0] + " " + point3[1]+ " " + point3[2]+ " " + point3[3]);
-
-            float[] calculatedPoint1 = new float[4];
-            float[] calculatedPoint2 = new float[4];
-            float[] calculatedPoint3 = new float[4];
-
-            Matrix.multiplyMV(calculatedPoint1, 0, mvpMatrix, 0, point1, 0);
-            Matrix.multiplyMV(calculatedPoint2, 0, mvpMatrix, 0, point2, 0);
-            Matrix.multiplyMV(calculatedPoint3, 0, mvpMatrix, 0, point3, 0);
-
-            float[] point12D = {calculatedPoint1[0], calculatedPoint1[1]};
-            float[] point22D = {calculatedPoint2[0], calculatedPoint2[1]};
-            float[] point32D = {calculatedPoint3[0], calculatedPoint3[1]};
-
-            Log.d("Test", "Point12D: " + point12D[0] + " " + point12D[1]);
-            Log.d("Test", "Point22D: " + point22D[0] + " " + point22D[1]);
-            Log.d("Test", "Point32D: " + point32D[0] + " " + point32D[1]);
-
-            // Get Touchposition
-            float[] touchPosition = {event.getX(), event.getY()};
-            float[] convertedTouchPosition = convertToFrame(touchPosition, mSurfaceView.getWidth(), mSurfaceView.getHeight());
-
-            Log.d("Test", "ConvertedTouch: " + convertedTouchPosition[0] + " " + convertedTouchPosition[1]);
-
-            float totalArea = calcTriangleArea(point12D, point22D, point32D);
-
-            float area1 = calcTriangleArea(convertedTouchPosition, point22D, point32D);
-            float area2 = calcTriangleArea(convertedTouchPosition, point12D, point32D);
-            float area3 = calcTriangleArea(convertedTouchPosition, point12D, point22D);
-
-            Log.d("Test", "TotalArea: " + totalArea);
-            Log.d("Test", "area1: " + area1);
-            Log.d("Test", "area2: " + area2);
-            Log.d("Test", "area3: " + area3);
-
-            Log.d("Test", "------END COMPARING------");
-
-            if ((area1 + area2 + area3) <= totalArea) {
-                Log.d("Test", "TOTAL AREA  ---> TRUE");
-                return true;
-            } else {
-                Log.d("Test", "TOTAL AREA ---> FALSE");
-
-            }
-
+        Toast.makeText(getApplicationContext(), tile.name(), Toast.LENGTH_SHORT).show();
+
+        Fragment fragment;
+        switch (tile) {
+            case NEWS:
+                fragment = NewsTileFragment.newInstance(null,null);
+                break;
+            case FUNNY:
+                fragment = FunnyTileFragment.newInstance(null,null);
+                break;
+            default:
+                return;
         }
-
-        return false;
+        FragmentTransaction transaction = getFragmentManager().beginTransaction();
+        transaction.replace(R.id.surface_layout, fragment).addToBackStack(null);
+        transaction.commit();
     }
 
-    float calcTriangleArea(float[] point1, float[] point2, float[] point3) {
-        float det = 0;
-        det = (((point1[0] + 5.f) - (point3[0] + 5.f)) * ((point2[1] + 5.f) - (point3[1] + 5.f))) - (((point2[0] + 5.f) - (point3[0] + 5.f)) * ((point1[1] + 5.f) - (point3[1] + 5.f)));
-        return (det / 2.0f);
-    }
-    float calcTriangleAreaGeneral(float[] point1, float[] point2, float[] point3) {
-        float det = 0;
-        det = ((point1[0] - point3[0]) * (point2[1] - point3[1])) - ((point2[0] - point3[0]) * (point1[1] - point3[1]));
-        return (det / 2.0f);
+    @Override
+    public void onFocusChanged(Tile tile) {
+        // Lets accessibility services tell which tile a tap would open.
+        mSurfaceView.setContentDescription(tile == null ? null : tile.name());
     }
 
-    float[] convertToFrame(float[] touchPositon, float width, float height) {
-        float[] result = new float[2];
-
-        result[0] = (touchPositon[0] / (width / 2.f)) - 1.f;
-        result[1] = ((touchPositon[1] / (height / 2.0f)) - 1.f) * -1.f;
-
-        return result;
+    /**
+     * Returns 3 if the device supports OpenGL ES 3.0, and 2 otherwise.
+     */
+    private int getSupportedGlEsMajorVersion() {
+        ActivityManager activityManager =
+            (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        if (activityManager != null
+                && activityManager.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000) {
+            return 3;
+        }
+        return 2;
     }
 
     @Override
@@ -11,7 +11,7 @@ public class GeneratePinboardObject {
 
     private final Pinboard pinboard;
 
-    private GeneratePinboardObject() {
+    public GeneratePinboardObject() {
         String tileName = "News";
         String tileCategory = "Information";
         String tileContent = "Today is winter";
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.model;
+
+import com.google.ar.core.examples.java.helloar.rendering.AssetLoader;
+import com.google.ar.core.examples.java.helloar.rendering.ObjectRenderer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Loads the tile renderers of a pinboard when the user comes close to it, and releases them
+ * again once the pinboard has stayed out of range for a while. GL memory for tiles therefore
+ * scales with the boards near the user rather than with the whole catalogue. The delay keeps
+ * tiles from being reloaded over and over while the user walks along the edge of the range.
+ *
+ * <p>All methods must be called on the GL thread.
+ */
+public class TileStreamer {
+    private final AssetLoader mAssetLoader;
+    private final float mLoadDistance;
+    private final long mUnloadDelayMillis;
+
+    // Tiles handed to the loader and not released since.
+    private final HashSet<ObjectRenderer> mRequestedTiles = new HashSet<>();
+    // Pinboards out of range and the time at which each left it. Kept in arrays, as boxing the
+    // times would allocate on the frame that a pinboard leaves the range.
+    private Pinboard[] mOutOfRangePinboards = new Pinboard[4];
+    private long[] mOutOfRangeSinceMillis = new long[4];
+    private int mOutOfRangeCount;
+
+    /**
+     * @param assetLoader Loader that prepares and uploads the tile renderers.
+     * @param loadDistance Distance in meters within which a pinboard's tiles are loaded.
+     * @param unloadDelayMillis How long a pinboard must stay out of range before its tiles are
+     *     released.
+     */
+    public TileStreamer(AssetLoader assetLoader, float loadDistance, long unloadDelayMillis) {
+        mAssetLoader = assetLoader;
+        mLoadDistance = loadDistance;
+        mUnloadDelayMillis = unloadDelayMillis;
+    }
+
+    /**
+     * Records the distance of a pinboard and loads or releases its tiles accordingly. Should be
+     * called once per frame for every known pinboard.
+     *
+     * @param pinboard The pinboard, whose distance and range are updated.
+     * @param distance Distance in meters from the camera to the pinboard, or
+     *     {@link Float#POSITIVE_INFINITY} if it is not tracked.
+     * @param nowMillis The current time, e.g. from {@code SystemClock.uptimeMillis()}.
+     */
+    public void update(Pinboard pinboard, float distance, long nowMillis) {
+        boolean inRange = distance <= mLoadDistance;
+        pinboard.setDistance(distance);
+        pinboard.setInRange(inRange);
+
+        List<PinboardTiles> tiles = pinboard.getPinboardTilesiList();
+        if (tiles == null) {
+            return;
+        }
+        int outOfRange = indexOfOutOfRange(pinboard);
+        if (inRange) {
+            if (outOfRange >= 0) {
+                // Swap the last entry into the gap; the order does not matter.
+                mOutOfRangeCount--;
+                mOutOfRangePinboards[outOfRange] = mOutOfRangePinboards[mOutOfRangeCount];
+                mOutOfRangeSinceMillis[outOfRange] = mOutOfRangeSinceMillis[mOutOfRangeCount];
+                mOutOfRangePinboards[mOutOfRangeCount] = null;
+            }
+            // Indexed, as this runs every frame and an iterator would allocate.
+            for (int i = 0; i < tiles.size(); i++) {
+                ObjectRenderer renderer = tiles.get(i).getTileVirtualObject();
+                if (renderer != null && mRequestedTiles.add(renderer)) {
+                    mAssetLoader.load(renderer);
+                }
+            }
+            return;
+        }
+
+        if (outOfRange < 0) {
+            if (mOutOfRangeCount == mOutOfRangePinboards.length) {
+                mOutOfRangePinboards =
+                    Arrays.copyOf(mOutOfRangePinboards, 2 * mOutOfRangeCount);
+                mOutOfRangeSinceMillis =
+                    Arrays.copyOf(mOutOfRangeSinceMillis, 2 * mOutOfRangeCount);
+            }
+            mOutOfRangePinboards[mOutOfRangeCount] = pinboard;
+            mOutOfRangeSinceMillis[mOutOfRangeCount++] = nowMillis;
+            return;
+        }
+        if (nowMillis - mOutOfRangeSinceMillis[outOfRange] < mUnloadDelayMillis) {
+            return;
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            ObjectRenderer renderer = tiles.get(i).getTileVirtualObject();
+            // Tiles still being prepared are released on a later call, once they are uploaded.
+            if (renderer != null && renderer.isCreated()) {
+                renderer.releaseOnGlThread();
+                mRequestedTiles.remove(renderer);
+            }
+        }
+    }
+
+    /**
+     * Forgets which tiles were loaded, for when the GL context was lost together with the
+     * loader's pending work. Tiles of pinboards in range are loaded again on the next update.
+     */
+    public void reset() {
+        mRequestedTiles.clear();
+        Arrays.fill(mOutOfRangePinboards, 0, mOutOfRangeCount, null);
+        mOutOfRangeCount = 0;
+    }
+
+    private int indexOfOutOfRange(Pinboard pinboard) {
+        for (int i = 0; i < mOutOfRangeCount; i++) {
+            if (mOutOfRangePinboards[i] == pinboard) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Model space triangle geometry used for picking, packed into one flat position array and one
+ * index array. The mesh is immutable once created.
+ */
+public class CollisionMesh {
+    final float[] mPositions;
+    final int[] mIndices;
+    private final float[] mBounds = new float[6];
+
+    private final FloatBuffer mReadOnlyPositions;
+    private final IntBuffer mReadOnlyIndices;
+
+    /**
+     * Copies the remaining contents of the given buffers into a new mesh. The buffer positions
+     * are left unchanged.
+     *
+     * @param positions Vertex positions, three floats per vertex.
+     * @param indices Vertex indices, three per triangle.
+     */
+    public static CollisionMesh copyOf(FloatBuffer positions, IntBuffer indices) {
+        float[] positionArray = new float[positions.remaining()];
+        positions.duplicate().get(positionArray);
+        int[] indexArray = new int[indices.remaining()];
+        indices.duplicate().get(indexArray);
+        return new CollisionMesh(positionArray, indexArray);
+    }
+
+    /**
+     * Copies the remaining contents of the given buffers into a new mesh, reading the indices as
+     * unsigned 16-bit values. The buffer positions are left unchanged.
+     *
+     * @param positions Vertex positions, three floats per vertex.
+     * @param indices Vertex indices, three per triangle.
+     */
+    public static CollisionMesh copyOf(FloatBuffer positions, ShortBuffer indices) {
+        float[] positionArray = new float[positions.remaining()];
+        positions.duplicate().get(positionArray);
+        int[] indexArray = new int[indices.remaining()];
+        for (int i = 0; i < indexArray.length; i++) {
+            indexArray[i] = indices.get(indices.position() + i) & 0xffff;
+        }
+        return new CollisionMesh(positionArray, indexArray);
+    }
+
+    /**
+     * Wraps the given arrays, which must not be modified afterwards.
+     *
+     * @param positions Vertex positions, three floats per vertex.
+     * @param indices Vertex indices, three per triangle.
+     */
+    public CollisionMesh(float[] positions, int[] indices) {
+        mPositions = positions;
+        mIndices = indices;
+        mReadOnlyPositions = FloatBuffer.wrap(positions).asReadOnlyBuffer();
+        mReadOnlyIndices = IntBuffer.wrap(indices).asReadOnlyBuffer();
+
+        for (int axis = 0; axis < 3; axis++) {
+            mBounds[axis] = positions.length > 0 ? Float.POSITIVE_INFINITY : 0.0f;
+            mBounds[3 + axis] = positions.length > 0 ? Float.NEGATIVE_INFINITY : 0.0f;
+        }
+        for (int i = 0; i < positions.length; i += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                mBounds[axis] = Math.min(mBounds[axis], positions[i + axis]);
+                mBounds[3 + axis] = Math.max(mBounds[3 + axis], positions[i + axis]);
+            }
+        }
+    }
+
+    /**
+     * Returns the model space axis aligned bounding box as {minX, minY, minZ, maxX, maxY, maxZ}.
+     * Do not modify.
+     */
+    public float[] getBounds() {
+        return mBounds;
+    }
+
+    public int getVertexCount() {
+        return mPositions.length / 3;
+    }
+
+    public int getTriangleCount() {
+        return mIndices.length / 3;
+    }
+
+    /**
+     * Returns a read-only view of the vertex positions, three floats per vertex. The view is
+     * shared, so use absolute gets or {@link FloatBuffer#duplicate()} it before reading.
+     */
+    public FloatBuffer getPositions() {
+        return mReadOnlyPositions;
+    }
+
+    /**
+     * Returns a read-only view of the vertex indices, three per triangle. The view is shared, so
+     * use absolute gets or {@link IntBuffer#duplicate()} it before reading.
+     */
+    public IntBuffer getIndices() {
+        return mReadOnlyIndices;
+    }
+}
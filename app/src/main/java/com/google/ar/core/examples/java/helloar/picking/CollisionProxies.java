@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+
+/**
+ * Builds collision meshes that stand in for detailed render meshes. Picking against a proxy
+ * costs the same however many triangles the rendered object has, and the render triangles need
+ * not be kept on the CPU.
+ */
+public final class CollisionProxies {
+    // Corners of the unit box, as {x, y, z} picks from {min, max}.
+    private static final int[] BOX_CORNERS = {
+        0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0,
+        0, 0, 1,  1, 0, 1,  1, 1, 1,  0, 1, 1,
+    };
+    // Two counter-clockwise triangles per face, seen from outside.
+    private static final int[] BOX_INDICES = {
+        0, 3, 2,  0, 2, 1, // -z
+        4, 5, 6,  4, 6, 7, // +z
+        0, 4, 7,  0, 7, 3, // -x
+        1, 2, 6,  1, 6, 5, // +x
+        0, 1, 5,  0, 5, 4, // -y
+        3, 7, 6,  3, 6, 2, // +y
+    };
+
+    private CollisionProxies() {
+    }
+
+    /**
+     * Returns the twelve triangles of the axis aligned box around some vertex positions.
+     *
+     * @param positions Vertex positions, three floats per vertex. Read from the current position
+     *     to the limit, which are left unchanged.
+     */
+    public static CollisionMesh boundingBox(FloatBuffer positions) {
+        float[] bounds = {
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+        };
+        if (positions.remaining() == 0) {
+            return new CollisionMesh(new float[0], new int[0]);
+        }
+        for (int i = positions.position(); i + 2 < positions.limit(); i += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = positions.get(i + axis);
+                bounds[axis] = Math.min(bounds[axis], value);
+                bounds[3 + axis] = Math.max(bounds[3 + axis], value);
+            }
+        }
+
+        float[] corners = new float[BOX_CORNERS.length];
+        for (int i = 0; i < corners.length; i++) {
+            corners[i] = bounds[3 * BOX_CORNERS[i] + i % 3];
+        }
+        return new CollisionMesh(corners, BOX_INDICES.clone());
+    }
+
+    /**
+     * Reads a low-poly collision mesh from an OBJ stream. Only positions and faces are used;
+     * polygons are triangulated.
+     */
+    public static CollisionMesh readObj(InputStream inputStream) throws IOException {
+        Obj obj = ObjUtils.triangulate(ObjReader.read(inputStream));
+        return new CollisionMesh(ObjData.getVerticesArray(obj),
+            ObjData.getFaceVertexIndicesArray(obj, 3));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+
+/**
+ * Picks the tile under the centre of the screen once per frame, so that it can be highlighted
+ * before anyone taps. Must be updated from the GL thread.
+ *
+ * <p>The result of the last frame is reused while neither the camera nor the anchor moved more
+ * than {@link #MOVEMENT_THRESHOLD}. Otherwise the previously focused tile is tested first, and
+ * the others only if it is no longer under the centre. An update that runs out of
+ * {@link #FRAME_BUDGET_NANOS} stops after the tile it is testing and goes on with the next one
+ * in the following frame, keeping the previous focus until then. Such updates are counted, see
+ * {@link #getOverBudgetCount()}.
+ */
+public class GazePicker {
+    /** Time an update may take per frame, 100 microseconds. */
+    public static final long FRAME_BUDGET_NANOS = 100000;
+
+    /** Largest change of any view or anchor matrix element that still reuses the last result. */
+    public static final float MOVEMENT_THRESHOLD = 0.001f;
+
+    /**
+     * Receives focus changes on the main thread.
+     */
+    public interface Listener {
+        /**
+         * Called when the tile under the centre of the screen changes.
+         *
+         * @param tile The newly focused tile, or null if the centre points at no tile.
+         */
+        void onFocusChanged(Tile tile);
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+
+    private final float[] mLastViewMatrix = new float[16];
+    private final float[] mLastAnchorMatrix = new float[16];
+    private boolean mHasResult;
+    private int mFocusedIndex = -1;
+    // Where the search for a newly focused tile goes on, or 0 if none was cut short.
+    private int mNextSearchIndex;
+    private volatile Tile mFocusedTile;
+    private int mOverBudgetCount;
+
+    // Scratch objects reused by every update.
+    private final RayPicker mRayPicker = new RayPicker();
+    private final RayHit mRayHit = new RayHit();
+    private final Runnable mNotifyFocusChanged = new Runnable() {
+        @Override
+        public void run() {
+            mListener.onFocusChanged(mFocusedTile);
+        }
+    };
+
+    public GazePicker(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Forgets the last result, so that the next update runs a full pick.
+     */
+    public void invalidate() {
+        mHasResult = false;
+    }
+
+    /**
+     * Drops the focus, for frames in which no tiles are drawn.
+     */
+    public void clear() {
+        mHasResult = false;
+        mNextSearchIndex = 0;
+        setFocus(-1, null);
+    }
+
+    /**
+     * Updates the focused tile. Call after the tiles were drawn for the frame.
+     *
+     * @param viewMatrix The camera view matrix of the frame.
+     * @param anchorMatrix The model matrix of the anchor the tiles are attached to.
+     * @param targets The tiles that can be focused.
+     * @param tiles The tile ids of {@code targets}.
+     * @return The index of the focused target, or -1.
+     */
+    public int update(float[] viewMatrix, float[] anchorMatrix, Pickable[] targets,
+            Tile[] tiles) {
+        long startTime = System.nanoTime();
+        if (mHasResult && !hasMoved(viewMatrix, mLastViewMatrix)
+                && !hasMoved(anchorMatrix, mLastAnchorMatrix)) {
+            return mFocusedIndex;
+        }
+        System.arraycopy(viewMatrix, 0, mLastViewMatrix, 0, 16);
+        System.arraycopy(anchorMatrix, 0, mLastAnchorMatrix, 0, 16);
+
+        int focused = -1;
+        if (mNextSearchIndex == 0 && mFocusedIndex >= 0 && mFocusedIndex < targets.length
+                && isCentreHit(targets[mFocusedIndex])) {
+            focused = mFocusedIndex;
+        } else {
+            for (int i = mNextSearchIndex; i < targets.length; i++) {
+                if (i != mFocusedIndex && isCentreHit(targets[i])) {
+                    focused = i;
+                    break;
+                }
+                if (i + 1 < targets.length
+                        && System.nanoTime() - startTime > FRAME_BUDGET_NANOS) {
+                    // Out of time: go on with the next tile in the next frame. Counted rather
+                    // than logged, as building a message would allocate every frame.
+                    mNextSearchIndex = i + 1;
+                    mHasResult = false;
+                    mOverBudgetCount++;
+                    return mFocusedIndex;
+                }
+            }
+        }
+        mNextSearchIndex = 0;
+        mHasResult = true;
+        setFocus(focused, focused >= 0 ? tiles[focused] : null);
+
+        if (System.nanoTime() - startTime > FRAME_BUDGET_NANOS) {
+            mOverBudgetCount++;
+        }
+        return mFocusedIndex;
+    }
+
+    /**
+     * Returns the number of updates that took longer than {@link #FRAME_BUDGET_NANOS}, including
+     * the ones cut short.
+     */
+    public int getOverBudgetCount() {
+        return mOverBudgetCount;
+    }
+
+    /** Returns the tile under the centre of the screen, or null. Safe from any thread. */
+    public Tile getFocusedTile() {
+        return mFocusedTile;
+    }
+
+    private void setFocus(int index, Tile tile) {
+        if (index != mFocusedIndex) {
+            mFocusedIndex = index;
+            mFocusedTile = tile;
+            mMainHandler.post(mNotifyFocusChanged);
+        }
+    }
+
+    private boolean isCentreHit(Pickable target) {
+        return mRayPicker.pick(target, 0.0f, 0.0f, mRayHit);
+    }
+
+    private static boolean hasMoved(float[] matrix, float[] lastMatrix) {
+        for (int i = 0; i < 16; i++) {
+            if (Math.abs(matrix[i] - lastMatrix[i]) > MOVEMENT_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
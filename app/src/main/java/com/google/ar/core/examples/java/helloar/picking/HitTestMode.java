@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * How touches are resolved against the pickable objects.
+ */
+public enum HitTestMode {
+    /**
+     * Casts the unprojected touch ray through the triangle hierarchy of each object. The
+     * default, as the cost grows with the log of the triangle count.
+     */
+    RAY,
+    /**
+     * Tests the touch against every triangle projected to the screen. Opt-in, for objects of a
+     * few triangles only, as every vertex is projected.
+     */
+    SCREEN_SPACE
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+
+/**
+ * Tests every object under a touch in one pass and keeps the one closest to the camera. Depth is
+ * the clip space w of the hit point, which for a perspective projection is its view space
+ * distance along the camera axis, so hits on different objects compare directly.
+ *
+ * <p>Instances hold scratch state and must only be used from one thread.
+ */
+public class NearestPicker {
+    private final RayPicker mRayPicker = new RayPicker();
+    private final RayHit mRayHit = new RayHit();
+    private final ScreenSpaceHitTester mScreenSpaceHitTester = new ScreenSpaceHitTester();
+    private HitTestMode mHitTestMode = HitTestMode.RAY;
+
+    public NearestPicker() {
+    }
+
+    public void setHitTestMode(HitTestMode hitTestMode) {
+        mHitTestMode = hitTestMode;
+    }
+
+    /**
+     * Finds the closest object under a touch, for callers that only need its index.
+     *
+     * @see #pick(Pickable[], Tile[], float, float, PickResult)
+     */
+    public boolean pick(Pickable[] targets, float ndcX, float ndcY, PickResult result) {
+        return pick(targets, null, ndcX, ndcY, result);
+    }
+
+    /**
+     * Finds the closest object under a touch.
+     *
+     * @param targets The objects as they were last drawn.
+     * @param tiles The tile each object stands for, in the same order, or null.
+     * @param ndcX Horizontal position in normalized device coordinates.
+     * @param ndcY Vertical position in normalized device coordinates.
+     * @param result Receives the closest hit. Reset by this call.
+     * @return true if any object was hit.
+     */
+    public boolean pick(Pickable[] targets, Tile[] tiles, float ndcX, float ndcY,
+            PickResult result) {
+        result.reset();
+        for (int i = 0; i < targets.length; i++) {
+            Pickable target = targets[i];
+            Tile tile = tiles == null ? null : tiles[i];
+            test(i, tile, target.getModelViewProjectionMatrix(), target.getCollisionMesh(),
+                target.getBvh(), target.getScreenBounds(), ndcX, ndcY, result);
+        }
+        return result.isHit();
+    }
+
+    /**
+     * Tests one object and records it in {@code result} if it is hit closer than the current
+     * hit.
+     *
+     * @return true if the object replaced the current hit.
+     */
+    boolean test(int targetIndex, Tile tile, float[] modelViewProjection, CollisionMesh mesh,
+            TriangleBvh bvh, ScreenBounds screenBounds, float ndcX, float ndcY,
+            PickResult result) {
+        switch (mHitTestMode) {
+            case SCREEN_SPACE:
+                if (mesh == null || !screenBounds.contains(ndcX, ndcY)
+                        || !mScreenSpaceHitTester.hitTest(modelViewProjection, mesh, ndcX, ndcY)
+                        || mScreenSpaceHitTester.getHitDepth() >= result.getDepth()) {
+                    return false;
+                }
+                result.set(tile, targetIndex, mScreenSpaceHitTester.getHitTriangle(),
+                    mScreenSpaceHitTester.getHitDepth(), mScreenSpaceHitTester.getHitU(),
+                    mScreenSpaceHitTester.getHitV());
+                return true;
+            case RAY:
+            default:
+                if (!mRayPicker.pick(modelViewProjection, bvh, screenBounds, ndcX, ndcY,
+                        mRayHit)) {
+                    return false;
+                }
+                float depth = clipW(modelViewProjection, mRayPicker.getRay(),
+                    mRayHit.getDistance());
+                if (depth >= result.getDepth()) {
+                    return false;
+                }
+                result.set(tile, targetIndex, mRayHit.getTriangleIndex(), depth, mRayHit.getU(),
+                    mRayHit.getV());
+                return true;
+        }
+    }
+
+    /** Returns the clip space w of the model space point origin + t * direction. */
+    private static float clipW(float[] m, PickingRay ray, float t) {
+        float x = ray.mOrigin[0] + t * ray.mDirection[0];
+        float y = ray.mOrigin[1] + t * ray.mDirection[1];
+        float z = ray.mOrigin[2] + t * ray.mDirection[2];
+        return m[3] * x + m[7] * y + m[11] * z + m[15];
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+
+/**
+ * The closest object under a touch, with the point on its surface. Reusable: call
+ * {@link #reset()} before a new query.
+ *
+ * <p>The surface point is given as barycentric weights of the hit triangle, so a tile can map it
+ * to a sub-region such as a button without another picking pass.
+ */
+public class PickResult {
+    private Tile mTile;
+    private int mTargetIndex;
+    private int mTriangleIndex;
+    private float mDepth;
+    private float mU;
+    private float mV;
+
+    public PickResult() {
+        reset();
+    }
+
+    /** Copies another result, for example to hand it to another thread. */
+    public PickResult(PickResult other) {
+        mTile = other.mTile;
+        mTargetIndex = other.mTargetIndex;
+        mTriangleIndex = other.mTriangleIndex;
+        mDepth = other.mDepth;
+        mU = other.mU;
+        mV = other.mV;
+    }
+
+    /** Clears the result so that any hit will be accepted as the closest one. */
+    public void reset() {
+        mTile = null;
+        mTargetIndex = -1;
+        mTriangleIndex = -1;
+        mDepth = Float.POSITIVE_INFINITY;
+        mU = 0.0f;
+        mV = 0.0f;
+    }
+
+    void set(Tile tile, int targetIndex, int triangleIndex, float depth, float u, float v) {
+        mTile = tile;
+        mTargetIndex = targetIndex;
+        mTriangleIndex = triangleIndex;
+        mDepth = depth;
+        mU = u;
+        mV = v;
+    }
+
+    /** Returns whether an object was hit since the last {@link #reset()}. */
+    public boolean isHit() {
+        return mTargetIndex >= 0;
+    }
+
+    /** Returns the tile that was hit, or null. */
+    public Tile getTile() {
+        return mTile;
+    }
+
+    /** Returns the index of the hit object in the order the objects were tested, or -1. */
+    public int getTargetIndex() {
+        return mTargetIndex;
+    }
+
+    /** Returns the index of the hit triangle within the object's collision mesh, or -1. */
+    public int getTriangleIndex() {
+        return mTriangleIndex;
+    }
+
+    /** Returns the view space distance of the hit point along the camera axis. */
+    public float getDepth() {
+        return mDepth;
+    }
+
+    /** Returns the barycentric weight of the hit triangle's second vertex. */
+    public float getU() {
+        return mU;
+    }
+
+    /** Returns the barycentric weight of the hit triangle's third vertex. */
+    public float getV() {
+        return mV;
+    }
+}
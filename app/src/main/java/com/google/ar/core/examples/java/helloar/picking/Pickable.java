@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * An object that can be hit by touches, as it was last drawn.
+ */
+public interface Pickable {
+    /** Returns the 4x4 model view projection matrix the object was last drawn with. */
+    float[] getModelViewProjectionMatrix();
+
+    /** Returns the model space triangles, or null if the object is not loaded. */
+    CollisionMesh getCollisionMesh();
+
+    /** Returns the hierarchy over the collision mesh, or null if the object is not loaded. */
+    TriangleBvh getBvh();
+
+    /** Returns the screen rectangle covered by the object when it was last drawn. */
+    ScreenBounds getScreenBounds();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import android.opengl.Matrix;
+
+/**
+ * A ray in the model space of an object, obtained by unprojecting a point in normalized device
+ * coordinates through the inverse of the object's model view projection matrix.
+ */
+public class PickingRay {
+    final float[] mOrigin = new float[3];
+    final float[] mDirection = new float[3];
+
+    // Temporary matrices allocated here to avoid allocations for each unprojection.
+    private final float[] mInverseMatrix = new float[16];
+    private final float[] mClipPoint = new float[4];
+    private final float[] mNearPoint = new float[4];
+    private final float[] mFarPoint = new float[4];
+
+    public PickingRay() {
+    }
+
+    /**
+     * Computes the model space ray passing through a point on the screen.
+     *
+     * @param modelViewProjection The 4x4 model view projection matrix of the object, in
+     *     column-major order.
+     * @param ndcX Horizontal touch position in normalized device coordinates, -1 to 1.
+     * @param ndcY Vertical touch position in normalized device coordinates, -1 (bottom) to 1.
+     * @return false if the matrix could not be inverted, in which case the ray is undefined.
+     */
+    public boolean set(float[] modelViewProjection, float ndcX, float ndcY) {
+        if (!Matrix.invertM(mInverseMatrix, 0, modelViewProjection, 0)) {
+            return false;
+        }
+
+        mClipPoint[0] = ndcX;
+        mClipPoint[1] = ndcY;
+        mClipPoint[2] = -1.0f;
+        mClipPoint[3] = 1.0f;
+        Matrix.multiplyMV(mNearPoint, 0, mInverseMatrix, 0, mClipPoint, 0);
+        mClipPoint[2] = 1.0f;
+        Matrix.multiplyMV(mFarPoint, 0, mInverseMatrix, 0, mClipPoint, 0);
+        if (mNearPoint[3] == 0.0f || mFarPoint[3] == 0.0f) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            mOrigin[i] = mNearPoint[i] / mNearPoint[3];
+            mDirection[i] = mFarPoint[i] / mFarPoint[3] - mOrigin[i];
+        }
+        return true;
+    }
+
+    public float[] getOrigin() {
+        return mOrigin;
+    }
+
+    public float[] getDirection() {
+        return mDirection;
+    }
+}
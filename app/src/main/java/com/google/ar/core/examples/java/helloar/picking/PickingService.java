@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Resolves touches against {@link PickingSnapshot}s on a background thread, so that hit testing
+ * never delays rendering. Results are delivered on the main thread.
+ *
+ * <p>The service owns two snapshots, so the GL thread can fill one while the worker resolves the
+ * other. Snapshots, results and the tasks that carry them between threads are all reused, so a
+ * tap allocates nothing once the service is running.
+ */
+public class PickingService {
+    /**
+     * Receives picking results on the main thread.
+     */
+    public interface Listener {
+        /**
+         * Called when a touch of a submitted snapshot hit a tile. Only the first touch that hit
+         * something is reported per snapshot, with the tile closest to the camera under it.
+         *
+         * @param result Only valid during the call, it is reused afterwards. Copy it with
+         *     {@link PickResult#PickResult(PickResult)} to keep it.
+         */
+        void onTilePicked(PickResult result);
+    }
+
+    private static final int SNAPSHOT_COUNT = 2;
+
+    // Life cycle of a snapshot slot.
+    private static final int FREE = 0;
+    private static final int FILLING = 1;
+    private static final int QUEUED = 2;
+    private static final int RESOLVING = 3;
+
+    private final Listener mListener;
+    private final Executor mResultExecutor;
+    private volatile HitTestMode mHitTestMode = HitTestMode.RAY;
+
+    private final PickingSnapshot[] mSnapshots = new PickingSnapshot[SNAPSHOT_COUNT];
+    private final PickResult[] mResults = new PickResult[SNAPSHOT_COUNT];
+    private final Delivery[] mDeliveries = new Delivery[SNAPSHOT_COUNT];
+
+    // Slot states and the order in which queued slots were submitted, guarded by mLock.
+    private final Object mLock = new Object();
+    private final int[] mStates = new int[SNAPSHOT_COUNT];
+    private final int[] mQueue = new int[SNAPSHOT_COUNT];
+    private int mQueueHead;
+    private int mQueueCount;
+    private boolean mShutdown;
+
+    private final Thread mWorker;
+
+    // Scratch objects, only used on the worker thread.
+    private final float[] mModelViewProjection = new float[16];
+    private final NearestPicker mNearestPicker = new NearestPicker();
+
+    /**
+     * @param maxTargets Maximum number of objects a snapshot can hold.
+     * @param maxTouches Maximum number of touches a snapshot can hold.
+     */
+    public PickingService(Listener listener, int maxTargets, int maxTouches) {
+        this(listener, new MainThreadExecutor(), maxTargets, maxTouches);
+    }
+
+    /**
+     * @param resultExecutor Runs the delivery of each result, on the thread the listener expects.
+     */
+    PickingService(Listener listener, Executor resultExecutor, int maxTargets, int maxTouches) {
+        mListener = listener;
+        mResultExecutor = resultExecutor;
+        for (int slot = 0; slot < SNAPSHOT_COUNT; slot++) {
+            mSnapshots[slot] = new PickingSnapshot(maxTargets, maxTouches);
+            mResults[slot] = new PickResult();
+            mDeliveries[slot] = new Delivery(slot);
+        }
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                resolveQueuedSnapshots();
+            }
+        }, "PickingService");
+        mWorker.start();
+    }
+
+    public void setHitTestMode(HitTestMode hitTestMode) {
+        mHitTestMode = hitTestMode;
+    }
+
+    /**
+     * Returns an empty snapshot to fill, or null if both snapshots are still being resolved or
+     * delivered, or the service was shut down. The caller should then drop its touches rather
+     * than wait for the worker.
+     */
+    public PickingSnapshot obtainSnapshot() {
+        synchronized (mLock) {
+            if (mShutdown) {
+                return null;
+            }
+            for (int slot = 0; slot < SNAPSHOT_COUNT; slot++) {
+                if (mStates[slot] == FREE) {
+                    mStates[slot] = FILLING;
+                    return mSnapshots[slot];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Queues a snapshot obtained from {@link #obtainSnapshot()} for resolution. The snapshot must
+     * not be modified afterwards. Snapshots submitted after {@link #shutdown()} are dropped.
+     */
+    public void submit(PickingSnapshot snapshot) {
+        int slot = slotOf(snapshot);
+        snapshot.freeze();
+        synchronized (mLock) {
+            if (mStates[slot] != FILLING) {
+                throw new IllegalStateException("Snapshot was already submitted.");
+            }
+            if (mShutdown) {
+                snapshot.recycle();
+                mStates[slot] = FREE;
+                return;
+            }
+            mStates[slot] = QUEUED;
+            mQueue[(mQueueHead + mQueueCount) % SNAPSHOT_COUNT] = slot;
+            mQueueCount++;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the worker thread. Snapshots submitted afterwards are dropped.
+     */
+    public void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            mLock.notifyAll();
+        }
+        mWorker.interrupt();
+    }
+
+    private int slotOf(PickingSnapshot snapshot) {
+        for (int slot = 0; slot < SNAPSHOT_COUNT; slot++) {
+            if (mSnapshots[slot] == snapshot) {
+                return slot;
+            }
+        }
+        throw new IllegalArgumentException("Snapshot was not obtained from this service.");
+    }
+
+    private void resolveQueuedSnapshots() {
+        while (true) {
+            int slot;
+            synchronized (mLock) {
+                while (mQueueCount == 0 && !mShutdown) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mShutdown) {
+                    return;
+                }
+                slot = mQueue[mQueueHead];
+                mQueueHead = (mQueueHead + 1) % SNAPSHOT_COUNT;
+                mQueueCount--;
+                mStates[slot] = RESOLVING;
+            }
+            if (resolve(mSnapshots[slot], mResults[slot])) {
+                // The slot stays taken until the listener has seen the result.
+                mResultExecutor.execute(mDeliveries[slot]);
+            } else {
+                release(slot);
+            }
+        }
+    }
+
+    private void release(int slot) {
+        synchronized (mLock) {
+            mSnapshots[slot].recycle();
+            mStates[slot] = FREE;
+        }
+    }
+
+    /**
+     * Leaves the closest hit of the first touch that hit anything in {@code result}.
+     */
+    private boolean resolve(PickingSnapshot snapshot, PickResult result) {
+        mNearestPicker.setHitTestMode(mHitTestMode);
+        for (int touch = 0; touch < snapshot.getTouchCount(); touch++) {
+            float ndcX = snapshot.getTouchX(touch);
+            float ndcY = snapshot.getTouchY(touch);
+            result.reset();
+            for (int target = 0; target < snapshot.getTargetCount(); target++) {
+                snapshot.getModelViewProjection(target, mModelViewProjection);
+                mNearestPicker.test(target, snapshot.getTile(target), mModelViewProjection,
+                    snapshot.getMesh(target), snapshot.getBvh(target),
+                    snapshot.getScreenBounds(target), ndcX, ndcY, result);
+            }
+            if (result.isHit()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Hands the result of one slot to the listener, then frees the slot. */
+    private class Delivery implements Runnable {
+        private final int mSlot;
+
+        Delivery(int slot) {
+            mSlot = slot;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mListener.onTilePicked(mResults[mSlot]);
+            } finally {
+                release(mSlot);
+            }
+        }
+    }
+
+    /** Posts to the main looper. The looper recycles its messages, so posting allocates nothing. */
+    private static class MainThreadExecutor implements Executor {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    }
+}
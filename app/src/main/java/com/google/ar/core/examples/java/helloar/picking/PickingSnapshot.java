@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+
+/**
+ * The pickable geometry of one frame together with the touches to resolve against it. Obtained
+ * from {@link PickingService#obtainSnapshot()}, filled on the GL thread, then handed back with
+ * {@link PickingService#submit(PickingSnapshot)}, after which it can no longer be modified until
+ * the service recycles it. Matrices and screen bounds are copied into preallocated storage,
+ * collision meshes and hierarchies are shared since they never change after loading.
+ */
+public class PickingSnapshot {
+    private final Tile[] mTiles;
+    private final float[] mModelViewProjectionMatrices;
+    private final CollisionMesh[] mMeshes;
+    private final TriangleBvh[] mBvhs;
+    private final ScreenBounds[] mScreenBounds;
+    private int mTargetCount;
+
+    private final float[] mTouches;
+    private int mTouchCount;
+
+    private boolean mFrozen;
+
+    /**
+     * @param maxTargets Maximum number of objects that can be added.
+     * @param maxTouches Maximum number of touches that can be added.
+     */
+    PickingSnapshot(int maxTargets, int maxTouches) {
+        mTiles = new Tile[maxTargets];
+        mModelViewProjectionMatrices = new float[16 * maxTargets];
+        mMeshes = new CollisionMesh[maxTargets];
+        mBvhs = new TriangleBvh[maxTargets];
+        mScreenBounds = new ScreenBounds[maxTargets];
+        for (int i = 0; i < maxTargets; i++) {
+            mScreenBounds[i] = new ScreenBounds();
+        }
+        mTouches = new float[2 * maxTouches];
+    }
+
+    /**
+     * Adds an object. Objects are numbered in the order they were added.
+     *
+     * @param tile The tile the object stands for, reported when it is hit.
+     * @param modelViewProjection The matrix the object was last drawn with. Copied.
+     * @param mesh The model space triangles of the object.
+     * @param bvh The hierarchy over {@code mesh}.
+     * @param screenBounds The screen rectangle covered by the object. Copied.
+     */
+    public void addTarget(Tile tile, float[] modelViewProjection, CollisionMesh mesh,
+            TriangleBvh bvh, ScreenBounds screenBounds) {
+        checkNotFrozen();
+        mTiles[mTargetCount] = tile;
+        System.arraycopy(modelViewProjection, 0,
+            mModelViewProjectionMatrices, 16 * mTargetCount, 16);
+        mMeshes[mTargetCount] = mesh;
+        mBvhs[mTargetCount] = bvh;
+        mScreenBounds[mTargetCount].set(screenBounds);
+        mTargetCount++;
+    }
+
+    /**
+     * Adds a touch, in normalized device coordinates.
+     */
+    public void addTouch(float ndcX, float ndcY) {
+        checkNotFrozen();
+        mTouches[2 * mTouchCount] = ndcX;
+        mTouches[2 * mTouchCount + 1] = ndcY;
+        mTouchCount++;
+    }
+
+    void freeze() {
+        mFrozen = true;
+    }
+
+    /**
+     * Empties the snapshot for the next frame. Drops the references to the tiles and meshes, so a
+     * recycled snapshot does not keep released geometry alive.
+     */
+    void recycle() {
+        for (int target = 0; target < mTargetCount; target++) {
+            mTiles[target] = null;
+            mMeshes[target] = null;
+            mBvhs[target] = null;
+        }
+        mTargetCount = 0;
+        mTouchCount = 0;
+        mFrozen = false;
+    }
+
+    private void checkNotFrozen() {
+        if (mFrozen) {
+            throw new IllegalStateException("Snapshot was already submitted.");
+        }
+    }
+
+    int getTargetCount() {
+        return mTargetCount;
+    }
+
+    Tile getTile(int target) {
+        return mTiles[target];
+    }
+
+    /** Copies the matrix of a target into {@code matrix}. */
+    void getModelViewProjection(int target, float[] matrix) {
+        System.arraycopy(mModelViewProjectionMatrices, 16 * target, matrix, 0, 16);
+    }
+
+    CollisionMesh getMesh(int target) {
+        return mMeshes[target];
+    }
+
+    TriangleBvh getBvh(int target) {
+        return mBvhs[target];
+    }
+
+    ScreenBounds getScreenBounds(int target) {
+        return mScreenBounds[target];
+    }
+
+    int getTouchCount() {
+        return mTouchCount;
+    }
+
+    float getTouchX(int touch) {
+        return mTouches[2 * touch];
+    }
+
+    float getTouchY(int touch) {
+        return mTouches[2 * touch + 1];
+    }
+}
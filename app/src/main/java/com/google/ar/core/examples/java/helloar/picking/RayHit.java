@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * Result of a ray cast against a {@link TriangleBvh}. Instances are meant to be reused: they also
+ * hold the traversal scratch space, so keeping one instance per thread makes ray casts
+ * allocation-free.
+ */
+public class RayHit {
+    // Deep enough for any tree built by TriangleBvh, which splits at the median.
+    private static final int MAX_TRAVERSAL_DEPTH = 64;
+
+    final int[] mTraversalStack = new int[MAX_TRAVERSAL_DEPTH];
+    // Reciprocal of the ray direction, per axis.
+    final float[] mInverseDirection = new float[3];
+
+    private float mDistance;
+    private int mTriangleIndex;
+    private float mU;
+    private float mV;
+
+    public RayHit() {
+        reset();
+    }
+
+    /**
+     * Clears the hit so that any intersection will be accepted as the closest one.
+     */
+    public void reset() {
+        mDistance = Float.POSITIVE_INFINITY;
+        mTriangleIndex = -1;
+    }
+
+    void set(float distance, int triangleIndex, float u, float v) {
+        mDistance = distance;
+        mTriangleIndex = triangleIndex;
+        mU = u;
+        mV = v;
+    }
+
+    /** Returns whether a triangle was hit since the last {@link #reset()}. */
+    public boolean isHit() {
+        return mTriangleIndex >= 0;
+    }
+
+    /**
+     * Returns the ray parameter of the closest hit, in units of the ray direction length.
+     */
+    public float getDistance() {
+        return mDistance;
+    }
+
+    /** Returns the index of the hit triangle within the mesh index array, or -1. */
+    public int getTriangleIndex() {
+        return mTriangleIndex;
+    }
+
+    /** Returns the barycentric weight of the hit triangle's second vertex. */
+    public float getU() {
+        return mU;
+    }
+
+    /** Returns the barycentric weight of the hit triangle's third vertex. */
+    public float getV() {
+        return mV;
+    }
+}
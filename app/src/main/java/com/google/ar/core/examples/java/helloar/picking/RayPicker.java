@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * Casts the ray under a screen point through the triangle hierarchy of an object, after
+ * rejecting points outside its screen bounds. Instances hold scratch state and must only be used
+ * from one thread.
+ */
+public class RayPicker {
+    private final PickingRay mPickingRay = new PickingRay();
+
+    public RayPicker() {
+    }
+
+    /**
+     * Picks an object as it was last drawn.
+     *
+     * @param target The object to test.
+     * @param ndcX Horizontal position in normalized device coordinates.
+     * @param ndcY Vertical position in normalized device coordinates.
+     * @param hit Receives the closest hit. Reset by this call.
+     * @return true if the object was hit.
+     */
+    public boolean pick(Pickable target, float ndcX, float ndcY, RayHit hit) {
+        return pick(target.getModelViewProjectionMatrix(), target.getBvh(),
+            target.getScreenBounds(), ndcX, ndcY, hit);
+    }
+
+    /**
+     * Picks an object given its parts.
+     *
+     * @param modelViewProjection The matrix the object was drawn with.
+     * @param bvh The hierarchy over the object's triangles, or null if it is not loaded.
+     * @param screenBounds The screen rectangle covered by the object.
+     * @param ndcX Horizontal position in normalized device coordinates.
+     * @param ndcY Vertical position in normalized device coordinates.
+     * @param hit Receives the closest hit. Reset by this call.
+     * @return true if the object was hit.
+     */
+    public boolean pick(float[] modelViewProjection, TriangleBvh bvh, ScreenBounds screenBounds,
+            float ndcX, float ndcY, RayHit hit) {
+        hit.reset();
+        if (bvh == null || !screenBounds.contains(ndcX, ndcY)
+                || !mPickingRay.set(modelViewProjection, ndcX, ndcY)) {
+            return false;
+        }
+        return bvh.raycast(mPickingRay.getOrigin(), mPickingRay.getDirection(), hit);
+    }
+
+    /** Returns the model space ray of the last pick. */
+    PickingRay getRay() {
+        return mPickingRay;
+    }
+}
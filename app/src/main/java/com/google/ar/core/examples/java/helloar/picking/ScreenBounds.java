@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * Screen space rectangle, in normalized device coordinates, enclosing the projection of a model
+ * space bounding box. Used to reject touches that cannot hit an object before any triangle is
+ * tested.
+ */
+public class ScreenBounds {
+    private float mMinX;
+    private float mMinY;
+    private float mMaxX;
+    private float mMaxY;
+
+    public ScreenBounds() {
+        clear();
+    }
+
+    /** Copies another rectangle into this one. */
+    public void set(ScreenBounds other) {
+        mMinX = other.mMinX;
+        mMinY = other.mMinY;
+        mMaxX = other.mMaxX;
+        mMaxY = other.mMaxY;
+    }
+
+    /**
+     * Empties the rectangle, so that no point is contained. Objects that were not drawn should
+     * not be hit.
+     */
+    public void clear() {
+        mMinX = Float.POSITIVE_INFINITY;
+        mMinY = Float.POSITIVE_INFINITY;
+        mMaxX = Float.NEGATIVE_INFINITY;
+        mMaxY = Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Projects the eight corners of a model space box. If a corner lies behind the camera the
+     * projection is unbounded, and the rectangle grows to the whole screen.
+     *
+     * @param modelViewProjection The 4x4 model view projection matrix, in column-major order.
+     * @param modelBounds The box as {minX, minY, minZ, maxX, maxY, maxZ}.
+     */
+    public void update(float[] modelViewProjection, float[] modelBounds) {
+        clear();
+        float[] m = modelViewProjection;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = modelBounds[(corner & 1) == 0 ? 0 : 3];
+            float y = modelBounds[(corner & 2) == 0 ? 1 : 4];
+            float z = modelBounds[(corner & 4) == 0 ? 2 : 5];
+            float w = m[3] * x + m[7] * y + m[11] * z + m[15];
+            if (w <= 0.0f) {
+                mMinX = -1.0f;
+                mMinY = -1.0f;
+                mMaxX = 1.0f;
+                mMaxY = 1.0f;
+                return;
+            }
+            float screenX = (m[0] * x + m[4] * y + m[8] * z + m[12]) / w;
+            float screenY = (m[1] * x + m[5] * y + m[9] * z + m[13]) / w;
+            mMinX = Math.min(mMinX, screenX);
+            mMinY = Math.min(mMinY, screenY);
+            mMaxX = Math.max(mMaxX, screenX);
+            mMaxY = Math.max(mMaxY, screenY);
+        }
+    }
+
+    /** Returns whether a point in normalized device coordinates lies inside the rectangle. */
+    public boolean contains(float ndcX, float ndcY) {
+        return ndcX >= mMinX && ndcX <= mMaxX && ndcY >= mMinY && ndcY <= mMaxY;
+    }
+}
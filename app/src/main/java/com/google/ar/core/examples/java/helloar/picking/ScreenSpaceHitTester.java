@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * Tests a point in normalized device coordinates against the projected triangles of a mesh.
+ *
+ * <p>Every vertex is projected once into a scratch buffer that is kept between calls, and the
+ * triangle edges are then tested straight from that buffer. After the first call for the largest
+ * mesh, hit tests allocate nothing.
+ */
+public class ScreenSpaceHitTester {
+    private static final int INITIAL_VERTEX_CAPACITY = 64;
+
+    // x, y in normalized device coordinates and w, per vertex.
+    private float[] mProjectedVertices = new float[3 * INITIAL_VERTEX_CAPACITY];
+
+    // Closest hit of the last test.
+    private int mHitTriangle;
+    private float mHitDepth;
+    private float mHitU;
+    private float mHitV;
+
+    public ScreenSpaceHitTester() {
+    }
+
+    /**
+     * Returns whether the point lies inside any projected triangle of the mesh, and records the
+     * closest such triangle. Triangles with a vertex behind the camera are skipped.
+     *
+     * @param modelViewProjection The 4x4 model view projection matrix, in column-major order.
+     * @param mesh The model space triangles.
+     * @param ndcX Horizontal position in normalized device coordinates.
+     * @param ndcY Vertical position in normalized device coordinates.
+     */
+    public boolean hitTest(float[] modelViewProjection, CollisionMesh mesh, float ndcX,
+            float ndcY) {
+        float[] positions = mesh.mPositions;
+        int[] indices = mesh.mIndices;
+        int vertexCount = positions.length / 3;
+        if (mProjectedVertices.length < 3 * vertexCount) {
+            int capacity = mProjectedVertices.length;
+            while (capacity < 3 * vertexCount) {
+                capacity *= 2;
+            }
+            mProjectedVertices = new float[capacity];
+        }
+
+        float[] m = modelViewProjection;
+        for (int i = 0; i < vertexCount; i++) {
+            float x = positions[3 * i];
+            float y = positions[3 * i + 1];
+            float z = positions[3 * i + 2];
+            float w = m[3] * x + m[7] * y + m[11] * z + m[15];
+            float inverseW = w > 0.0f ? 1.0f / w : 0.0f;
+            mProjectedVertices[3 * i] = (m[0] * x + m[4] * y + m[8] * z + m[12]) * inverseW;
+            mProjectedVertices[3 * i + 1] = (m[1] * x + m[5] * y + m[9] * z + m[13]) * inverseW;
+            mProjectedVertices[3 * i + 2] = w;
+        }
+
+        mHitTriangle = -1;
+        mHitDepth = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = 3 * indices[i];
+            int b = 3 * indices[i + 1];
+            int c = 3 * indices[i + 2];
+            if (mProjectedVertices[a + 2] <= 0.0f || mProjectedVertices[b + 2] <= 0.0f
+                    || mProjectedVertices[c + 2] <= 0.0f) {
+                continue;
+            }
+            testTriangle(i / 3, a, b, c, ndcX, ndcY);
+        }
+        return mHitTriangle >= 0;
+    }
+
+    /** Returns the index of the closest hit triangle of the last test, or -1. */
+    public int getHitTriangle() {
+        return mHitTriangle;
+    }
+
+    /** Returns the view space depth of the closest hit of the last test. */
+    public float getHitDepth() {
+        return mHitDepth;
+    }
+
+    /** Returns the barycentric weight of the second vertex at the closest hit. */
+    public float getHitU() {
+        return mHitU;
+    }
+
+    /** Returns the barycentric weight of the third vertex at the closest hit. */
+    public float getHitV() {
+        return mHitV;
+    }
+
+    /**
+     * Records the triangle if it contains the point and is closer than the current hit. Screen
+     * space barycentrics are corrected for perspective with the projected w of every vertex, which
+     * is also the view space depth.
+     */
+    private void testTriangle(int triangle, int a, int b, int c, float x, float y) {
+        float area = edge(a, b, mProjectedVertices[c], mProjectedVertices[c + 1]);
+        if (area == 0.0f) {
+            return;
+        }
+        float weightA = edge(b, c, x, y) / area;
+        float weightB = edge(c, a, x, y) / area;
+        float weightC = edge(a, b, x, y) / area;
+        if (weightA < 0.0f || weightB < 0.0f || weightC < 0.0f) {
+            return;
+        }
+
+        float perspectiveA = weightA / mProjectedVertices[a + 2];
+        float perspectiveB = weightB / mProjectedVertices[b + 2];
+        float perspectiveC = weightC / mProjectedVertices[c + 2];
+        float depth = 1.0f / (perspectiveA + perspectiveB + perspectiveC);
+        if (depth >= mHitDepth) {
+            return;
+        }
+        mHitTriangle = triangle;
+        mHitDepth = depth;
+        mHitU = perspectiveB * depth;
+        mHitV = perspectiveC * depth;
+    }
+
+    /** Signed doubled area of the projected vertices from, to and the point (x, y). */
+    private float edge(int from, int to, float x, float y) {
+        float fromX = mProjectedVertices[from];
+        float fromY = mProjectedVertices[from + 1];
+        return (mProjectedVertices[to] - fromX) * (y - fromY)
+            - (mProjectedVertices[to + 1] - fromY) * (x - fromX);
+    }
+}
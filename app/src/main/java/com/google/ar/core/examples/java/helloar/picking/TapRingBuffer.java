@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free single-producer, single-consumer ring of touch records. The UI thread offers records
+ * and the GL thread drains them. Records are stored in primitive arrays, so neither side
+ * allocates and no framework {@code MotionEvent} is kept beyond its callback.
+ */
+public class TapRingBuffer {
+    /**
+     * Kind of touch gesture a record stands for.
+     */
+    public enum Kind {
+        /** A short tap. */
+        SINGLE_TAP,
+        /** A press held until the long press timeout, starts dragging. */
+        LONG_PRESS,
+        /** The finger moved after a long press. */
+        DRAG_MOVE,
+        /** The finger was lifted after a long press. */
+        DRAG_END
+    }
+
+    private final int mMask;
+    private final float[] mX;
+    private final float[] mY;
+    private final long[] mTimestamp;
+    private final Kind[] mKind;
+
+    // Next slot to read, only written by the consumer.
+    private final AtomicInteger mHead = new AtomicInteger();
+    // Next slot to write, only written by the producer.
+    private final AtomicInteger mTail = new AtomicInteger();
+
+    /**
+     * @param capacity Maximum number of pending records, rounded up to a power of two.
+     */
+    public TapRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mMask = size - 1;
+        mX = new float[size];
+        mY = new float[size];
+        mTimestamp = new long[size];
+        mKind = new Kind[size];
+    }
+
+    /**
+     * Appends a record. Must only be called from the producer thread.
+     *
+     * @param x Horizontal position in view pixels.
+     * @param y Vertical position in view pixels.
+     * @param timestamp Event time, as returned by {@code MotionEvent.getEventTime()}.
+     * @param kind The gesture kind.
+     * @return false if the ring is full, in which case the record is dropped.
+     */
+    public boolean offer(float x, float y, long timestamp, Kind kind) {
+        int tail = mTail.get();
+        if (tail - mHead.get() > mMask) {
+            return false;
+        }
+        int slot = tail & mMask;
+        mX[slot] = x;
+        mY[slot] = y;
+        mTimestamp[slot] = timestamp;
+        mKind[slot] = kind;
+        // Publishes the slot contents to the consumer.
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Moves every pending record into the batch, replacing its previous contents. Must only be
+     * called from the consumer thread.
+     *
+     * @return The number of records drained.
+     */
+    public int drainTo(Batch batch) {
+        int head = mHead.get();
+        int count = Math.min(mTail.get() - head, batch.mX.length);
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) & mMask;
+            batch.mX[i] = mX[slot];
+            batch.mY[i] = mY[slot];
+            batch.mTimestamp[i] = mTimestamp[slot];
+            batch.mKind[i] = mKind[slot];
+        }
+        batch.mCount = count;
+        // Hands the slots back to the producer.
+        mHead.lazySet(head + count);
+        return count;
+    }
+
+    /** Creates a batch large enough to drain the whole ring at once. */
+    public Batch createBatch() {
+        return new Batch(mMask + 1);
+    }
+
+    /**
+     * Records drained from the ring in one go, reused from frame to frame.
+     */
+    public static class Batch {
+        private final float[] mX;
+        private final float[] mY;
+        private final long[] mTimestamp;
+        private final Kind[] mKind;
+        private int mCount;
+
+        private Batch(int capacity) {
+            mX = new float[capacity];
+            mY = new float[capacity];
+            mTimestamp = new long[capacity];
+            mKind = new Kind[capacity];
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public float getX(int index) {
+            return mX[index];
+        }
+
+        public float getY(int index) {
+            return mY[index];
+        }
+
+        public long getTimestamp(int index) {
+            return mTimestamp[index];
+        }
+
+        public Kind getKind(int index) {
+            return mKind[index];
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * Moves tiles across the pinboard. Tiles are offset in the x/y plane of the board's model space,
+ * which is the plane the board faces from. A drag starts with one mesh pick to find the closest
+ * tile under the finger; every move after that only intersects the touch ray with the plane of
+ * the grabbed point, so dragging costs the same no matter how many triangles the tiles have.
+ */
+public class TileDragController {
+    private final float[] mOffsets;
+    private final NearestPicker mNearestPicker = new NearestPicker();
+    private final PickResult mPickResult = new PickResult();
+    private final PickingRay mBoardRay = new PickingRay();
+
+    private int mDraggedTile = -1;
+    private float mPlaneZ;
+    // Offset of the dragged tile minus the grabbed point on the plane.
+    private float mGrabX;
+    private float mGrabY;
+
+    /**
+     * @param tileCount Number of tiles that can be moved.
+     */
+    public TileDragController(int tileCount) {
+        mOffsets = new float[2 * tileCount];
+    }
+
+    /**
+     * Selects how the tile under the touch is found when a drag starts. Defaults to
+     * {@link HitTestMode#RAY}.
+     */
+    public void setHitTestMode(HitTestMode hitTestMode) {
+        mNearestPicker.setHitTestMode(hitTestMode);
+    }
+
+    /**
+     * Starts dragging the tile under the touch that is closest to the camera.
+     *
+     * @param tiles The tiles as they were last drawn.
+     * @param boardViewProjection The view projection matrix multiplied by the board's model
+     *     matrix, without any tile offset.
+     * @param ndcX Horizontal touch position in normalized device coordinates.
+     * @param ndcY Vertical touch position in normalized device coordinates.
+     * @return The index of the grabbed tile, or -1 if no tile is under the touch.
+     */
+    public int begin(Pickable[] tiles, float[] boardViewProjection, float ndcX, float ndcY) {
+        mDraggedTile = -1;
+        if (!mNearestPicker.pick(tiles, ndcX, ndcY, mPickResult)) {
+            return -1;
+        }
+        int tile = mPickResult.getTargetIndex();
+        // Drag along the front face of the tile, in board space.
+        float planeZ = tiles[tile].getCollisionMesh().getBounds()[5];
+        if (!intersectPlane(boardViewProjection, planeZ, ndcX, ndcY)) {
+            return -1;
+        }
+        mDraggedTile = tile;
+        mPlaneZ = planeZ;
+        mGrabX = mOffsets[2 * tile] - mBoardRay.mOrigin[0];
+        mGrabY = mOffsets[2 * tile + 1] - mBoardRay.mOrigin[1];
+        return mDraggedTile;
+    }
+
+    /**
+     * Moves the dragged tile so that the grabbed point follows the touch.
+     *
+     * @return true if a tile was moved.
+     */
+    public boolean move(float[] boardViewProjection, float ndcX, float ndcY) {
+        if (mDraggedTile < 0 || !intersectPlane(boardViewProjection, mPlaneZ, ndcX, ndcY)) {
+            return false;
+        }
+        mOffsets[2 * mDraggedTile] = mGrabX + mBoardRay.mOrigin[0];
+        mOffsets[2 * mDraggedTile + 1] = mGrabY + mBoardRay.mOrigin[1];
+        return true;
+    }
+
+    /** Releases the dragged tile, which keeps its last position. */
+    public void end() {
+        mDraggedTile = -1;
+    }
+
+    /** Returns the index of the tile being dragged, or -1. */
+    public int getDraggedTile() {
+        return mDraggedTile;
+    }
+
+    /** Returns the board space x offset of a tile. */
+    public float getOffsetX(int tile) {
+        return mOffsets[2 * tile];
+    }
+
+    /** Returns the board space y offset of a tile. */
+    public float getOffsetY(int tile) {
+        return mOffsets[2 * tile + 1];
+    }
+
+    /**
+     * Intersects the touch ray with the board space plane z = planeZ. On success the
+     * intersection is left in the origin of mBoardRay.
+     */
+    private boolean intersectPlane(float[] boardViewProjection, float planeZ, float ndcX,
+            float ndcY) {
+        if (!mBoardRay.set(boardViewProjection, ndcX, ndcY)) {
+            return false;
+        }
+        float[] origin = mBoardRay.mOrigin;
+        float[] direction = mBoardRay.mDirection;
+        if (Math.abs(direction[2]) < 1e-6f) {
+            // The ray runs parallel to the board.
+            return false;
+        }
+        float t = (planeZ - origin[2]) / direction[2];
+        if (t < 0.0f) {
+            return false;
+        }
+        origin[0] += t * direction[0];
+        origin[1] += t * direction[1];
+        origin[2] = planeZ;
+        return true;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+/**
+ * Bounding volume hierarchy over the triangles of a mesh, in model space. Ray casts against the
+ * hierarchy only visit the nodes whose boxes the ray crosses, so the cost grows with the
+ * logarithm of the triangle count instead of linearly.
+ *
+ * <p>The tree is stored in flat arrays. Every inner node has its two children stored next to
+ * each other, so only the index of the first child is kept.
+ */
+public class TriangleBvh {
+    private static final int MAX_TRIANGLES_PER_LEAF = 4;
+    private static final int FLOATS_PER_BOUNDS = 6; // minX, minY, minZ, maxX, maxY, maxZ
+    private static final float EPSILON = 1e-7f;
+
+    private final float[] mPositions;
+    private final int[] mIndices;
+
+    // Triangle indices, reordered so that every leaf covers a contiguous range.
+    private final int[] mTriangleOrder;
+    private final float[] mNodeBounds;
+    // First child of an inner node, or first entry in mTriangleOrder of a leaf.
+    private final int[] mNodeFirst;
+    // Number of triangles of a leaf, zero for inner nodes.
+    private final int[] mNodeTriangleCount;
+    private int mNodeCount;
+
+    /**
+     * Builds the hierarchy. Must be called once per mesh, typically at load time.
+     *
+     * @param mesh The model space triangles.
+     */
+    public TriangleBvh(CollisionMesh mesh) {
+        mPositions = mesh.mPositions;
+        mIndices = mesh.mIndices;
+
+        int triangleCount = mIndices.length / 3;
+        mTriangleOrder = new int[triangleCount];
+        float[] centroids = new float[3 * triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            mTriangleOrder[i] = i;
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[3 * i + axis] = (mPositions[3 * mIndices[3 * i] + axis]
+                    + mPositions[3 * mIndices[3 * i + 1] + axis]
+                    + mPositions[3 * mIndices[3 * i + 2] + axis]) / 3.0f;
+            }
+        }
+
+        int maxNodes = Math.max(1, 2 * triangleCount - 1);
+        mNodeBounds = new float[FLOATS_PER_BOUNDS * maxNodes];
+        mNodeFirst = new int[maxNodes];
+        mNodeTriangleCount = new int[maxNodes];
+        mNodeCount = 1;
+        build(0, 0, triangleCount, centroids);
+    }
+
+    /** Returns the number of triangles in the hierarchy. */
+    public int getTriangleCount() {
+        return mTriangleOrder.length;
+    }
+
+    /**
+     * Finds the closest triangle crossed by a ray. Triangles are tested from both sides.
+     *
+     * @param origin Ray origin in model space.
+     * @param direction Ray direction in model space, need not be normalized.
+     * @param hit Receives the closest hit. Only hits closer than its current distance are
+     *     recorded, so call {@link RayHit#reset()} first for a fresh query.
+     * @return true if a closer triangle was hit.
+     */
+    public boolean raycast(float[] origin, float[] direction, RayHit hit) {
+        if (mTriangleOrder.length == 0) {
+            return false;
+        }
+        float[] inverseDirection = hit.mInverseDirection;
+        for (int axis = 0; axis < 3; axis++) {
+            inverseDirection[axis] = 1.0f / direction[axis];
+        }
+
+        boolean found = false;
+        int[] stack = hit.mTraversalStack;
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (!intersectsBounds(node, origin, inverseDirection, hit.getDistance())) {
+                continue;
+            }
+            int count = mNodeTriangleCount[node];
+            if (count == 0) {
+                stack[stackSize++] = mNodeFirst[node];
+                stack[stackSize++] = mNodeFirst[node] + 1;
+                continue;
+            }
+            int first = mNodeFirst[node];
+            for (int i = first; i < first + count; i++) {
+                if (intersectTriangle(mTriangleOrder[i], origin, direction, hit)) {
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    private void build(int node, int start, int end, float[] centroids) {
+        computeBounds(node, start, end);
+
+        int count = end - start;
+        if (count <= MAX_TRIANGLES_PER_LEAF) {
+            mNodeFirst[node] = start;
+            mNodeTriangleCount[node] = count;
+            return;
+        }
+
+        // Split at the centroid median along the longest axis, which keeps the tree balanced.
+        int axis = longestCentroidAxis(start, end, centroids);
+        int middle = (start + end) >>> 1;
+        selectMedian(start, end, middle, axis, centroids);
+
+        int left = mNodeCount;
+        mNodeCount += 2;
+        mNodeFirst[node] = left;
+        mNodeTriangleCount[node] = 0;
+        build(left, start, middle, centroids);
+        build(left + 1, middle, end, centroids);
+    }
+
+    private void computeBounds(int node, int start, int end) {
+        int offset = FLOATS_PER_BOUNDS * node;
+        for (int axis = 0; axis < 3; axis++) {
+            mNodeBounds[offset + axis] = Float.POSITIVE_INFINITY;
+            mNodeBounds[offset + 3 + axis] = Float.NEGATIVE_INFINITY;
+        }
+        for (int i = start; i < end; i++) {
+            int triangle = mTriangleOrder[i];
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = 3 * mIndices[3 * triangle + corner];
+                for (int axis = 0; axis < 3; axis++) {
+                    float value = mPositions[vertex + axis];
+                    mNodeBounds[offset + axis] = Math.min(mNodeBounds[offset + axis], value);
+                    mNodeBounds[offset + 3 + axis] =
+                        Math.max(mNodeBounds[offset + 3 + axis], value);
+                }
+            }
+        }
+    }
+
+    private int longestCentroidAxis(int start, int end, float[] centroids) {
+        float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int i = start; i < end; i++) {
+            int triangle = mTriangleOrder[i];
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], centroids[3 * triangle + axis]);
+                max[axis] = Math.max(max[axis], centroids[3 * triangle + axis]);
+            }
+        }
+        int longest = 0;
+        for (int axis = 1; axis < 3; axis++) {
+            if (max[axis] - min[axis] > max[longest] - min[longest]) {
+                longest = axis;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Partially sorts mTriangleOrder[start, end) so that the entry at {@code nth} is the one that
+     * would be there if the range was sorted by centroid, with smaller entries before it.
+     */
+    private void selectMedian(int start, int end, int nth, int axis, float[] centroids) {
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            float pivot = centroids[3 * mTriangleOrder[(low + high) >>> 1] + axis];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (centroids[3 * mTriangleOrder[i] + axis] < pivot) {
+                    i++;
+                }
+                while (centroids[3 * mTriangleOrder[j] + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = mTriangleOrder[i];
+                    mTriangleOrder[i] = mTriangleOrder[j];
+                    mTriangleOrder[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                high = j;
+            } else if (nth >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Slab test of the ray against the bounds of a node. Axes the ray runs parallel to are
+     * tested on the origin instead, as an origin on a slab plane would make the slab distance
+     * 0 * infinity, which is NaN and would drop valid hits.
+     */
+    private boolean intersectsBounds(int node, float[] origin, float[] inverseDirection,
+            float maxDistance) {
+        int offset = FLOATS_PER_BOUNDS * node;
+        float near = Float.NEGATIVE_INFINITY;
+        float far = Float.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            float min = mNodeBounds[offset + axis];
+            float max = mNodeBounds[offset + 3 + axis];
+            if (Float.isInfinite(inverseDirection[axis])) {
+                if (origin[axis] < min || origin[axis] > max) {
+                    return false;
+                }
+                continue;
+            }
+            float t1 = (min - origin[axis]) * inverseDirection[axis];
+            float t2 = (max - origin[axis]) * inverseDirection[axis];
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return far >= Math.max(near, 0.0f) && near < maxDistance;
+    }
+
+    /**
+     * Moeller-Trumbore ray/triangle intersection. Records the hit if it is closer than the
+     * current one.
+     */
+    private boolean intersectTriangle(int triangle, float[] origin, float[] direction,
+            RayHit hit) {
+        int v0 = 3 * mIndices[3 * triangle];
+        int v1 = 3 * mIndices[3 * triangle + 1];
+        int v2 = 3 * mIndices[3 * triangle + 2];
+
+        float edge1X = mPositions[v1] - mPositions[v0];
+        float edge1Y = mPositions[v1 + 1] - mPositions[v0 + 1];
+        float edge1Z = mPositions[v1 + 2] - mPositions[v0 + 2];
+        float edge2X = mPositions[v2] - mPositions[v0];
+        float edge2Y = mPositions[v2 + 1] - mPositions[v0 + 1];
+        float edge2Z = mPositions[v2 + 2] - mPositions[v0 + 2];
+
+        float pX = direction[1] * edge2Z - direction[2] * edge2Y;
+        float pY = direction[2] * edge2X - direction[0] * edge2Z;
+        float pZ = direction[0] * edge2Y - direction[1] * edge2X;
+        float determinant = edge1X * pX + edge1Y * pY + edge1Z * pZ;
+        if (Math.abs(determinant) < EPSILON) {
+            // The ray is parallel to the triangle.
+            return false;
+        }
+        float inverseDeterminant = 1.0f / determinant;
+
+        float sX = origin[0] - mPositions[v0];
+        float sY = origin[1] - mPositions[v0 + 1];
+        float sZ = origin[2] - mPositions[v0 + 2];
+        float u = (sX * pX + sY * pY + sZ * pZ) * inverseDeterminant;
+        if (u < 0.0f || u > 1.0f) {
+            return false;
+        }
+
+        float qX = sY * edge1Z - sZ * edge1Y;
+        float qY = sZ * edge1X - sX * edge1Z;
+        float qZ = sX * edge1Y - sY * edge1X;
+        float v = (direction[0] * qX + direction[1] * qY + direction[2] * qZ)
+            * inverseDeterminant;
+        if (v < 0.0f || u + v > 1.0f) {
+            return false;
+        }
+
+        float t = (edge2X * qX + edge2Y * qY + edge2Z * qZ) * inverseDeterminant;
+        if (t < 0.0f || t >= hit.getDistance()) {
+            return false;
+        }
+        hit.set(t, triangle, u, v);
+        return true;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import com.google.ar.core.examples.java.helloar.picking.CollisionMesh;
+import com.google.ar.core.examples.java.helloar.picking.TriangleBvh;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+
+/**
+ * GL resources shared between renderers, keyed by asset name and reference counted. The first
+ * renderer to acquire a texture or mesh uploads it; later ones get the same object, and the
+ * object is deleted when the last one releases it. Programs are shared the same way through the
+ * cache's {@link ProgramRegistry}, and every renderer sharing the cache changes GL state through
+ * its {@link GlStateTracker}.
+ *
+ * <p>Acquiring and releasing must happen on the GL thread. {@link #containsTexture(String)} and
+ * {@link #containsMesh(String, String)} may be called from any thread, so that renderers can
+ * skip preparing what is already uploaded.
+ */
+public class AssetCache {
+    private static final String TAG = AssetCache.class.getSimpleName();
+
+    /**
+     * A mesh read on any thread and waiting to be uploaded, with what is derived from it on the
+     * CPU. Everything but the vertex and index data stays with the uploaded buffers.
+     */
+    public static class PreparedMesh {
+        /** The mesh with its levels of detail, split for 16-bit indices if needed. */
+        public final PackedMesh mesh;
+        /** Model space bounds of the full level of detail, as {min x, y, z, max x, y, z}. */
+        public final float[] bounds;
+        /**
+         * What the picking geometry was built from, such as the render triangles or a proxy
+         * asset. Renderers only share picking geometry built from the same source.
+         */
+        public final String collisionKey;
+        public final CollisionMesh collisionMesh;
+        public final TriangleBvh bvh;
+
+        public PreparedMesh(PackedMesh mesh, float[] bounds, String collisionKey,
+                CollisionMesh collisionMesh, TriangleBvh bvh) {
+            this.mesh = mesh;
+            this.bounds = bounds;
+            this.collisionKey = collisionKey;
+            this.collisionMesh = collisionMesh;
+            this.bvh = bvh;
+        }
+    }
+
+    /**
+     * The GL buffers of an uploaded mesh, laid out as in {@link PackedMesh}. A level of detail
+     * is drawn one part at a time; see {@link PackedMesh#getPartBaseVertex(int)}. The arrays
+     * must not be modified.
+     */
+    public static class MeshBuffers {
+        public final int vertexBufferId;
+        public final int indexBufferId;
+        public final int texCoordsOffset;
+        public final int normalsOffset;
+        public final int indexCount;
+        /** GL_UNSIGNED_SHORT or GL_UNSIGNED_INT. */
+        public final int indexType;
+        /** Byte offset of the first index of every part in the index buffer. */
+        public final int[] partIndexOffsets;
+        public final int[] partIndexCounts;
+        public final int[] partBaseVertices;
+        /** First part of every level of detail, followed by the total part count. */
+        public final int[] levelFirstParts;
+        /**
+         * The mesh itself, kept for renderers that merge several instances into one buffer.
+         * Null when instancing is supported or the mesh needs 32-bit indices.
+         */
+        public final PackedMesh cpuMesh;
+        /**
+         * Views of the vertex data and the indices of {@link #cpuMesh}, made once so that merging
+         * does not allocate. Read with absolute gets only. Null without the mesh.
+         */
+        public final FloatBuffer cpuVertices;
+        public final ShortBuffer cpuIndices;
+        /** Model space bounds of the full level of detail, as {min x, y, z, max x, y, z}. */
+        public final float[] bounds;
+        /** The picking geometry prepared with the mesh; see {@link PreparedMesh#collisionKey}. */
+        public final String collisionKey;
+        public final CollisionMesh collisionMesh;
+        public final TriangleBvh bvh;
+
+        MeshBuffers(int vertexBufferId, int indexBufferId, PreparedMesh prepared,
+                boolean keepMesh) {
+            PackedMesh mesh = prepared.mesh;
+            this.vertexBufferId = vertexBufferId;
+            this.indexBufferId = indexBufferId;
+            this.texCoordsOffset = mesh.getTexCoordsOffset();
+            this.normalsOffset = mesh.getNormalsOffset();
+            this.indexCount = mesh.getIndexCount();
+            this.indexType = mesh.getIndexSize() == 2
+                ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
+            int partCount = mesh.getPartCount();
+            this.partIndexOffsets = new int[partCount];
+            this.partIndexCounts = new int[partCount];
+            this.partBaseVertices = new int[partCount];
+            for (int i = 0; i < partCount; i++) {
+                partIndexOffsets[i] = mesh.getIndexSize() * mesh.getPartFirstIndex(i);
+                partIndexCounts[i] = mesh.getPartIndexCount(i);
+                partBaseVertices[i] = mesh.getPartBaseVertex(i);
+            }
+            int levelCount = mesh.getLevelCount();
+            this.levelFirstParts = new int[levelCount + 1];
+            for (int i = 0; i < levelCount; i++) {
+                levelFirstParts[i] = mesh.getLevelFirstPart(i);
+            }
+            levelFirstParts[levelCount] = partCount;
+            this.cpuMesh = keepMesh ? mesh : null;
+            this.cpuVertices = keepMesh ? mesh.getVertexData().asFloatBuffer() : null;
+            this.cpuIndices = keepMesh ? mesh.getIndices() : null;
+            this.bounds = prepared.bounds;
+            this.collisionKey = prepared.collisionKey;
+            this.collisionMesh = prepared.collisionMesh;
+            this.bvh = prepared.bvh;
+        }
+    }
+
+    private static class Entry<T> {
+        final T mValue;
+        int mReferenceCount = 1;
+
+        Entry(T value) {
+            mValue = value;
+        }
+    }
+
+    private final HashMap<String, Entry<Integer>> mTextures = new HashMap<>();
+    // Where images packed into an atlas page are, by image name.
+    private final HashMap<String, float[]> mTextureRegions = new HashMap<>();
+    private final HashMap<String, Entry<MeshBuffers>> mMeshes = new HashMap<>();
+    private final ProgramRegistry mProgramRegistry = new ProgramRegistry();
+    private final GlStateTracker mGlStateTracker = new GlStateTracker();
+    private volatile boolean mWideIndicesSupported;
+    private volatile boolean mInstancingSupported;
+
+    public AssetCache() {
+    }
+
+    /**
+     * Reads which optional features the current GL context supports. Must be called on the GL
+     * thread whenever the context was created, before assets are loaded.
+     */
+    public void queryCapabilities() {
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        mWideIndicesSupported =
+            extensions != null && extensions.contains("GL_OES_element_index_uint");
+        // ES 3 contexts have instanced draws built in. The activity requests one where the
+        // device supports it.
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        mInstancingSupported = version != null && version.startsWith("OpenGL ES 3");
+    }
+
+    /**
+     * Returns whether meshes may be uploaded with 32-bit indices. Meshes with more vertices have
+     * to be split with {@link PackedMesh#splitForShortIndices()} otherwise. May be called from
+     * any thread.
+     */
+    public boolean areWideIndicesSupported() {
+        return mWideIndicesSupported;
+    }
+
+    /**
+     * Returns whether the {@code GLES30} instanced draw calls may be used. May be called from any
+     * thread.
+     */
+    public boolean isInstancingSupported() {
+        return mInstancingSupported;
+    }
+
+    /**
+     * Returns whether a texture is uploaded. May be called from any thread.
+     */
+    public synchronized boolean containsTexture(String imageAssetName) {
+        return mTextures.containsKey(imageAssetName);
+    }
+
+    /**
+     * Returns whether a mesh is uploaded with picking geometry built from the given source, in
+     * which case acquiring it needs no {@link PreparedMesh}. May be called from any thread.
+     */
+    public synchronized boolean containsMesh(String objAssetName, String collisionKey) {
+        Entry<MeshBuffers> entry = mMeshes.get(objAssetName);
+        return entry != null && entry.mValue.collisionKey.equals(collisionKey);
+    }
+
+    /**
+     * Returns the texture object for an image, uploading it if no renderer holds it yet.
+     *
+     * @param context Context for reading the image if it was not prepared.
+     * @param imageAssetName Name of the image asset.
+     * @param texture The prepared image, or null to read it on the calling thread if needed.
+     *     Dropped if the texture is uploaded already.
+     * @return The texture name, to be released with {@link #releaseTexture(String)}.
+     */
+    public synchronized int acquireTexture(Context context, String imageAssetName,
+            PreparedTexture texture) {
+        Entry<Integer> entry = mTextures.get(imageAssetName);
+        if (entry != null) {
+            entry.mReferenceCount++;
+            return entry.mValue;
+        }
+        if (texture == null) {
+            try {
+                texture = PreparedTexture.prepare(context, imageAssetName);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read " + imageAssetName, e);
+            }
+        }
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        texture.upload(context, textures[0]);
+        mGlStateTracker.invalidate();
+        ShaderUtil.checkGLError(TAG, "Texture loading");
+
+        mTextures.put(imageAssetName, new Entry<>(textures[0]));
+        return textures[0];
+    }
+
+    /**
+     * Registers an image packed into an atlas page, so that acquiring the image returns the
+     * page. The caller holds the first reference.
+     *
+     * @param imageAssetName Name of the image asset.
+     * @param pageTextureId The texture object of the page, may be shared by several images.
+     * @param region Where the image is in the page, see {@link #getTextureRegion(String)}.
+     * @return false, and nothing is registered, if the image is uploaded already.
+     */
+    public synchronized boolean putAtlasImage(String imageAssetName, int pageTextureId,
+            float[] region) {
+        if (mTextures.containsKey(imageAssetName)) {
+            return false;
+        }
+        mTextures.put(imageAssetName, new Entry<>(pageTextureId));
+        mTextureRegions.put(imageAssetName, region.clone());
+        return true;
+    }
+
+    /**
+     * Returns the texture coordinate region of an image in its atlas page as {u offset,
+     * v offset, u scale, v scale}, or null if the image has a texture of its own. Do not modify.
+     */
+    public synchronized float[] getTextureRegion(String imageAssetName) {
+        return mTextureRegions.get(imageAssetName);
+    }
+
+    /**
+     * Drops one reference to a texture, deleting it with the last one. Atlas pages are only
+     * deleted once none of their images is referenced anymore.
+     */
+    public synchronized void releaseTexture(String imageAssetName) {
+        Entry<Integer> entry = release(mTextures, imageAssetName);
+        if (entry == null) {
+            return;
+        }
+        mTextureRegions.remove(imageAssetName);
+        for (Entry<Integer> other : mTextures.values()) {
+            if (other.mValue.equals(entry.mValue)) {
+                return;
+            }
+        }
+        GLES20.glDeleteTextures(1, new int[] {entry.mValue}, 0);
+        mGlStateTracker.invalidate();
+    }
+
+    /**
+     * Returns the buffers for a mesh, uploading it if no renderer holds it yet.
+     *
+     * @param objAssetName Name of the OBJ asset the mesh was loaded from.
+     * @param prepared The loaded mesh, may be null if the mesh is uploaded already and ignored
+     *     then. Must have 16-bit indices unless {@link #areWideIndicesSupported()}.
+     * @return The buffers, to be released with {@link #releaseMesh(String)}.
+     */
+    public synchronized MeshBuffers acquireMesh(String objAssetName, PreparedMesh prepared) {
+        Entry<MeshBuffers> entry = mMeshes.get(objAssetName);
+        if (entry != null) {
+            entry.mReferenceCount++;
+            return entry.mValue;
+        }
+        if (prepared == null) {
+            throw new IllegalStateException("Not uploaded: " + objAssetName);
+        }
+        PackedMesh mesh = prepared.mesh;
+
+        if (mesh.getIndexSize() == 4 && !mWideIndicesSupported) {
+            throw new IllegalArgumentException("32-bit indices are not supported: " + objAssetName);
+        }
+
+        int[] buffers = new int[2];
+        GLES20.glGenBuffers(2, buffers, 0);
+
+        // Load vertex buffer
+        mGlStateTracker.bindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mesh.getVertexDataSize(),
+            mesh.getVertexData(), GLES20.GL_STATIC_DRAW);
+
+        // Load index buffer
+        mGlStateTracker.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexDataSize(),
+            mesh.getIndexData(), GLES20.GL_STATIC_DRAW);
+
+        ShaderUtil.checkGLError(TAG, "OBJ buffer load");
+
+        // Without instancing, batches of small meshes are merged on the CPU.
+        boolean keepMesh = !mInstancingSupported && mesh.getIndexSize() == 2;
+        MeshBuffers meshBuffers = new MeshBuffers(buffers[0], buffers[1], prepared, keepMesh);
+        mMeshes.put(objAssetName, new Entry<>(meshBuffers));
+        return meshBuffers;
+    }
+
+    /**
+     * Drops one reference to a mesh, deleting its buffers with the last one.
+     */
+    public synchronized void releaseMesh(String objAssetName) {
+        Entry<MeshBuffers> entry = release(mMeshes, objAssetName);
+        if (entry != null) {
+            GLES20.glDeleteBuffers(2,
+                new int[] {entry.mValue.vertexBufferId, entry.mValue.indexBufferId}, 0);
+            mGlStateTracker.invalidate();
+        }
+    }
+
+    /**
+     * Returns the registry through which the renderers sharing this cache share programs.
+     */
+    public ProgramRegistry getProgramRegistry() {
+        return mProgramRegistry;
+    }
+
+    /**
+     * Returns the tracker through which the renderers sharing this cache change GL state.
+     */
+    public GlStateTracker getGlStateTracker() {
+        return mGlStateTracker;
+    }
+
+    /**
+     * Forgets every resource without deleting it, for when the GL context was lost and took the
+     * resources with it.
+     */
+    public synchronized void clear() {
+        mTextures.clear();
+        mTextureRegions.clear();
+        mMeshes.clear();
+        mProgramRegistry.clear();
+        mGlStateTracker.invalidate();
+    }
+
+    /**
+     * Drops one reference and returns the entry if it was the last one.
+     */
+    private static <T> Entry<T> release(HashMap<String, Entry<T>> entries, String key) {
+        Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            throw new IllegalStateException("Not acquired: " + key);
+        }
+        if (--entry.mReferenceCount > 0) {
+            return null;
+        }
+        entries.remove(key);
+        return entry;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads renderer assets in two phases. Decoding images and parsing meshes needs no GL context,
+ * so it runs concurrently on a pool of worker threads while the GL thread keeps drawing the
+ * camera feed. Only the short upload of each asset runs on the GL thread, from the first frame
+ * after its decoding finished.
+ */
+public class AssetLoader {
+    private static final String TAG = AssetLoader.class.getSimpleName();
+
+    /**
+     * An asset that is prepared off the GL thread.
+     */
+    public interface Asset {
+        /**
+         * Decodes and parses the asset, without touching OpenGL. Called on a worker thread.
+         *
+         * @param context Context for loading assets.
+         */
+        void prepare(Context context) throws IOException;
+
+        /**
+         * Uploads the prepared asset. Called on the GL thread after {@link #prepare(Context)}
+         * returned.
+         *
+         * @param context Context for loading shaders.
+         */
+        void createOnGlThread(Context context);
+    }
+
+    private final Context mContext;
+    private final ExecutorService mExecutor;
+
+    // Assets still being prepared or waiting for upload, only accessed on the GL thread.
+    private final ArrayList<Asset> mPendingAssets = new ArrayList<>();
+    private final ArrayList<Future<?>> mPendingPreparations = new ArrayList<>();
+
+    /**
+     * @param context Context for loading assets. Only its application context is kept.
+     */
+    public AssetLoader(Context context) {
+        mContext = context.getApplicationContext();
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        mExecutor = Executors.newFixedThreadPool(threadCount);
+    }
+
+    /**
+     * Starts preparing an asset. Must be called on the GL thread, typically in
+     * {@code onSurfaceCreated}.
+     */
+    public void load(final Asset asset) {
+        mPendingAssets.add(asset);
+        mPendingPreparations.add(mExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                asset.prepare(mContext);
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Uploads every asset whose preparation finished since the last call. Must be called on the
+     * GL thread, typically at the start of every frame. Assets that failed to prepare are logged
+     * and dropped.
+     *
+     * @return true if no asset is pending anymore.
+     */
+    public boolean uploadPrepared() {
+        for (int i = mPendingAssets.size() - 1; i >= 0; i--) {
+            Future<?> preparation = mPendingPreparations.get(i);
+            if (!preparation.isDone()) {
+                continue;
+            }
+            Asset asset = mPendingAssets.remove(i);
+            mPendingPreparations.remove(i);
+            try {
+                preparation.get();
+                asset.createOnGlThread(mContext);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Failed to prepare asset", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return mPendingAssets.isEmpty();
+    }
+
+    /**
+     * Forgets every pending asset, for example because the GL context was lost. Preparations
+     * already running finish but are not uploaded.
+     */
+    public void cancel() {
+        for (Future<?> preparation : mPendingPreparations) {
+            preparation.cancel(false);
+        }
+        mPendingAssets.clear();
+        mPendingPreparations.clear();
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        cancel();
+        mExecutor.shutdownNow();
+    }
+}
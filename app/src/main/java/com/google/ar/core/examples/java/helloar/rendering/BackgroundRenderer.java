@@ -31,7 +31,7 @@ import javax.microedition.khronos.opengles.GL10;
  * This class renders the AR background from camera feed. It creates and hosts the texture
  * given to ARCore to be filled with the camera image.
  */
-public class BackgroundRenderer {
+public class BackgroundRenderer implements RenderQueue.Drawable {
     private static final String TAG = BackgroundRenderer.class.getSimpleName();
 
     private static final int COORDS_PER_VERTEX = 3;
@@ -47,8 +47,15 @@ public class BackgroundRenderer {
     private int mQuadPositionParam;
     private int mQuadTexCoordParam;
     private int mTextureId = -1;
+    private int mAttributeMask;
 
-    public BackgroundRenderer() {
+    private final GlStateTracker mGlState;
+
+    /**
+     * @param glState Tracker through which GL state is changed, shared with the other renderers.
+     */
+    public BackgroundRenderer(GlStateTracker glState) {
+        mGlState = glState;
     }
 
     public int getTextureId() {
@@ -112,6 +119,10 @@ public class BackgroundRenderer {
 
         mQuadPositionParam = GLES20.glGetAttribLocation(mQuadProgram, "a_Position");
         mQuadTexCoordParam = GLES20.glGetAttribLocation(mQuadProgram, "a_TexCoord");
+        mAttributeMask = GlStateTracker.attributeMask(mQuadPositionParam, mQuadTexCoordParam);
+
+        // The program and texture were bound around the tracker.
+        mGlState.invalidate();
 
         ShaderUtil.checkGLError(TAG, "Program parameters");
     }
@@ -126,20 +137,56 @@ public class BackgroundRenderer {
      * @param frame The last {@code Frame} returned by {@link Session#update()}.
      */
     public void draw(Frame frame) {
+        update(frame);
+        drawQuad();
+    }
+
+    /**
+     * Follows display rotation and view size changes of a frame, to be drawn later from a
+     * {@link RenderQueue}.
+     *
+     * @param frame The last {@code Frame} returned by {@link Session#update()}.
+     */
+    public void update(Frame frame) {
         // If display rotation changed (also includes view size change), we need to re-query the uv
         // coordinates for the screen rect, as they may have changed as well.
         if (frame.hasDisplayGeometryChanged()) {
             frame.transformDisplayUvCoords(mQuadTexCoord, mQuadTexCoordTransformed);
         }
+    }
 
+    /**
+     * Queues the image in the background layer, ahead of all virtual content.
+     */
+    public void submit(RenderQueue queue) {
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_BACKGROUND, 0.0f, mQuadProgram,
+            mTextureId), this, null);
+    }
+
+    /**
+     * Draws the image as of the last {@link #update(Frame)}, when issued by a
+     * {@link RenderQueue}. The matrices are not needed.
+     */
+    @Override
+    public void draw(float[] modelMatrix, int instance, float[] cameraView,
+            float[] cameraPerspective, float lightIntensity) {
+        drawQuad();
+    }
+
+    private void drawQuad() {
         // No need to test or write depth, the screen quad has arbitrary depth, and is expected
         // to be drawn first.
-        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-        GLES20.glDepthMask(false);
+        mGlState.setDepthTest(false);
+        mGlState.depthMask(false);
+        mGlState.setBlend(false);
 
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTextureId);
+        mGlState.activeTexture(GLES20.GL_TEXTURE0);
+        mGlState.bindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTextureId);
 
-        GLES20.glUseProgram(mQuadProgram);
+        mGlState.useProgram(mQuadProgram);
+
+        // The quad is read from client memory.
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
         // Set the vertex positions.
         GLES20.glVertexAttribPointer(
@@ -150,19 +197,10 @@ public class BackgroundRenderer {
                 GLES20.GL_FLOAT, false, 0, mQuadTexCoordTransformed);
 
         // Enable vertex arrays
-        GLES20.glEnableVertexAttribArray(mQuadPositionParam);
-        GLES20.glEnableVertexAttribArray(mQuadTexCoordParam);
+        mGlState.setVertexAttribArrays(mAttributeMask);
 
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
-        // Disable vertex arrays
-        GLES20.glDisableVertexAttribArray(mQuadPositionParam);
-        GLES20.glDisableVertexAttribArray(mQuadTexCoordParam);
-
-        // Restore the depth state for further drawing.
-        GLES20.glDepthMask(true);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-
         ShaderUtil.checkGLError(TAG, "Draw");
     }
 
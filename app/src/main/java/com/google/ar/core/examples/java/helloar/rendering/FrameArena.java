@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.util.Log;
+
+/**
+ * Scratch matrices and vectors for one frame. The frame takes what it needs with
+ * {@link #matrix()} and {@link #vector()} and hands everything back at once with
+ * {@link #reset()} before the next frame, so the steady-state frame allocates nothing.
+ *
+ * <p>The arena starts with room for a typical frame and grows when a frame takes more, so only
+ * the first frames after the scene grows allocate. Returned arrays hold whatever the previous
+ * frame left in them. Must only be used on the GL thread.
+ */
+public class FrameArena {
+    private static final String TAG = FrameArena.class.getSimpleName();
+
+    private float[][] mMatrices;
+    private int mMatrixCount;
+    private float[][] mVectors;
+    private int mVectorCount;
+
+    /**
+     * @param matrixCapacity Number of 4x4 matrices to preallocate.
+     * @param vectorCapacity Number of 4 component vectors to preallocate.
+     */
+    public FrameArena(int matrixCapacity, int vectorCapacity) {
+        mMatrices = allocate(new float[0][], Math.max(matrixCapacity, 1), 16);
+        mVectors = allocate(new float[0][], Math.max(vectorCapacity, 1), 4);
+    }
+
+    /**
+     * Returns a 4x4 matrix, in column-major order, that is the caller's until the next
+     * {@link #reset()}.
+     */
+    public float[] matrix() {
+        if (mMatrixCount == mMatrices.length) {
+            mMatrices = allocate(mMatrices, 2 * mMatrices.length, 16);
+            Log.d(TAG, "Grew to " + mMatrices.length + " matrices");
+        }
+        return mMatrices[mMatrixCount++];
+    }
+
+    /**
+     * Returns a 4 component vector that is the caller's until the next {@link #reset()}.
+     */
+    public float[] vector() {
+        if (mVectorCount == mVectors.length) {
+            mVectors = allocate(mVectors, 2 * mVectors.length, 4);
+            Log.d(TAG, "Grew to " + mVectors.length + " vectors");
+        }
+        return mVectors[mVectorCount++];
+    }
+
+    /**
+     * Takes back every matrix and vector handed out. Call once at the start of each frame.
+     */
+    public void reset() {
+        mMatrixCount = 0;
+        mVectorCount = 0;
+    }
+
+    /** Returns the number of matrices handed out since the last {@link #reset()}. */
+    public int getMatrixCount() {
+        return mMatrixCount;
+    }
+
+    /** Returns the number of vectors handed out since the last {@link #reset()}. */
+    public int getVectorCount() {
+        return mVectorCount;
+    }
+
+    /** Returns the arrays of {@code existing}, followed by new ones up to {@code capacity}. */
+    private static float[][] allocate(float[][] existing, int capacity, int length) {
+        float[][] arrays = new float[capacity][];
+        System.arraycopy(existing, 0, arrays, 0, existing.length);
+        for (int i = existing.length; i < capacity; i++) {
+            arrays[i] = new float[length];
+        }
+        return arrays;
+    }
+}
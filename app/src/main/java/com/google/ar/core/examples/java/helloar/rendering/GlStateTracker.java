@@ -0,0 +1,316 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+/**
+ * Shadows the GL state the renderers change on every draw, and drops calls that would set it to
+ * what it is already: the program, the active texture unit and its bindings, the array and
+ * element buffer bindings, the enabled vertex attribute arrays, blending, depth testing and the
+ * depth mask.
+ *
+ * <p>Renderers set all the state they rely on before each draw through the tracker, instead of
+ * restoring it afterwards. State changed around the tracker, by asset uploads or by ARCore, is
+ * unknown to it, so {@link #invalidate()} must follow such changes; the next call then always
+ * reaches GL. Deleting an object that is bound unbinds it, so deletions invalidate as well.
+ *
+ * <p>A second tracker on the same context would go stale as soon as the first issued a call,
+ * so the only tracker is the one of the {@link AssetCache}, see
+ * {@link AssetCache#getGlStateTracker()}.
+ *
+ * <p>Counts the calls issued and skipped per frame, see {@link #beginFrame()}. Must only be
+ * used on the GL thread.
+ */
+public class GlStateTracker {
+    private static final int UNKNOWN = -1;
+    private static final int TEXTURE_UNITS = 8;
+    // Texture targets tracked per unit.
+    private static final int TARGET_2D = 0;
+    private static final int TARGET_EXTERNAL = 1;
+
+    private int mProgram;
+    private int mActiveTexture;
+    private final int[][] mTextures = new int[TEXTURE_UNITS][2];
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    // Vertex attribute arrays known to be enabled and known to be disabled, one bit per
+    // location. Locations in neither are unknown.
+    private int mEnabledAttributes;
+    private int mDisabledAttributes;
+    // UNKNOWN, 0 or 1.
+    private int mBlend;
+    private int mDepthTest;
+    private int mCullFace;
+    private int mDepthMask;
+    private final int[] mBlendFunc = new int[4];
+
+    private int mIssuedCallCount;
+    private int mSkippedCallCount;
+    private int mLastFrameIssuedCallCount;
+    private int mLastFrameSkippedCallCount;
+
+    GlStateTracker() {
+        invalidate();
+    }
+
+    /**
+     * Returns the attribute array mask for {@link #setVertexAttribArrays(int)}. Negative
+     * locations, of attributes the shader compiler removed, are left out.
+     */
+    public static int attributeMask(int... locations) {
+        int mask = 0;
+        for (int location : locations) {
+            if (location >= 0) {
+                mask |= 1 << location;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Forgets the shadowed state, for when GL was used around the tracker or the context was
+     * recreated.
+     */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        for (int[] unit : mTextures) {
+            Arrays.fill(unit, UNKNOWN);
+        }
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        mEnabledAttributes = 0;
+        mDisabledAttributes = 0;
+        mBlend = UNKNOWN;
+        mDepthTest = UNKNOWN;
+        mCullFace = UNKNOWN;
+        mDepthMask = UNKNOWN;
+        Arrays.fill(mBlendFunc, UNKNOWN);
+    }
+
+    /**
+     * Starts counting the calls of a new frame. Call first thing in every frame. The shadowed
+     * state carries over, so GL used around the tracker since still needs {@link #invalidate()}.
+     */
+    public void beginFrame() {
+        mLastFrameIssuedCallCount = mIssuedCallCount;
+        mLastFrameSkippedCallCount = mSkippedCallCount;
+        mIssuedCallCount = 0;
+        mSkippedCallCount = 0;
+    }
+
+    /** Returns the number of GL calls the tracker let through in the last full frame. */
+    public int getIssuedCallCount() {
+        return mLastFrameIssuedCallCount;
+    }
+
+    /** Returns the number of redundant GL calls the tracker dropped in the last full frame. */
+    public int getSkippedCallCount() {
+        return mLastFrameSkippedCallCount;
+    }
+
+    public void useProgram(int program) {
+        if (mProgram == program) {
+            mSkippedCallCount++;
+            return;
+        }
+        mProgram = program;
+        mIssuedCallCount++;
+        GLES20.glUseProgram(program);
+    }
+
+    /**
+     * @param texture The texture unit, {@code GL_TEXTURE0} or above.
+     */
+    public void activeTexture(int texture) {
+        if (mActiveTexture == texture) {
+            mSkippedCallCount++;
+            return;
+        }
+        mActiveTexture = texture;
+        mIssuedCallCount++;
+        GLES20.glActiveTexture(texture);
+    }
+
+    /**
+     * Binds a texture to the active unit. Only {@code GL_TEXTURE_2D} and
+     * {@code GL_TEXTURE_EXTERNAL_OES} bindings on the first units are shadowed.
+     */
+    public void bindTexture(int target, int texture) {
+        int unit = mActiveTexture - GLES20.GL_TEXTURE0;
+        int targetIndex = target == GLES20.GL_TEXTURE_2D ? TARGET_2D
+            : target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES ? TARGET_EXTERNAL : UNKNOWN;
+        if (mActiveTexture == UNKNOWN || unit >= TEXTURE_UNITS || targetIndex == UNKNOWN) {
+            mIssuedCallCount++;
+            GLES20.glBindTexture(target, texture);
+            return;
+        }
+        if (mTextures[unit][targetIndex] == texture) {
+            mSkippedCallCount++;
+            return;
+        }
+        mTextures[unit][targetIndex] = texture;
+        mIssuedCallCount++;
+        GLES20.glBindTexture(target, texture);
+    }
+
+    /**
+     * Binds a buffer. {@code GL_ARRAY_BUFFER} must be 0 before pointing attributes at client
+     * memory, and {@code GL_ELEMENT_ARRAY_BUFFER} before drawing client indices.
+     */
+    public void bindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (mArrayBuffer == buffer) {
+                mSkippedCallCount++;
+                return;
+            }
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (mElementArrayBuffer == buffer) {
+                mSkippedCallCount++;
+                return;
+            }
+            mElementArrayBuffer = buffer;
+        }
+        mIssuedCallCount++;
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    /**
+     * Enables the vertex attribute arrays in the mask and disables those the tracker enabled
+     * before, so that arrays left enabled by an earlier draw never feed an attribute of another
+     * program. Locations whose state is unknown are left alone unless they are in the mask.
+     *
+     * @param mask One bit per attribute location, see {@link #attributeMask(int...)}.
+     */
+    public void setVertexAttribArrays(int mask) {
+        setVertexAttribArrays(mask, 0);
+    }
+
+    /**
+     * Like {@link #setVertexAttribArrays(int)}, and also disables the locations in
+     * {@code disabledMask} even if their state is unknown, for attributes the draw sets to a
+     * constant value with {@code glVertexAttrib}.
+     *
+     * @param mask One bit per attribute location to enable.
+     * @param disabledMask One bit per attribute location that must be disabled.
+     */
+    public void setVertexAttribArrays(int mask, int disabledMask) {
+        int locations = mask | disabledMask | mEnabledAttributes;
+        while (locations != 0) {
+            int location = Integer.numberOfTrailingZeros(locations);
+            int bit = 1 << location;
+            locations &= ~bit;
+            if ((mask & bit) != 0) {
+                if ((mEnabledAttributes & bit) != 0) {
+                    mSkippedCallCount++;
+                    continue;
+                }
+                mEnabledAttributes |= bit;
+                mDisabledAttributes &= ~bit;
+                mIssuedCallCount++;
+                GLES20.glEnableVertexAttribArray(location);
+            } else {
+                if ((mDisabledAttributes & bit) != 0) {
+                    mSkippedCallCount++;
+                    continue;
+                }
+                mDisabledAttributes |= bit;
+                mEnabledAttributes &= ~bit;
+                mIssuedCallCount++;
+                GLES20.glDisableVertexAttribArray(location);
+            }
+        }
+    }
+
+    /** Enables or disables {@code GL_BLEND}. */
+    public void setBlend(boolean enabled) {
+        mBlend = setCapability(GLES20.GL_BLEND, mBlend, enabled);
+    }
+
+    /** Enables or disables {@code GL_DEPTH_TEST}. */
+    public void setDepthTest(boolean enabled) {
+        mDepthTest = setCapability(GLES20.GL_DEPTH_TEST, mDepthTest, enabled);
+    }
+
+    /** Enables or disables {@code GL_CULL_FACE}. */
+    public void setCullFace(boolean enabled) {
+        mCullFace = setCapability(GLES20.GL_CULL_FACE, mCullFace, enabled);
+    }
+
+    public void depthMask(boolean flag) {
+        int value = flag ? 1 : 0;
+        if (mDepthMask == value) {
+            mSkippedCallCount++;
+            return;
+        }
+        mDepthMask = value;
+        mIssuedCallCount++;
+        GLES20.glDepthMask(flag);
+    }
+
+    public void blendFunc(int sourceFactor, int destinationFactor) {
+        if (isBlendFunc(sourceFactor, destinationFactor, sourceFactor, destinationFactor)) {
+            return;
+        }
+        GLES20.glBlendFunc(sourceFactor, destinationFactor);
+    }
+
+    public void blendFuncSeparate(int sourceRgb, int destinationRgb, int sourceAlpha,
+            int destinationAlpha) {
+        if (isBlendFunc(sourceRgb, destinationRgb, sourceAlpha, destinationAlpha)) {
+            return;
+        }
+        GLES20.glBlendFuncSeparate(sourceRgb, destinationRgb, sourceAlpha, destinationAlpha);
+    }
+
+    /**
+     * Returns true, counting a skipped call, if the blend function is set already. Otherwise
+     * records it and counts an issued call.
+     */
+    private boolean isBlendFunc(int sourceRgb, int destinationRgb, int sourceAlpha,
+            int destinationAlpha) {
+        if (mBlendFunc[0] == sourceRgb && mBlendFunc[1] == destinationRgb
+                && mBlendFunc[2] == sourceAlpha && mBlendFunc[3] == destinationAlpha) {
+            mSkippedCallCount++;
+            return true;
+        }
+        mBlendFunc[0] = sourceRgb;
+        mBlendFunc[1] = destinationRgb;
+        mBlendFunc[2] = sourceAlpha;
+        mBlendFunc[3] = destinationAlpha;
+        mIssuedCallCount++;
+        return false;
+    }
+
+    private int setCapability(int capability, int current, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (current == value) {
+            mSkippedCallCount++;
+            return current;
+        }
+        mIssuedCallCount++;
+        if (enabled) {
+            GLES20.glEnable(capability);
+        } else {
+            GLES20.glDisable(capability);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.opengl.GLES20;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A compressed 2D texture with its mip chain, read from a KTX 1.1 container. The container is
+ * parsed on any thread; {@link #upload()} hands every level to {@code glCompressedTexImage2D}
+ * without decoding.
+ *
+ * <p>KTX files are made next to the images in the asset directory by the offline
+ * {@code encodeTextures} task in {@code app/build.gradle}.
+ */
+public class KtxTexture {
+    /** File name extension of compressed texture assets. */
+    public static final String FILE_EXTENSION = ".ktx";
+
+    private static final byte[] IDENTIFIER = {
+        (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int ENDIANNESS = 0x04030201;
+    private static final int HEADER_BYTES = 64;
+
+    private final int mInternalFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer[] mLevels;
+
+    private KtxTexture(int internalFormat, int width, int height, ByteBuffer[] levels) {
+        mInternalFormat = internalFormat;
+        mWidth = width;
+        mHeight = height;
+        mLevels = levels;
+    }
+
+    /**
+     * Returns the name of the compressed variant of an image asset.
+     */
+    public static String assetNameFor(String imageAssetName) {
+        int extension = imageAssetName.lastIndexOf('.');
+        return (extension < 0 ? imageAssetName : imageAssetName.substring(0, extension))
+            + FILE_EXTENSION;
+    }
+
+    /**
+     * Reads a KTX container holding one compressed 2D image and its mip levels. The stream is
+     * closed.
+     *
+     * @throws IOException If the stream cannot be read or holds anything else.
+     */
+    public static KtxTexture read(InputStream inputStream) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = readFully(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_BYTES
+                || !Arrays.equals(Arrays.copyOf(bytes, IDENTIFIER.length), IDENTIFIER)) {
+            throw new IOException("Not a KTX file");
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(12) != ENDIANNESS) {
+            data.order(ByteOrder.BIG_ENDIAN);
+        }
+        int glType = data.getInt(16);
+        int internalFormat = data.getInt(28);
+        int width = data.getInt(36);
+        int height = data.getInt(40);
+        int depth = data.getInt(44);
+        int arrayElements = data.getInt(48);
+        int faces = data.getInt(52);
+        int levelCount = Math.max(1, data.getInt(56));
+        int keyValueBytes = data.getInt(60);
+        if (glType != 0 || depth != 0 || arrayElements != 0 || faces != 1) {
+            throw new IOException("Only compressed 2D KTX textures are supported");
+        }
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        int offset = HEADER_BYTES + keyValueBytes;
+        for (int level = 0; level < levelCount; level++) {
+            if (offset + 4 > bytes.length) {
+                throw new IOException("Truncated KTX file");
+            }
+            int imageSize = data.getInt(offset);
+            offset += 4;
+            if (imageSize < 0 || offset + imageSize > bytes.length) {
+                throw new IOException("Truncated KTX file");
+            }
+            levels[level] = ByteBuffer.allocateDirect(imageSize).order(ByteOrder.nativeOrder());
+            levels[level].put(bytes, offset, imageSize).rewind();
+            // Levels are padded to four bytes.
+            offset += (imageSize + 3) & ~3;
+        }
+        return new KtxTexture(internalFormat, width, height, levels);
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        byte[] bytes = new byte[Math.max(4096, inputStream.available())];
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Returns whether the current GL context can sample the texture's compressed format. Must be
+     * called on the GL thread.
+     */
+    public boolean isSupported() {
+        int[] count = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+        int[] formats = new int[count[0]];
+        GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, formats, 0);
+        for (int format : formats) {
+            if (format == mInternalFormat) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the file holds a complete mip chain, down to one texel.
+     */
+    public boolean hasMipmaps() {
+        int size = Math.max(mWidth, mHeight);
+        int fullLevelCount = 32 - Integer.numberOfLeadingZeros(size);
+        return mLevels.length >= fullLevelCount;
+    }
+
+    /**
+     * Uploads every level to the texture bound to {@code GL_TEXTURE_2D}. Must be called on the GL
+     * thread.
+     */
+    public void upload() {
+        for (int level = 0; level < mLevels.length; level++) {
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, mInternalFormat,
+                Math.max(1, mWidth >> level), Math.max(1, mHeight >> level), 0,
+                mLevels[level].capacity(), mLevels[level]);
+        }
+    }
+
+    /** Returns the GPU memory taken by all levels, in bytes. */
+    public int getByteCount() {
+        int byteCount = 0;
+        for (ByteBuffer level : mLevels) {
+            byteCount += level.capacity();
+        }
+        return byteCount;
+    }
+}
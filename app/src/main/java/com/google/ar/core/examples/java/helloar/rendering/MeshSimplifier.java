@@ -0,0 +1,423 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the triangle count of an indexed mesh by quadric error edge collapse, after Garland
+ * and Heckbert. Every vertex accumulates the planes of the triangles around it in a quadric, and
+ * edges are collapsed cheapest first, where the cost of moving a vertex is its distance to the
+ * planes of both endpoints.
+ *
+ * <p>An edge collapse moves one endpoint onto the other instead of onto an optimal new position,
+ * so the result only refers to existing vertices and can share the vertex buffer of the full
+ * mesh. Texture coordinates and normals therefore stay valid.
+ *
+ * <p>Where the OBJ had one position with several texture coordinates or normals, on a seam, the
+ * vertices are welded by position for the quadrics and the border test. The copies of a seam
+ * vertex move together, each onto the copy of the other endpoint on its own side, so a collapse
+ * is only possible along the seam and the texture layout survives. Vertices on an open border
+ * are never moved, so the outline survives too.
+ */
+final class MeshSimplifier {
+    // Collapses that would turn a triangle further than this are rejected (cosine).
+    private static final float MIN_NORMAL_COSINE = 0.2f;
+
+    private final float[] mPositions;
+    private final int mVertexCount;
+    // The lowest vertex with the same position, for every vertex. Quadrics and locks are kept
+    // for these only.
+    private final int[] mPositionIds;
+    private final double[] mQuadrics;
+    private final boolean[] mLocked;
+
+    private int[] mIndices;
+    private int mTriangleCount;
+
+    // Scratch normals for the flip test.
+    private final float[] mNormalBefore = new float[3];
+    private final float[] mNormalAfter = new float[3];
+    // Scratch of a collapse: every copy of the moved position and the copy it moves onto.
+    private int[] mCopies = new int[8];
+    private int[] mCopyTargets = new int[8];
+    private int mCopyCount;
+
+    private MeshSimplifier(float[] positions, int[] indices) {
+        mPositions = positions;
+        mVertexCount = positions.length / 3;
+        mPositionIds = new int[mVertexCount];
+        mQuadrics = new double[10 * mVertexCount];
+        mLocked = new boolean[mVertexCount];
+        mIndices = indices.clone();
+        mTriangleCount = indices.length / 3;
+    }
+
+    /**
+     * Returns the indices of a simplified version of the triangles.
+     *
+     * @param positions Vertex positions, three floats per vertex.
+     * @param indices Vertex indices, three per triangle. Not modified.
+     * @param targetTriangleCount The number of triangles to stop at. The result has more if no
+     *     further edge can be collapsed without moving a border, tearing a seam or flipping a
+     *     triangle.
+     */
+    static int[] simplify(float[] positions, int[] indices, int targetTriangleCount) {
+        MeshSimplifier simplifier = new MeshSimplifier(positions, indices);
+        simplifier.weldPositions();
+        simplifier.lockBorders();
+        simplifier.computeQuadrics();
+        while (simplifier.mTriangleCount > targetTriangleCount
+                && simplifier.collapsePass(targetTriangleCount)) {
+            simplifier.removeDegenerateTriangles();
+        }
+        simplifier.removeDegenerateTriangles();
+        return Arrays.copyOf(simplifier.mIndices, 3 * simplifier.mTriangleCount);
+    }
+
+    /** Maps every vertex to the lowest vertex with the same position. */
+    private void weldPositions() {
+        // Equal positions have equal hashes, so only vertices within a run need comparing.
+        long[] keys = new long[mVertexCount];
+        for (int v = 0; v < mVertexCount; v++) {
+            keys[v] = ((long) positionHash(v) << 32) | v;
+            mPositionIds[v] = v;
+        }
+        Arrays.sort(keys);
+        for (int start = 0, end; start < mVertexCount; start = end) {
+            end = start + 1;
+            while (end < mVertexCount && keys[end] >>> 32 == keys[start] >>> 32) {
+                end++;
+            }
+            // Within a run the vertices are in increasing order, so the first match is lowest.
+            for (int i = start; i < end; i++) {
+                int a = (int) keys[i];
+                if (mPositionIds[a] != a) {
+                    continue;
+                }
+                for (int j = i + 1; j < end; j++) {
+                    int b = (int) keys[j];
+                    if (mPositionIds[b] == b && samePosition(a, b)) {
+                        mPositionIds[b] = a;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks every position on an edge that is used by one triangle only. A seam is no border,
+     * since the triangles on both of its sides share the welded positions.
+     */
+    private void lockBorders() {
+        // An edge a->b is on the border if no triangle has the edge b->a.
+        long[] edges = new long[3 * mTriangleCount];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = edgeKey(mPositionIds[mIndices[i]],
+                mPositionIds[mIndices[i - i % 3 + (i + 1) % 3]]);
+        }
+        long[] sortedEdges = edges.clone();
+        Arrays.sort(sortedEdges);
+        for (int i = 0; i < edges.length; i++) {
+            int from = (int) (edges[i] >>> 32);
+            int to = (int) edges[i];
+            if (Arrays.binarySearch(sortedEdges, edgeKey(to, from)) < 0) {
+                mLocked[from] = true;
+                mLocked[to] = true;
+            }
+        }
+    }
+
+    private int positionHash(int v) {
+        int hash = Float.floatToIntBits(mPositions[3 * v]);
+        hash = 31 * hash + Float.floatToIntBits(mPositions[3 * v + 1]);
+        return 31 * hash + Float.floatToIntBits(mPositions[3 * v + 2]);
+    }
+
+    private boolean samePosition(int a, int b) {
+        return mPositions[3 * a] == mPositions[3 * b]
+            && mPositions[3 * a + 1] == mPositions[3 * b + 1]
+            && mPositions[3 * a + 2] == mPositions[3 * b + 2];
+    }
+
+    private static long edgeKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    /** Adds the plane of every triangle, weighted by its area, to the quadrics of its corners. */
+    private void computeQuadrics() {
+        float[] normal = new float[3];
+        for (int t = 0; t < mTriangleCount; t++) {
+            int a = mIndices[3 * t];
+            int b = mIndices[3 * t + 1];
+            int c = mIndices[3 * t + 2];
+            float length = normal(a, b, c, normal);
+            if (length == 0.0f) {
+                continue;
+            }
+            double nx = normal[0] / length;
+            double ny = normal[1] / length;
+            double nz = normal[2] / length;
+            double d = -(nx * mPositions[3 * a] + ny * mPositions[3 * a + 1]
+                + nz * mPositions[3 * a + 2]);
+            double area = 0.5 * length;
+            for (int corner = 0; corner < 3; corner++) {
+                int q = 10 * mPositionIds[mIndices[3 * t + corner]];
+                mQuadrics[q] += area * nx * nx;
+                mQuadrics[q + 1] += area * nx * ny;
+                mQuadrics[q + 2] += area * nx * nz;
+                mQuadrics[q + 3] += area * nx * d;
+                mQuadrics[q + 4] += area * ny * ny;
+                mQuadrics[q + 5] += area * ny * nz;
+                mQuadrics[q + 6] += area * ny * d;
+                mQuadrics[q + 7] += area * nz * nz;
+                mQuadrics[q + 8] += area * nz * d;
+                mQuadrics[q + 9] += area * d * d;
+            }
+        }
+    }
+
+    /** Returns the error of moving position from onto position to. */
+    private double collapseError(int from, int to) {
+        double x = mPositions[3 * to];
+        double y = mPositions[3 * to + 1];
+        double z = mPositions[3 * to + 2];
+        return quadricError(from, x, y, z) + quadricError(to, x, y, z);
+    }
+
+    /** Returns the weighted sum of squared distances of a point to the planes of a position. */
+    private double quadricError(int vertex, double x, double y, double z) {
+        int q = 10 * vertex;
+        return mQuadrics[q] * x * x + 2 * mQuadrics[q + 1] * x * y
+            + 2 * mQuadrics[q + 2] * x * z + 2 * mQuadrics[q + 3] * x
+            + mQuadrics[q + 4] * y * y + 2 * mQuadrics[q + 5] * y * z
+            + 2 * mQuadrics[q + 6] * y + mQuadrics[q + 7] * z * z
+            + 2 * mQuadrics[q + 8] * z + mQuadrics[q + 9];
+    }
+
+    /**
+     * Collapses the cheapest edges, each position at most once, until the target is reached.
+     *
+     * @return false if no edge could be collapsed.
+     */
+    private boolean collapsePass(int targetTriangleCount) {
+        // Triangles around every position.
+        int[] firstTriangle = new int[mVertexCount + 1];
+        for (int i = 0; i < 3 * mTriangleCount; i++) {
+            firstTriangle[mPositionIds[mIndices[i]] + 1]++;
+        }
+        for (int v = 0; v < mVertexCount; v++) {
+            firstTriangle[v + 1] += firstTriangle[v];
+        }
+        int[] triangles = new int[3 * mTriangleCount];
+        int[] fill = Arrays.copyOf(firstTriangle, mVertexCount);
+        for (int i = 0; i < 3 * mTriangleCount; i++) {
+            triangles[fill[mPositionIds[mIndices[i]]]++] = i / 3;
+        }
+
+        // The cheaper direction of every edge, sorted by error. Errors are never negative, so
+        // their float bits sort like the values.
+        int[] from = new int[3 * mTriangleCount];
+        int[] to = new int[3 * mTriangleCount];
+        long[] order = new long[3 * mTriangleCount];
+        int candidateCount = 0;
+        for (int i = 0; i < 3 * mTriangleCount; i++) {
+            int a = mPositionIds[mIndices[i]];
+            int b = mPositionIds[mIndices[i - i % 3 + (i + 1) % 3]];
+            double errorAb = mLocked[a] ? Double.POSITIVE_INFINITY : collapseError(a, b);
+            double errorBa = mLocked[b] ? Double.POSITIVE_INFINITY : collapseError(b, a);
+            double error = Math.min(errorAb, errorBa);
+            if (error == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            from[candidateCount] = errorAb <= errorBa ? a : b;
+            to[candidateCount] = errorAb <= errorBa ? b : a;
+            float bits = (float) Math.max(0.0, error);
+            order[candidateCount] = ((long) Float.floatToIntBits(bits) << 32) | candidateCount;
+            candidateCount++;
+        }
+        Arrays.sort(order, 0, candidateCount);
+
+        boolean[] touched = new boolean[mVertexCount];
+        boolean collapsed = false;
+        for (int i = 0; i < candidateCount && mTriangleCount > targetTriangleCount; i++) {
+            int candidate = (int) order[i];
+            int u = from[candidate];
+            int v = to[candidate];
+            if (touched[u] || touched[v]
+                    || !canCollapse(u, v, triangles, firstTriangle[u], firstTriangle[u + 1])) {
+                continue;
+            }
+            // Every copy of u moves onto its copy of v, found by canCollapse.
+            for (int j = firstTriangle[u]; j < firstTriangle[u + 1]; j++) {
+                int t = triangles[j];
+                if (isDegenerate(t)) {
+                    continue;
+                }
+                for (int corner = 0; corner < 3; corner++) {
+                    int vertex = mIndices[3 * t + corner];
+                    if (mPositionIds[vertex] == u) {
+                        mIndices[3 * t + corner] = copyTarget(vertex);
+                    }
+                }
+                if (isDegenerate(t)) {
+                    mTriangleCount--;
+                }
+            }
+            for (int k = 0; k < 10; k++) {
+                mQuadrics[10 * v + k] += mQuadrics[10 * u + k];
+            }
+            // The adjacency of v is stale now; both wait for the next pass.
+            touched[u] = true;
+            touched[v] = true;
+            collapsed = true;
+        }
+        return collapsed;
+    }
+
+    /**
+     * Returns whether position u can be moved onto position v. Every copy of u must share a
+     * triangle with exactly one copy of v, which it is moved onto, so that no triangle takes
+     * the texture coordinates or normal of the other side of a seam. Every triangle that
+     * survives around u must keep facing roughly the same way.
+     */
+    private boolean canCollapse(int u, int v, int[] triangles, int start, int end) {
+        mCopyCount = 0;
+        for (int j = start; j < end; j++) {
+            int t = triangles[j];
+            if (isDegenerate(t)) {
+                continue;
+            }
+            int copy = -1;
+            int target = -1;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = mIndices[3 * t + corner];
+                if (mPositionIds[vertex] == u) {
+                    copy = vertex;
+                } else if (mPositionIds[vertex] == v) {
+                    target = vertex;
+                }
+            }
+            if (!addCopy(copy, target)) {
+                return false;
+            }
+        }
+        for (int k = 0; k < mCopyCount; k++) {
+            if (mCopyTargets[k] < 0) {
+                return false;
+            }
+        }
+
+        float[] before = mNormalBefore;
+        float[] after = mNormalAfter;
+        for (int j = start; j < end; j++) {
+            int t = triangles[j];
+            int a = mIndices[3 * t];
+            int b = mIndices[3 * t + 1];
+            int c = mIndices[3 * t + 2];
+            if (isDegenerate(t) || mPositionIds[a] == v || mPositionIds[b] == v
+                    || mPositionIds[c] == v) {
+                continue;
+            }
+            float beforeLength = normal(a, b, c, before);
+            float afterLength = normal(mPositionIds[a] == u ? v : a, mPositionIds[b] == u ? v : b,
+                mPositionIds[c] == u ? v : c, after);
+            if (afterLength == 0.0f) {
+                return false;
+            }
+            float dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            if (dot < MIN_NORMAL_COSINE * beforeLength * afterLength) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the copy of v that a copy of u moves onto, or -1 while none is known.
+     *
+     * @return false if the copy of u already moves onto another copy of v.
+     */
+    private boolean addCopy(int copy, int target) {
+        for (int k = 0; k < mCopyCount; k++) {
+            if (mCopies[k] != copy) {
+                continue;
+            }
+            if (target < 0 || mCopyTargets[k] == target) {
+                return true;
+            }
+            if (mCopyTargets[k] >= 0) {
+                return false;
+            }
+            mCopyTargets[k] = target;
+            return true;
+        }
+        if (mCopyCount == mCopies.length) {
+            mCopies = Arrays.copyOf(mCopies, 2 * mCopyCount);
+            mCopyTargets = Arrays.copyOf(mCopyTargets, 2 * mCopyCount);
+        }
+        mCopies[mCopyCount] = copy;
+        mCopyTargets[mCopyCount] = target;
+        mCopyCount++;
+        return true;
+    }
+
+    /** Returns the copy of v that a copy of u moves onto, as found by the last canCollapse. */
+    private int copyTarget(int copy) {
+        for (int k = 0; k < mCopyCount; k++) {
+            if (mCopies[k] == copy) {
+                return mCopyTargets[k];
+            }
+        }
+        throw new IllegalStateException("Vertex " + copy + " was not checked");
+    }
+
+    private boolean isDegenerate(int t) {
+        int a = mIndices[3 * t];
+        int b = mIndices[3 * t + 1];
+        int c = mIndices[3 * t + 2];
+        return a == b || b == c || c == a;
+    }
+
+    /** Writes the unnormalized normal of a triangle and returns its length. */
+    private float normal(int a, int b, int c, float[] normal) {
+        float abX = mPositions[3 * b] - mPositions[3 * a];
+        float abY = mPositions[3 * b + 1] - mPositions[3 * a + 1];
+        float abZ = mPositions[3 * b + 2] - mPositions[3 * a + 2];
+        float acX = mPositions[3 * c] - mPositions[3 * a];
+        float acY = mPositions[3 * c + 1] - mPositions[3 * a + 1];
+        float acZ = mPositions[3 * c + 2] - mPositions[3 * a + 2];
+        normal[0] = abY * acZ - abZ * acY;
+        normal[1] = abZ * acX - abX * acZ;
+        normal[2] = abX * acY - abY * acX;
+        return (float) Math.sqrt(
+            normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+    }
+
+    private void removeDegenerateTriangles() {
+        int count = 0;
+        for (int t = 0; t < mIndices.length / 3; t++) {
+            if (isDegenerate(t)) {
+                continue;
+            }
+            mIndices[3 * count] = mIndices[3 * t];
+            mIndices[3 * count + 1] = mIndices[3 * t + 1];
+            mIndices[3 * count + 2] = mIndices[3 * t + 2];
+            count++;
+        }
+        mIndices = Arrays.copyOf(mIndices, 3 * count);
+        mTriangleCount = count;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads an OBJ straight into a {@link PackedMesh} in a single pass, for models that are too large
+ * to go through an object graph first.
+ *
+ * <p>The stream is tokenized from a fixed byte buffer without creating a string per line or per
+ * number. Positions, texture coordinates and normals are collected in growable primitive arrays.
+ * Every distinct position/texture coordinate/normal triple of the faces becomes one output
+ * vertex, found through a primitive open addressing hash map, and polygons are split into
+ * triangle fans as they are read. This gives the same single-indexed layout as
+ * {@code ObjUtils.convertToRenderable} at a fraction of the peak heap. Indices are 16-bit if the
+ * vertices allow it and 32-bit otherwise.
+ *
+ * <p>Only {@code v}, {@code vt}, {@code vn} and {@code f} statements are read; groups, materials,
+ * lines and points are skipped.
+ */
+public class ObjStreamReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EOF = -1;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = 10.0 * POWERS_OF_TEN[i - 1];
+        }
+    }
+
+    private final InputStream mInputStream;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mPosition;
+    private int mLimit;
+    private int mLine = 1;
+
+    // Attributes as listed in the file.
+    private final FloatArray mObjPositions = new FloatArray();
+    private final FloatArray mObjTexCoords = new FloatArray();
+    private final FloatArray mObjNormals = new FloatArray();
+
+    // Single-indexed output vertices and triangles.
+    private final VertexMap mVertexMap = new VertexMap();
+    private final FloatArray mPositions = new FloatArray();
+    private final FloatArray mTexCoords = new FloatArray();
+    private final FloatArray mNormals = new FloatArray();
+    private final IntArray mIndices = new IntArray();
+    private boolean mHasTexCoords;
+    private boolean mHasNormals;
+
+    private ObjStreamReader(InputStream inputStream) {
+        mInputStream = inputStream;
+    }
+
+    /**
+     * Reads an OBJ into render-ready buffers. The stream is closed.
+     *
+     * @throws IOException If the stream cannot be read or is malformed.
+     */
+    public static PackedMesh read(InputStream inputStream) throws IOException {
+        try {
+            return new ObjStreamReader(inputStream).readMesh();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private PackedMesh readMesh() throws IOException {
+        int c;
+        while ((c = skipSpaces()) != EOF) {
+            if (c == 'v') {
+                mPosition++;
+                int kind = peek();
+                if (kind == 't') {
+                    mPosition++;
+                    readTexCoord();
+                } else if (kind == 'n') {
+                    mPosition++;
+                    readVector(mObjNormals);
+                } else if (kind == ' ' || kind == '\t') {
+                    readVector(mObjPositions);
+                }
+            } else if (c == 'f') {
+                mPosition++;
+                int next = peek();
+                if (next == ' ' || next == '\t') {
+                    readFace();
+                }
+            }
+            skipLine();
+        }
+        return pack();
+    }
+
+    private void readVector(FloatArray target) throws IOException {
+        target.add(readFloat());
+        target.add(readFloat());
+        target.add(readFloat());
+    }
+
+    private void readTexCoord() throws IOException {
+        mObjTexCoords.add(readFloat());
+        // The second coordinate is optional and defaults to 0.
+        mObjTexCoords.add(isEndOfStatement(skipSpaces()) ? 0.0f : readFloat());
+    }
+
+    /**
+     * Reads the corners of a face and appends it as a fan of triangles around its first corner.
+     */
+    private void readFace() throws IOException {
+        int first = -1;
+        int previous = -1;
+        int cornerCount = 0;
+        while (!isEndOfStatement(skipSpaces())) {
+            int position = resolve(readInt(), mObjPositions.size() / 3);
+            int texCoord = -1;
+            int normal = -1;
+            if (peek() == '/') {
+                mPosition++;
+                if (peek() != '/') {
+                    texCoord = resolve(readInt(), mObjTexCoords.size() / 2);
+                }
+                if (peek() == '/') {
+                    mPosition++;
+                    normal = resolve(readInt(), mObjNormals.size() / 3);
+                }
+            }
+
+            int vertex = mVertexMap.get(position, texCoord, normal);
+            if (vertex < 0) {
+                vertex = addVertex(position, texCoord, normal);
+            }
+            if (cornerCount == 0) {
+                first = vertex;
+            } else if (cornerCount >= 2) {
+                mIndices.add(first);
+                mIndices.add(previous);
+                mIndices.add(vertex);
+            }
+            previous = vertex;
+            cornerCount++;
+        }
+        if (cornerCount < 3) {
+            throw new IOException("Face with fewer than three vertices on line " + mLine);
+        }
+    }
+
+    private int addVertex(int position, int texCoord, int normal) {
+        int vertex = mPositions.size() / 3;
+        mVertexMap.put(position, texCoord, normal, vertex);
+        float[] positions = mObjPositions.mValues;
+        mPositions.add(positions[3 * position]);
+        mPositions.add(positions[3 * position + 1]);
+        mPositions.add(positions[3 * position + 2]);
+        if (texCoord >= 0) {
+            mTexCoords.add(mObjTexCoords.mValues[2 * texCoord]);
+            mTexCoords.add(mObjTexCoords.mValues[2 * texCoord + 1]);
+            mHasTexCoords = true;
+        } else {
+            mTexCoords.add(0.0f);
+            mTexCoords.add(0.0f);
+        }
+        if (normal >= 0) {
+            mNormals.add(mObjNormals.mValues[3 * normal]);
+            mNormals.add(mObjNormals.mValues[3 * normal + 1]);
+            mNormals.add(mObjNormals.mValues[3 * normal + 2]);
+            mHasNormals = true;
+        } else {
+            mNormals.add(0.0f);
+            mNormals.add(0.0f);
+            mNormals.add(0.0f);
+        }
+        return vertex;
+    }
+
+    /** Turns a one-based or negative, relative OBJ index into a zero-based one. */
+    private int resolve(int index, int count) throws IOException {
+        int resolved = index < 0 ? count + index : index - 1;
+        if (resolved < 0 || resolved >= count) {
+            throw new IOException("Index " + index + " out of range on line " + mLine);
+        }
+        return resolved;
+    }
+
+    private PackedMesh pack() {
+        // Attributes no face referred to are left out, like ObjData does.
+        int positionFloatCount = mPositions.size();
+        int texCoordFloatCount = mHasTexCoords ? mTexCoords.size() : 0;
+        int normalFloatCount = mHasNormals ? mNormals.size() : 0;
+
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(
+            4 * (positionFloatCount + texCoordFloatCount + normalFloatCount))
+            .order(ByteOrder.nativeOrder());
+        FloatBuffer vertices = vertexData.asFloatBuffer();
+        vertices.put(mPositions.mValues, 0, positionFloatCount);
+        vertices.put(mTexCoords.mValues, 0, texCoordFloatCount);
+        vertices.put(mNormals.mValues, 0, normalFloatCount);
+
+        int indexCount = mIndices.size();
+        int indexSize = PackedMesh.fitsShortIndices(positionFloatCount / 3) ? 2 : 4;
+        ByteBuffer indexData = ByteBuffer.allocateDirect(indexSize * indexCount)
+            .order(ByteOrder.nativeOrder());
+        if (indexSize == 2) {
+            ShortBuffer indices = indexData.asShortBuffer();
+            for (int i = 0; i < indexCount; i++) {
+                indices.put((short) mIndices.mValues[i]);
+            }
+        } else {
+            indexData.asIntBuffer().put(mIndices.mValues, 0, indexCount);
+        }
+
+        return new PackedMesh(vertexData, indexData, indexSize, positionFloatCount,
+            texCoordFloatCount, normalFloatCount, indexCount);
+    }
+
+    // Tokenizer.
+
+    /** Returns the next byte without consuming it, or EOF. */
+    private int peek() throws IOException {
+        if (mPosition == mLimit) {
+            mLimit = mInputStream.read(mBuffer, 0, mBuffer.length);
+            mPosition = 0;
+            if (mLimit <= 0) {
+                mLimit = 0;
+                return EOF;
+            }
+        }
+        return mBuffer[mPosition] & 0xff;
+    }
+
+    /** Skips spaces and tabs, and returns the next byte without consuming it. */
+    private int skipSpaces() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t') {
+            mPosition++;
+        }
+        return c;
+    }
+
+    /** Skips the rest of the current line, including its line break and any comment. */
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = peek()) != EOF) {
+            mPosition++;
+            if (c == '\n') {
+                mLine++;
+                return;
+            }
+        }
+    }
+
+    private static boolean isEndOfStatement(int c) {
+        return c == '\n' || c == '\r' || c == '#' || c == EOF;
+    }
+
+    private int readInt() throws IOException {
+        boolean negative = false;
+        int c = peek();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            mPosition++;
+            c = peek();
+        }
+        if (c < '0' || c > '9') {
+            throw new IOException("Malformed index on line " + mLine);
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = 10 * value + (c - '0');
+            mPosition++;
+            c = peek();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a decimal number with optional sign, fraction and exponent. The first 18 significant
+     * digits are accumulated exactly in a long, which is more than a float can hold.
+     */
+    private float readFloat() throws IOException {
+        int c = skipSpaces();
+        boolean negative = false;
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            mPosition++;
+            c = peek();
+        }
+
+        long mantissa = 0;
+        int digitCount = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        while (c >= '0' && c <= '9') {
+            if (digitCount < 18) {
+                mantissa = 10 * mantissa + (c - '0');
+                if (mantissa != 0) {
+                    digitCount++;
+                }
+            } else {
+                exponent++;
+            }
+            anyDigit = true;
+            mPosition++;
+            c = peek();
+        }
+        if (c == '.') {
+            mPosition++;
+            c = peek();
+            while (c >= '0' && c <= '9') {
+                if (digitCount < 18) {
+                    mantissa = 10 * mantissa + (c - '0');
+                    if (mantissa != 0) {
+                        digitCount++;
+                    }
+                    exponent--;
+                }
+                anyDigit = true;
+                mPosition++;
+                c = peek();
+            }
+        }
+        if (!anyDigit) {
+            throw new IOException("Malformed number on line " + mLine);
+        }
+        if (c == 'e' || c == 'E') {
+            mPosition++;
+            exponent += readInt();
+        }
+
+        double value = mantissa;
+        if (mantissa != 0 && exponent != 0) {
+            value = scale(value, exponent);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private static double scale(double value, int exponent) {
+        while (exponent > 0) {
+            int step = Math.min(exponent, POWERS_OF_TEN.length - 1);
+            value *= POWERS_OF_TEN[step];
+            exponent -= step;
+        }
+        while (exponent < 0) {
+            int step = Math.min(-exponent, POWERS_OF_TEN.length - 1);
+            value /= POWERS_OF_TEN[step];
+            exponent += step;
+        }
+        return value;
+    }
+
+    /**
+     * A float array that grows as values are appended.
+     */
+    private static class FloatArray {
+        float[] mValues = new float[1024];
+        private int mSize;
+
+        void add(float value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, 2 * mSize);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * An int array that grows as values are appended.
+     */
+    private static class IntArray {
+        int[] mValues = new int[1024];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, 2 * mSize);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * Maps position/texture coordinate/normal index triples to output vertices, with open
+     * addressing and linear probing over flat int arrays. Missing attributes are -1.
+     */
+    private static class VertexMap {
+        private int[] mKeys = new int[3 * 1024];
+        private int[] mValues = newValues(1024);
+        private int mSize;
+
+        int get(int position, int texCoord, int normal) {
+            int mask = mValues.length - 1;
+            for (int slot = hash(position, texCoord, normal) & mask; ;
+                    slot = (slot + 1) & mask) {
+                int value = mValues[slot];
+                if (value < 0) {
+                    return -1;
+                }
+                if (mKeys[3 * slot] == position && mKeys[3 * slot + 1] == texCoord
+                        && mKeys[3 * slot + 2] == normal) {
+                    return value;
+                }
+            }
+        }
+
+        /** Adds a triple that is not in the map yet. */
+        void put(int position, int texCoord, int normal, int vertex) {
+            // Keep the table at most half full.
+            if (2 * (mSize + 1) > mValues.length) {
+                grow();
+            }
+            insert(position, texCoord, normal, vertex);
+            mSize++;
+        }
+
+        private void insert(int position, int texCoord, int normal, int vertex) {
+            int mask = mValues.length - 1;
+            int slot = hash(position, texCoord, normal) & mask;
+            while (mValues[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            mKeys[3 * slot] = position;
+            mKeys[3 * slot + 1] = texCoord;
+            mKeys[3 * slot + 2] = normal;
+            mValues[slot] = vertex;
+        }
+
+        private void grow() {
+            int[] keys = mKeys;
+            int[] values = mValues;
+            mKeys = new int[2 * keys.length];
+            mValues = newValues(2 * values.length);
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] >= 0) {
+                    insert(keys[3 * slot], keys[3 * slot + 1], keys[3 * slot + 2], values[slot]);
+                }
+            }
+        }
+
+        private static int[] newValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, -1);
+            return values;
+        }
+
+        private static int hash(int position, int texCoord, int normal) {
+            int h = position * 0x9e3779b1;
+            h = (h ^ texCoord) * 0x85ebca6b;
+            h = (h ^ normal) * 0xc2b2ae35;
+            return h ^ (h >>> 16);
+        }
+    }
+}
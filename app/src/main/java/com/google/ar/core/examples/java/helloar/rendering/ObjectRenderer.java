@@ -15,32 +15,25 @@
 package com.google.ar.core.examples.java.helloar.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
+import android.util.Log;
 
 import com.google.ar.core.examples.java.helloar.R;
+import com.google.ar.core.examples.java.helloar.picking.CollisionMesh;
+import com.google.ar.core.examples.java.helloar.picking.CollisionProxies;
+import com.google.ar.core.examples.java.helloar.picking.Pickable;
+import com.google.ar.core.examples.java.helloar.picking.ScreenBounds;
+import com.google.ar.core.examples.java.helloar.picking.TriangleBvh;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
-import java.util.ArrayList;
-
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
+import java.util.Arrays;
 
 /**
  * Renders an object loaded from an OBJ file in OpenGL.
  */
-public class ObjectRenderer {
+public class ObjectRenderer implements Pickable, AssetLoader.Asset, RenderQueue.Drawable {
     private static final String TAG = ObjectRenderer.class.getSimpleName();
 
     /**
@@ -55,39 +48,92 @@ public class ObjectRenderer {
         Grid
     }
 
-    public class Triangle {
-        public float[] vertex1 = new float[3];
-        public float[] vertex2 = new float[3];
-        public float[] vertex3 = new float[3];
+    /**
+     * Geometry the object is picked with.
+     *
+     * @see #setCollisionShape(CollisionShape)
+     */
+    public enum CollisionShape {
+        /** A CPU-side copy of the render triangles. */
+        Mesh,
+        /** The twelve triangles of the model space bounding box. */
+        BoundingBox,
+        /** A separate low-poly OBJ, see {@link #setCollisionAsset(String)}. */
+        Asset
     }
 
-    public ArrayList<Triangle> triangles = new ArrayList<>();
+    // Model space picking geometry and the hierarchy over it, used to answer taps.
+    private CollisionMesh mCollisionMesh;
+    private TriangleBvh mBvh;
+    private CollisionShape mCollisionShape = CollisionShape.Mesh;
+    private String mCollisionAssetName;
+
+    private final AssetCache mAssetCache;
+
+    // Assets read by prepare() and handed to the GL thread by createOnGlThread().
+    private String mObjAssetName;
+    private String mDiffuseTextureAssetName;
+    private PreparedTexture mPreparedTexture;
+    private AssetCache.PreparedMesh mPreparedMesh;
+    // Projection of the model space bounding box, refreshed by every draw.
+    private final ScreenBounds mScreenBounds = new ScreenBounds();
 
     private static final int COORDS_PER_VERTEX = 3;
 
+    // Ambient light added to the material while the object is highlighted.
+    private static final float HIGHLIGHT_AMBIENT = 0.3f;
+
+    // Triangle counts of the simplified levels of detail, relative to the full mesh. Meshes with
+    // fewer triangles than the minimum are drawn as they are.
+    private static final float[] LOD_TRIANGLE_RATIOS = {0.5f, 0.2f, 0.05f};
+    private static final int LOD_MIN_TRIANGLES = 64;
+    // Level i + 1 is drawn once the bounding sphere covers less than LOD_SCREEN_SIZES[i] of the
+    // viewport height. A level is only left again once the size is off by the hysteresis, so
+    // that objects near a threshold do not pop back and forth.
+    static final float[] LOD_SCREEN_SIZES = {0.4f, 0.2f, 0.08f};
+    static final float LOD_HYSTERESIS = 0.15f;
+
     // Note: the last component must be zero to avoid applying the translational part of the matrix.
-    private static final float[] LIGHT_DIRECTION = new float[] { 0.250f, 0.866f, 0.433f, 0.0f };
+    static final float[] LIGHT_DIRECTION = new float[] { 0.250f, 0.866f, 0.433f, 0.0f };
     private float[] mViewLightDirection = new float[4];
 
     // Object vertex buffer variables.
+    private AssetCache.MeshBuffers mMeshBuffers;
     private int mVertexBufferId;
     private int mVerticesBaseAddress;
     private int mTexCoordsBaseAddress;
     private int mNormalsBaseAddress;
     private int mIndexBufferId;
-    private int mIndexCount;
+    private int mIndexType;
+    // Ranges of the index buffer drawn one by one, see PackedMesh.
+    private int[] mPartIndexOffsets;
+    private int[] mPartIndexCounts;
+    private int[] mPartBaseVertices;
+    private int[] mLevelFirstParts;
+    // Level of detail last drawn per instance, see submit(RenderQueue, float[], int).
+    private int[] mInstanceLevels = new int[1];
+
+    // Model space bounding sphere, as a point and a radius, used to pick the level of detail.
+    private final float[] mBoundsCenter = new float[4];
+    private final float[] mViewBoundsCenter = new float[4];
+    private final float[] mWorldBoundsCenter = new float[4];
+    private float mBoundsRadius;
 
     private int mProgram;
+    private ShaderProgram mShaderProgram;
+    private String[] mShaderDefines = new String[0];
     private int[] mTextures = new int[1];
 
     // Shader location: model view projection matrix.
     private int mModelViewUniform;
     private int mModelViewProjectionUniform;
+    private int mTexRegionUniform;
 
     // Shader location: object attributes.
     private int mPositionAttribute;
     private int mNormalAttribute;
     private int mTexCoordAttribute;
+    private int mAttributeMask;
 
     // Shader location: texture sampler.
     private int mTextureUniform;
@@ -111,152 +157,334 @@ public class ObjectRenderer {
     private float mDiffuse = 1.0f;
     private float mSpecular = 1.0f;
     private float mSpecularPower = 6.0f;
+    private boolean mHighlighted = false;
+    // Region of the texture the mesh maps to, as {u offset, v offset, u scale, v scale}.
+    private final float[] mTextureRegion = {0.0f, 0.0f, 1.0f, 1.0f};
+    private boolean mCreated = false;
 
-    public float[] getmModelViewProjectionMatrix() {
+    @Override
+    public float[] getModelViewProjectionMatrix() {
         return mModelViewProjectionMatrix;
     }
 
-    public ObjectRenderer() {
+    /**
+     * Returns the bounding volume hierarchy over the model space triangles, or null before
+     * {@link #createOnGlThread(Context)} was called.
+     */
+    @Override
+    public TriangleBvh getBvh() {
+        return mBvh;
     }
 
     /**
-     * Creates and initializes OpenGL resources needed for rendering the model.
+     * Returns the model space triangles of the object, or null before
+     * {@link #createOnGlThread(Context)} was called.
+     */
+    @Override
+    public CollisionMesh getCollisionMesh() {
+        return mCollisionMesh;
+    }
+
+    /**
+     * Returns the screen rectangle covered by the object when it was last drawn. Empty if the
+     * object was never drawn.
+     */
+    @Override
+    public ScreenBounds getScreenBounds() {
+        return mScreenBounds;
+    }
+
+    /**
+     * @param assetCache Cache through which textures, meshes and programs are shared with other
+     *     renderers.
+     */
+    public ObjectRenderer(AssetCache assetCache) {
+        mAssetCache = assetCache;
+    }
+
+    /**
+     * @param assetCache Cache through which textures, meshes and programs are shared with other
+     *     renderers.
+     * @param objAssetName  Name of the OBJ file containing the model geometry.
+     * @param diffuseTextureAssetName  Name of the PNG file containing the diffuse texture map. A
+     *     KTX file of the same name is used instead if there is one.
+     * @see #setAssets(String, String)
+     */
+    public ObjectRenderer(AssetCache assetCache, String objAssetName,
+            String diffuseTextureAssetName) {
+        this(assetCache);
+        setAssets(objAssetName, diffuseTextureAssetName);
+    }
+
+    /**
+     * Selects the geometry used for picking. Must be called before {@link #prepare(Context)}.
+     * With any shape other than {@link CollisionShape#Mesh}, the render triangles are not kept
+     * on the CPU.
+     *
+     * @param collisionShape The collision shape. Use {@link #setCollisionAsset(String)} for
+     *     {@link CollisionShape#Asset}.
+     */
+    public void setCollisionShape(CollisionShape collisionShape) {
+        mCollisionShape = collisionShape;
+    }
+
+    /**
+     * Picks the object with a separate, typically low-poly, OBJ instead of its render mesh. Must
+     * be called before {@link #prepare(Context)}.
+     *
+     * @param objAssetName Name of the OBJ file containing the collision geometry, in the model
+     *     space of the render mesh.
+     */
+    public void setCollisionAsset(String objAssetName) {
+        mCollisionShape = CollisionShape.Asset;
+        mCollisionAssetName = objAssetName;
+    }
+
+    /**
+     * Creates and initializes OpenGL resources needed for rendering the model, preparing the
+     * assets on the calling thread.
      *
      * @param context Context for loading the shader and below-named model and texture assets.
      * @param objAssetName  Name of the OBJ file containing the model geometry.
-     * @param diffuseTextureAssetName  Name of the PNG file containing the diffuse texture map.
+     * @param diffuseTextureAssetName  Name of the PNG file containing the diffuse texture map. A
+     *     KTX file of the same name is used instead if there is one.
      */
     public void createOnGlThread(Context context, String objAssetName,
                                  String diffuseTextureAssetName) throws IOException {
-        // Read the texture.
-        Bitmap textureBitmap = BitmapFactory.decodeStream(
-            context.getAssets().open(diffuseTextureAssetName));
-
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glGenTextures(mTextures.length, mTextures, 0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
-
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-            GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-            GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-        textureBitmap.recycle();
-
-        ShaderUtil.checkGLError(TAG, "Texture loading");
-
-        // Read the obj file.
-        InputStream objInputStream = context.getAssets().open(objAssetName);
-        Obj obj = ObjReader.read(objInputStream);
-
-        // Prepare the Obj so that its structure is suitable for
-        // rendering with OpenGL:
-        // 1. Triangulate it
-        // 2. Make sure that texture coordinates are not ambiguous
-        // 3. Make sure that normals are not ambiguous
-        // 4. Convert it to single-indexed data
-        obj = ObjUtils.convertToRenderable(obj);
-
-        // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
-        // that OpenGL understands.
-
-        // Obtain the data from the OBJ, as direct buffers:
-        IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
-        FloatBuffer vertices = ObjData.getVertices(obj);
-        FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
-        FloatBuffer normals = ObjData.getNormals(obj);
-
-        for (int i = 0; i < wideIndices.limit(); i += 3) {
-            int index1 = wideIndices.get(i);
-            int index2 = wideIndices.get(i + 1);
-            int index3 = wideIndices.get(i + 2);
-
-            Triangle triangle = new Triangle();
-            triangle.vertex1[0] = vertices.get(index1);
-            triangle.vertex1[1] = vertices.get(index1 + 1);
-            triangle.vertex1[2] = vertices.get(index1 + 2);
-
-            triangle.vertex2[0] = vertices.get(index2);
-            triangle.vertex2[1] = vertices.get(index2 + 1);
-            triangle.vertex2[2] = vertices.get(index2 + 2);
-
-            triangle.vertex3[0] = vertices.get(index3);
-            triangle.vertex3[1] = vertices.get(index3 + 1);
-            triangle.vertex3[2] = vertices.get(index3 + 2);
-
-            triangles.add(triangle);
+        setAssets(objAssetName, diffuseTextureAssetName);
+        prepare(context);
+        createOnGlThread(context);
+    }
+
+    /**
+     * Selects a variant of the object shaders. Must be called before
+     * {@link #createOnGlThread(Context)}. The fragment shader understands:
+     * <ul>
+     *   <li>{@code NO_SPECULAR}: skips the specular term, for flat or matte content.
+     *   <li>{@code NO_GAMMA}: skips the sRGB gamma conversions, for unlit content.
+     * </ul>
+     *
+     * @param defines Names to {@code #define} in the shaders.
+     */
+    public void setShaderDefines(String... defines) {
+        mShaderDefines = defines.clone();
+    }
+
+    /**
+     * Names the assets read by {@link #prepare(Context)}.
+     *
+     * @param objAssetName  Name of the OBJ file containing the model geometry.
+     * @param diffuseTextureAssetName  Name of the PNG file containing the diffuse texture map. A
+     *     KTX file of the same name is used instead if there is one.
+     */
+    public void setAssets(String objAssetName, String diffuseTextureAssetName) {
+        mObjAssetName = objAssetName;
+        mDiffuseTextureAssetName = diffuseTextureAssetName;
+    }
+
+    /**
+     * Reads the texture, loads the mesh and builds the picking geometry, skipping what is
+     * uploaded already. Needs no GL context, so it may run on any thread.
+     *
+     * @param context Context for loading the model and texture assets.
+     */
+    @Override
+    public void prepare(Context context) throws IOException {
+        // Read the texture, compressed if there is a KTX variant, unless it is uploaded already.
+        if (!mAssetCache.containsTexture(mDiffuseTextureAssetName)) {
+            mPreparedTexture = PreparedTexture.prepare(context, mDiffuseTextureAssetName);
+        }
+
+        // The uploaded mesh keeps its levels of detail and picking geometry.
+        if (!mAssetCache.containsMesh(mObjAssetName, getCollisionKey())) {
+            mPreparedMesh = prepareMesh(context);
+        }
+    }
+
+    /**
+     * Loads the mesh, simplifies it and builds the picking geometry.
+     */
+    private AssetCache.PreparedMesh prepareMesh(Context context) throws IOException {
+        // Vertex and index data, laid out for the GL buffers.
+        PackedMesh mesh = loadMesh(context, mObjAssetName);
+
+        // Build the picking geometry and the hierarchy over it. Only a Mesh shape copies the
+        // render triangles; the buffers themselves are dropped once uploaded.
+        CollisionMesh collisionMesh = createCollisionMesh(context, mesh);
+        TriangleBvh bvh = new TriangleBvh(collisionMesh);
+
+        // Simplified versions for drawing the object from afar.
+        float[] bounds = new float[6];
+        mesh.computeBounds(bounds);
+        if (mesh.getIndexCount() / 3 >= LOD_MIN_TRIANGLES) {
+            mesh = mesh.withLevelsOfDetail(LOD_TRIANGLE_RATIOS);
         }
 
-        // Convert int indices to shorts for GL ES 2.0 compatibility
-        ShortBuffer indices = ByteBuffer.allocateDirect(2 * wideIndices.limit())
-            .order(ByteOrder.nativeOrder()).asShortBuffer();
-        while (wideIndices.hasRemaining()) {
-            indices.put((short) wideIndices.get());
+        // Without 32-bit index support, large meshes are drawn in 16-bit parts.
+        if (!mAssetCache.areWideIndicesSupported()) {
+            mesh = mesh.splitForShortIndices();
         }
-        indices.rewind();
+        return new AssetCache.PreparedMesh(mesh, bounds, getCollisionKey(), collisionMesh, bvh);
+    }
 
-        int[] buffers = new int[2];
-        GLES20.glGenBuffers(2, buffers, 0);
-        mVertexBufferId = buffers[0];
-        mIndexBufferId = buffers[1];
+    /**
+     * Uploads the assets loaded by {@link #prepare(Context)} and compiles the shaders. Must be
+     * called on the GL thread. The object can be picked and drawn from then on.
+     *
+     * @param context Context for loading the shader.
+     */
+    @Override
+    public void createOnGlThread(Context context) {
+        // Renderers sharing an asset share one upload of it.
+        mTextures[0] = mAssetCache.acquireTexture(context, mDiffuseTextureAssetName,
+            mPreparedTexture);
+        mPreparedTexture = null;
+        // Images packed into an atlas only cover a region of the texture.
+        float[] atlasRegion = mAssetCache.getTextureRegion(mDiffuseTextureAssetName);
+        if (atlasRegion != null) {
+            System.arraycopy(atlasRegion, 0, mTextureRegion, 0, 4);
+        }
 
-        // Load vertex buffer
+        if (mPreparedMesh == null && !mAssetCache.containsMesh(mObjAssetName, getCollisionKey())) {
+            // Released since prepare(), or uploaded with other picking geometry.
+            try {
+                mPreparedMesh = prepareMesh(context);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read " + mObjAssetName, e);
+            }
+        }
+        AssetCache.MeshBuffers meshBuffers = mAssetCache.acquireMesh(mObjAssetName, mPreparedMesh);
+        if (mPreparedMesh != null
+                && !meshBuffers.collisionKey.equals(mPreparedMesh.collisionKey)) {
+            mCollisionMesh = mPreparedMesh.collisionMesh;
+            mBvh = mPreparedMesh.bvh;
+        } else {
+            mCollisionMesh = meshBuffers.collisionMesh;
+            mBvh = meshBuffers.bvh;
+        }
+        mPreparedMesh = null;
+        mMeshBuffers = meshBuffers;
+        mVertexBufferId = meshBuffers.vertexBufferId;
+        mIndexBufferId = meshBuffers.indexBufferId;
         mVerticesBaseAddress = 0;
-        mTexCoordsBaseAddress = mVerticesBaseAddress + 4 * vertices.limit();
-        mNormalsBaseAddress = mTexCoordsBaseAddress + 4 * texCoords.limit();
-        final int totalBytes = mNormalsBaseAddress + 4 * normals.limit();
-
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
-        GLES20.glBufferSubData(
-            GLES20.GL_ARRAY_BUFFER, mVerticesBaseAddress, 4 * vertices.limit(), vertices);
-        GLES20.glBufferSubData(
-            GLES20.GL_ARRAY_BUFFER, mTexCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
-        GLES20.glBufferSubData(
-            GLES20.GL_ARRAY_BUFFER, mNormalsBaseAddress, 4 * normals.limit(), normals);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-        // Load index buffer
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
-        mIndexCount = indices.limit();
-        GLES20.glBufferData(
-            GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * mIndexCount, indices, GLES20.GL_STATIC_DRAW);
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
-        ShaderUtil.checkGLError(TAG, "OBJ buffer load");
-
-        final int vertexShader = ShaderUtil.loadGLShader(TAG, context,
-                GLES20.GL_VERTEX_SHADER, R.raw.object_vertex);
-        final int fragmentShader = ShaderUtil.loadGLShader(TAG, context,
-                GLES20.GL_FRAGMENT_SHADER, R.raw.object_fragment);
-
-        mProgram = GLES20.glCreateProgram();
-        GLES20.glAttachShader(mProgram, vertexShader);
-        GLES20.glAttachShader(mProgram, fragmentShader);
-        GLES20.glLinkProgram(mProgram);
-        GLES20.glUseProgram(mProgram);
-
-        ShaderUtil.checkGLError(TAG, "Program creation");
-
-        mModelViewUniform = GLES20.glGetUniformLocation(mProgram, "u_ModelView");
-        mModelViewProjectionUniform =
-            GLES20.glGetUniformLocation(mProgram, "u_ModelViewProjection");
-
-        mPositionAttribute = GLES20.glGetAttribLocation(mProgram, "a_Position");
-        mNormalAttribute = GLES20.glGetAttribLocation(mProgram, "a_Normal");
-        mTexCoordAttribute = GLES20.glGetAttribLocation(mProgram, "a_TexCoord");
-
-        mTextureUniform = GLES20.glGetUniformLocation(mProgram, "u_Texture");
-
-        mLightingParametersUniform = GLES20.glGetUniformLocation(mProgram, "u_LightingParameters");
-        mMaterialParametersUniform = GLES20.glGetUniformLocation(mProgram, "u_MaterialParameters");
+        mTexCoordsBaseAddress = mVerticesBaseAddress + meshBuffers.texCoordsOffset;
+        mNormalsBaseAddress = mVerticesBaseAddress + meshBuffers.normalsOffset;
+        mIndexType = meshBuffers.indexType;
+        mPartIndexOffsets = meshBuffers.partIndexOffsets;
+        mPartIndexCounts = meshBuffers.partIndexCounts;
+        mPartBaseVertices = meshBuffers.partBaseVertices;
+        mLevelFirstParts = meshBuffers.levelFirstParts;
+        Arrays.fill(mInstanceLevels, 0);
+        float[] bounds = meshBuffers.bounds;
+        mBoundsCenter[0] = 0.5f * (bounds[0] + bounds[3]);
+        mBoundsCenter[1] = 0.5f * (bounds[1] + bounds[4]);
+        mBoundsCenter[2] = 0.5f * (bounds[2] + bounds[5]);
+        mBoundsCenter[3] = 1.0f;
+        mBoundsRadius = 0.5f * (float) Math.sqrt((bounds[3] - bounds[0]) * (bounds[3] - bounds[0])
+            + (bounds[4] - bounds[1]) * (bounds[4] - bounds[1])
+            + (bounds[5] - bounds[2]) * (bounds[5] - bounds[2]));
+
+        // Locations come from the shared program, which looks each one up only once.
+        mShaderProgram = mAssetCache.getProgramRegistry().acquire(context, R.raw.object_vertex,
+            R.raw.object_fragment, mShaderDefines);
+        mProgram = mShaderProgram.getId();
+
+        mModelViewUniform = mShaderProgram.getUniformLocation("u_ModelView");
+        mModelViewProjectionUniform = mShaderProgram.getUniformLocation("u_ModelViewProjection");
+        mTexRegionUniform = mShaderProgram.getUniformLocation("u_TexRegion");
+
+        mPositionAttribute = mShaderProgram.getAttributeLocation("a_Position");
+        mNormalAttribute = mShaderProgram.getAttributeLocation("a_Normal");
+        mTexCoordAttribute = mShaderProgram.getAttributeLocation("a_TexCoord");
+        mAttributeMask = GlStateTracker.attributeMask(
+            mPositionAttribute, mNormalAttribute, mTexCoordAttribute);
+
+        mTextureUniform = mShaderProgram.getUniformLocation("u_Texture");
+
+        mLightingParametersUniform = mShaderProgram.getUniformLocation("u_LightingParameters");
+        mMaterialParametersUniform = mShaderProgram.getUniformLocation("u_MaterialParameters");
 
         ShaderUtil.checkGLError(TAG, "Program parameters");
 
         Matrix.setIdentityM(mModelMatrix, 0);
+        mCreated = true;
+    }
+
+    /**
+     * Returns whether {@link #createOnGlThread(Context)} ran and the object was not released
+     * since, that is whether it can be drawn.
+     */
+    public boolean isCreated() {
+        return mCreated;
+    }
+
+    /**
+     * Releases the GL resources acquired by {@link #createOnGlThread(Context)}. Must be called on
+     * the GL thread. The object can neither be picked nor drawn until it is created again.
+     */
+    public void releaseOnGlThread() {
+        mAssetCache.releaseTexture(mDiffuseTextureAssetName);
+        mAssetCache.releaseMesh(mObjAssetName);
+        mAssetCache.getProgramRegistry().release(mShaderProgram);
+        onGlContextLost();
+    }
+
+    /**
+     * Forgets the GL resources without deleting them, for when the GL context was lost and took
+     * them with it. The object can neither be picked nor drawn until it is created again.
+     */
+    public void onGlContextLost() {
+        mShaderProgram = null;
+        mMeshBuffers = null;
+        mCollisionMesh = null;
+        mBvh = null;
+        mCreated = false;
+    }
+
+    /**
+     * Maps the precompiled mesh asset next to the OBJ, or parses the OBJ if there is none.
+     */
+    private static PackedMesh loadMesh(Context context, String objAssetName) throws IOException {
+        try {
+            return PackedMesh.openAsset(context.getAssets(),
+                PackedMesh.assetNameFor(objAssetName));
+        } catch (IOException e) {
+            Log.w(TAG, "No precompiled mesh for " + objAssetName + ", parsing OBJ", e);
+        }
+
+        return ObjStreamReader.read(context.getAssets().open(objAssetName));
+    }
+
+    /**
+     * Names what the picking geometry is built from, so that renderers only share geometry
+     * built from the same source.
+     */
+    private String getCollisionKey() {
+        if (mCollisionShape == CollisionShape.Asset) {
+            return mCollisionShape.name() + ":" + mCollisionAssetName;
+        }
+        return mCollisionShape.name();
+    }
+
+    private CollisionMesh createCollisionMesh(Context context, PackedMesh mesh)
+            throws IOException {
+        switch (mCollisionShape) {
+            case BoundingBox:
+                return CollisionProxies.boundingBox(mesh.getPositions());
+            case Asset:
+                InputStream collisionInputStream = context.getAssets().open(mCollisionAssetName);
+                try {
+                    return CollisionProxies.readObj(collisionInputStream);
+                } finally {
+                    collisionInputStream.close();
+                }
+            case Mesh:
+            default:
+                if (mesh.getIndexSize() == 4) {
+                    return CollisionMesh.copyOf(mesh.getPositions(), mesh.getWideIndices());
+                }
+                return CollisionMesh.copyOf(mesh.getPositions(), mesh.getIndices());
+        }
     }
 
     /**
@@ -276,12 +504,7 @@ public class ObjectRenderer {
      * @see android.opengl.Matrix
      */
     public void updateModelMatrix(float[] modelMatrix, float scaleFactor) {
-        float[] scaleMatrix = new float[16];
-        Matrix.setIdentityM(scaleMatrix, 0);
-        scaleMatrix[0] = scaleFactor;
-        scaleMatrix[5] = scaleFactor;
-        scaleMatrix[10] = scaleFactor;
-        Matrix.multiplyMM(mModelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+        Matrix.scaleM(mModelMatrix, 0, modelMatrix, 0, scaleFactor, scaleFactor, scaleFactor);
     }
 
     /**
@@ -301,6 +524,149 @@ public class ObjectRenderer {
         mSpecularPower = specularPower;
     }
 
+    /**
+     * Brightens the object, for example while it is focused.
+     *
+     * @param highlighted Whether to add extra ambient light to the material.
+     */
+    public void setHighlighted(boolean highlighted) {
+        mHighlighted = highlighted;
+    }
+
+    /**
+     * Maps the mesh to a region of its texture, for example the object's cell in a texture atlas.
+     * The whole texture is used by default. Overridden by {@link #createOnGlThread(Context)} if
+     * the texture asset was packed into a {@link TextureAtlas}.
+     *
+     * @param u Left edge of the region, in texture coordinates.
+     * @param v Bottom edge of the region, in texture coordinates.
+     * @param width Width of the region, in texture coordinates.
+     * @param height Height of the region, in texture coordinates.
+     */
+    public void setTextureRegion(float u, float v, float width, float height) {
+        mTextureRegion[0] = u;
+        mTextureRegion[1] = v;
+        mTextureRegion[2] = width;
+        mTextureRegion[3] = height;
+    }
+
+    /**
+     * Recomputes the model view projection matrix and the screen bounds from the current model
+     * matrix, as {@link #draw(float[], float[], float)} does. For objects drawn by a
+     * {@link TileBatchRenderer}, which need both for picking.
+     *
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     * @param cameraPerspective  A 4x4 projection matrix, in column-major order.
+     */
+    public void updateViewProjection(float[] cameraView, float[] cameraPerspective) {
+        // Build the ModelView and ModelViewProjection matrices
+        // for calculating object position and light.
+        Matrix.multiplyMM(mModelViewMatrix, 0, cameraView, 0, mModelMatrix, 0);
+        Matrix.multiplyMM(mModelViewProjectionMatrix, 0, cameraPerspective, 0, mModelViewMatrix, 0);
+        mScreenBounds.update(mModelViewProjectionMatrix, mCollisionMesh.getBounds());
+    }
+
+    AssetCache.MeshBuffers getMeshBuffers() {
+        return mMeshBuffers;
+    }
+
+    int getTextureId() {
+        return mTextures[0];
+    }
+
+    float[] getModelMatrix() {
+        return mModelMatrix;
+    }
+
+    float[] getTextureRegion() {
+        return mTextureRegion;
+    }
+
+    /** Returns the ambient term including the highlight. */
+    float getAmbient() {
+        return mHighlighted ? mAmbient + HIGHLIGHT_AMBIENT : mAmbient;
+    }
+
+    float getDiffuse() {
+        return mDiffuse;
+    }
+
+    float getSpecular() {
+        return mSpecular;
+    }
+
+    float getSpecularPower() {
+        return mSpecularPower;
+    }
+
+    /**
+     * Returns whether the object may be visible, testing its bounding sphere, placed by the
+     * current model matrix, against a frustum. Objects that are not created are never visible.
+     *
+     * @param frustum The frustum of the frame, which counts the result.
+     */
+    public boolean isVisible(ViewFrustum frustum) {
+        if (!mCreated) {
+            return false;
+        }
+        Matrix.multiplyMV(mWorldBoundsCenter, 0, mModelMatrix, 0, mBoundsCenter, 0);
+        // The largest axis scale keeps the sphere around the mesh under non-uniform scaling.
+        float scale = 0.0f;
+        for (int column = 0; column < 12; column += 4) {
+            scale = Math.max(scale, (float) Math.sqrt(mModelMatrix[column] * mModelMatrix[column]
+                + mModelMatrix[column + 1] * mModelMatrix[column + 1]
+                + mModelMatrix[column + 2] * mModelMatrix[column + 2]));
+        }
+        return frustum.isSphereVisible(mWorldBoundsCenter[0], mWorldBoundsCenter[1],
+            mWorldBoundsCenter[2], scale * mBoundsRadius);
+    }
+
+    /**
+     * Queues the object with its current model matrix, keyed by the view depth of its bounding
+     * sphere centre, its program and its texture. Blended objects go to the blended layer. Does
+     * nothing unless the object is created.
+     *
+     * @param queue The queue of the frame.
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     */
+    public void submit(RenderQueue queue, float[] cameraView) {
+        submit(queue, cameraView, 0);
+    }
+
+    /**
+     * Queues one instance of an object drawn several times a frame, such as once per anchor.
+     * Every instance picks its level of detail with hysteresis of its own.
+     *
+     * @param queue The queue of the frame.
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     * @param instance Index of the instance, the same every frame and small.
+     * @see #submit(RenderQueue, float[])
+     */
+    public void submit(RenderQueue queue, float[] cameraView, int instance) {
+        if (!mCreated) {
+            return;
+        }
+        Matrix.multiplyMM(mModelViewMatrix, 0, cameraView, 0, mModelMatrix, 0);
+        Matrix.multiplyMV(mViewBoundsCenter, 0, mModelViewMatrix, 0, mBoundsCenter, 0);
+        float viewDepth = -mViewBoundsCenter[2];
+        long key = mBlendMode == null
+            ? RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, viewDepth, mProgram, mTextures[0])
+            : RenderQueue.blendedKey(RenderQueue.LAYER_BLENDED, viewDepth, mProgram,
+                mTextures[0]);
+        queue.submit(key, this, mModelMatrix, instance);
+    }
+
+    /**
+     * Draws the model with the model matrix it was queued with, when issued by a
+     * {@link RenderQueue}.
+     */
+    @Override
+    public void draw(float[] modelMatrix, int instance, float[] cameraView,
+            float[] cameraPerspective, float lightIntensity) {
+        System.arraycopy(modelMatrix, 0, mModelMatrix, 0, 16);
+        draw(instance, cameraView, cameraPerspective, lightIntensity);
+    }
+
     /**
      * Draws the model.
      *
@@ -314,15 +680,17 @@ public class ObjectRenderer {
      * @see android.opengl.Matrix
      */
     public void draw(float[] cameraView, float[] cameraPerspective, float lightIntensity) {
+        draw(0, cameraView, cameraPerspective, lightIntensity);
+    }
 
+    private void draw(int instance, float[] cameraView, float[] cameraPerspective,
+            float lightIntensity) {
         ShaderUtil.checkGLError(TAG, "Before draw");
 
-        // Build the ModelView and ModelViewProjection matrices
-        // for calculating object position and light.
-        Matrix.multiplyMM(mModelViewMatrix, 0, cameraView, 0, mModelMatrix, 0);
-        Matrix.multiplyMM(mModelViewProjectionMatrix, 0, cameraPerspective, 0, mModelViewMatrix, 0);
+        updateViewProjection(cameraView, cameraPerspective);
 
-        GLES20.glUseProgram(mProgram);
+        GlStateTracker state = mAssetCache.getGlStateTracker();
+        state.useProgram(mProgram);
 
         // Set the lighting environment properties.
         Matrix.multiplyMV(mViewLightDirection, 0, mModelViewMatrix, 0, LIGHT_DIRECTION, 0);
@@ -331,25 +699,14 @@ public class ObjectRenderer {
             mViewLightDirection[0], mViewLightDirection[1], mViewLightDirection[2], lightIntensity);
 
         // Set the object material properties.
-        GLES20.glUniform4f(mMaterialParametersUniform, mAmbient, mDiffuse, mSpecular,
+        GLES20.glUniform4f(mMaterialParametersUniform, getAmbient(), mDiffuse, mSpecular,
             mSpecularPower);
 
         // Attach the object texture.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        state.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
         GLES20.glUniform1i(mTextureUniform, 0);
-
-        // Set the vertex attributes.
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
-
-        GLES20.glVertexAttribPointer(
-            mPositionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, mVerticesBaseAddress);
-        GLES20.glVertexAttribPointer(
-            mNormalAttribute, 3, GLES20.GL_FLOAT, false, 0, mNormalsBaseAddress);
-        GLES20.glVertexAttribPointer(
-            mTexCoordAttribute, 2, GLES20.GL_FLOAT, false, 0, mTexCoordsBaseAddress);
-
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glUniform4fv(mTexRegionUniform, 1, mTextureRegion, 0);
 
         // Set the ModelViewProjection matrix in the shader.
         GLES20.glUniformMatrix4fv(
@@ -358,42 +715,89 @@ public class ObjectRenderer {
             mModelViewProjectionUniform, 1, false, mModelViewProjectionMatrix, 0);
 
         // Enable vertex arrays
-        GLES20.glEnableVertexAttribArray(mPositionAttribute);
-        GLES20.glEnableVertexAttribArray(mNormalAttribute);
-        GLES20.glEnableVertexAttribArray(mTexCoordAttribute);
+        state.setVertexAttribArrays(mAttributeMask);
 
+        state.setDepthTest(true);
         if (mBlendMode != null) {
-            GLES20.glDepthMask(false);
-            GLES20.glEnable(GLES20.GL_BLEND);
+            state.depthMask(false);
+            state.setBlend(true);
             switch (mBlendMode) {
                 case Shadow:
                     // Multiplicative blending function for Shadow.
-                    GLES20.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+                    state.blendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
                     break;
                 case Grid:
                     // Grid, additive blending function.
-                    GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+                    state.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
                     break;
             }
+        } else {
+            state.depthMask(true);
+            state.setBlend(false);
         }
 
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
-        if (mBlendMode != null) {
-            GLES20.glDisable(GLES20.GL_BLEND);
-            GLES20.glDepthMask(true);
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+        int level = selectLevel(instance, cameraPerspective);
+        for (int part = mLevelFirstParts[level]; part < mLevelFirstParts[level + 1]; part++) {
+            // Set the vertex attributes, starting at the part's first vertex.
+            int baseVertex = mPartBaseVertices[part];
+            GLES20.glVertexAttribPointer(mPositionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
+                false, 0, mVerticesBaseAddress + 4 * COORDS_PER_VERTEX * baseVertex);
+            GLES20.glVertexAttribPointer(mNormalAttribute, 3, GLES20.GL_FLOAT, false, 0,
+                mNormalsBaseAddress + 4 * 3 * baseVertex);
+            GLES20.glVertexAttribPointer(mTexCoordAttribute, 2, GLES20.GL_FLOAT, false, 0,
+                mTexCoordsBaseAddress + 4 * 2 * baseVertex);
+
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, mPartIndexCounts[part], mIndexType,
+                mPartIndexOffsets[part]);
         }
 
-        // Disable vertex arrays
-        GLES20.glDisableVertexAttribArray(mPositionAttribute);
-        GLES20.glDisableVertexAttribArray(mNormalAttribute);
-        GLES20.glDisableVertexAttribArray(mTexCoordAttribute);
+        ShaderUtil.checkGLError(TAG, "After draw");
+    }
+
+    /**
+     * Picks the level of detail from the share of the viewport height covered by the bounding
+     * sphere, moving at most as far as the hysteresis allows from the level the instance was
+     * last drawn with.
+     */
+    private int selectLevel(int instance, float[] cameraPerspective) {
+        int levelCount = mLevelFirstParts.length - 1;
+        if (levelCount == 1) {
+            return 0;
+        }
+        if (instance >= mInstanceLevels.length) {
+            mInstanceLevels = Arrays.copyOf(mInstanceLevels,
+                Math.max(instance + 1, 2 * mInstanceLevels.length));
+        }
+        Matrix.multiplyMV(mViewBoundsCenter, 0, mModelViewMatrix, 0, mBoundsCenter, 0);
+        float scale = (float) Math.sqrt(mModelViewMatrix[0] * mModelViewMatrix[0]
+            + mModelViewMatrix[1] * mModelViewMatrix[1]
+            + mModelViewMatrix[2] * mModelViewMatrix[2]);
+        float radius = scale * mBoundsRadius;
+        float distance = -mViewBoundsCenter[2];
+        if (distance <= radius) {
+            // The camera is inside the sphere.
+            mInstanceLevels[instance] = 0;
+            return 0;
+        }
+        float screenSize = radius * cameraPerspective[5] / distance;
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        int level = Math.min(mInstanceLevels[instance], levelCount - 1);
+        while (level + 1 < levelCount
+                && screenSize < LOD_SCREEN_SIZES[level] * (1.0f - LOD_HYSTERESIS)) {
+            level++;
+        }
+        while (level > 0 && screenSize > LOD_SCREEN_SIZES[level - 1] * (1.0f + LOD_HYSTERESIS)) {
+            level--;
+        }
+        mInstanceLevels[instance] = level;
+        return level;
+    }
 
-        ShaderUtil.checkGLError(TAG, "After draw");
+    /** Returns the level of detail an instance was last drawn with. */
+    int getLevel(int instance) {
+        return instance < mInstanceLevels.length ? mInstanceLevels[instance] : 0;
     }
 
     private static void normalizeVec3(float[] v) {
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Mesh data laid out exactly as {@link ObjectRenderer} uploads it: one vertex block holding all
+ * positions, then all texture coordinates, then all normals, and one block of indices. Indices
+ * are 16-bit unless the mesh has more vertices than that can address, in which case they are
+ * 32-bit and need {@code OES_element_index_uint} to be drawn. Where that extension is missing,
+ * {@link #splitForShortIndices()} cuts the mesh into parts that each fit 16-bit indices.
+ *
+ * <p>{@link #withLevelsOfDetail(float...)} appends simplified versions of the triangles to the
+ * index block. Every level of detail is drawn from the same vertices, as one or more parts.
+ *
+ * <p>Meshes are precompiled at build time from every {@code assets/*.obj} into a
+ * {@code .mesh} asset by the {@code convertMeshes} task in {@code app/build.gradle}. The file is
+ * little-endian:
+ *
+ * <pre>
+ *   int32 magic 'MESH', int32 version,
+ *   int32 position float count, int32 texture coordinate float count,
+ *   int32 normal float count, int32 index count, int32 bytes per index (2 or 4),
+ *   float32[] positions, float32[] texture coordinates, float32[] normals,
+ *   uint16[] or uint32[] indices
+ * </pre>
+ *
+ * <p>Mesh assets are stored uncompressed in the APK so that they can be memory mapped and handed
+ * to {@code glBufferData} without parsing or copying. OBJ assets without a precompiled mesh are
+ * read into the same layout by {@link ObjStreamReader}.
+ */
+public class PackedMesh {
+    /** File name extension of precompiled mesh assets. */
+    public static final String FILE_EXTENSION = ".mesh";
+
+    private static final int MAGIC = 0x4853454d; // "MESH", read as a little-endian int
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 7 * 4;
+    // Number of vertices 16-bit indices can address.
+    static final int SHORT_INDEX_VERTEX_LIMIT = 0x10000;
+
+    private final ByteBuffer mVertexData;
+    private final ByteBuffer mIndexData;
+    private final int mPositionFloatCount;
+    private final int mTexCoordFloatCount;
+    private final int mNormalFloatCount;
+    private final int mIndexCount;
+    private final int mIndexSize;
+
+    // Ranges drawn separately, each with its own first vertex. One part per level unless split.
+    private final int[] mPartFirstIndices;
+    private final int[] mPartIndexCounts;
+    private final int[] mPartBaseVertices;
+    // First part of every level of detail, and the part count at the end.
+    private final int[] mLevelFirstParts;
+
+    /**
+     * Wraps buffers holding a single part.
+     *
+     * @param indexSize Bytes per index, 2 or 4.
+     */
+    PackedMesh(ByteBuffer vertexData, ByteBuffer indexData, int indexSize, int positionFloatCount,
+            int texCoordFloatCount, int normalFloatCount, int indexCount) {
+        this(vertexData, indexData, indexSize, positionFloatCount, texCoordFloatCount,
+            normalFloatCount, indexCount, new int[] {0}, new int[] {indexCount}, new int[] {0},
+            new int[] {0, 1});
+    }
+
+    private PackedMesh(ByteBuffer vertexData, ByteBuffer indexData, int indexSize,
+            int positionFloatCount, int texCoordFloatCount, int normalFloatCount, int indexCount,
+            int[] partFirstIndices, int[] partIndexCounts, int[] partBaseVertices,
+            int[] levelFirstParts) {
+        mVertexData = vertexData;
+        mIndexData = indexData;
+        mIndexSize = indexSize;
+        mPositionFloatCount = positionFloatCount;
+        mTexCoordFloatCount = texCoordFloatCount;
+        mNormalFloatCount = normalFloatCount;
+        mIndexCount = indexCount;
+        mPartFirstIndices = partFirstIndices;
+        mPartIndexCounts = partIndexCounts;
+        mPartBaseVertices = partBaseVertices;
+        mLevelFirstParts = levelFirstParts;
+    }
+
+    /**
+     * Returns whether a mesh with this many vertices can be indexed with 16 bits.
+     */
+    static boolean fitsShortIndices(int vertexCount) {
+        return vertexCount <= SHORT_INDEX_VERTEX_LIMIT;
+    }
+
+    /**
+     * Returns the name of the precompiled asset for an OBJ asset.
+     */
+    public static String assetNameFor(String objAssetName) {
+        int extension = objAssetName.lastIndexOf('.');
+        return (extension < 0 ? objAssetName : objAssetName.substring(0, extension))
+            + FILE_EXTENSION;
+    }
+
+    /**
+     * Opens a precompiled mesh asset. The asset is memory mapped if it is stored uncompressed,
+     * and read into a direct buffer otherwise.
+     *
+     * @throws IOException If the asset does not exist or is not a valid mesh file.
+     */
+    public static PackedMesh openAsset(AssetManager assets, String assetName)
+            throws IOException {
+        ByteBuffer data;
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = assets.openFd(assetName);
+        } catch (IOException e) {
+            // Compressed in the APK, which cannot be mapped.
+        }
+        if (descriptor != null) {
+            FileInputStream inputStream = descriptor.createInputStream();
+            try {
+                // The mapping stays valid after the channel is closed.
+                data = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+            } finally {
+                inputStream.close();
+            }
+        } else {
+            data = readFully(assets.open(assetName));
+        }
+        return parse(data, assetName);
+    }
+
+    private static PackedMesh parse(ByteBuffer data, String name) throws IOException {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IOException("Mesh files need a little-endian device: " + name);
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a mesh file: " + name);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported mesh version " + data.getInt(4) + ": " + name);
+        }
+        int positionFloatCount = data.getInt(8);
+        int texCoordFloatCount = data.getInt(12);
+        int normalFloatCount = data.getInt(16);
+        int indexCount = data.getInt(20);
+        int indexSize = data.getInt(24);
+        if (indexSize != 2 && indexSize != 4) {
+            throw new IOException("Unsupported index size " + indexSize + ": " + name);
+        }
+
+        int vertexBytes = 4 * (positionFloatCount + texCoordFloatCount + normalFloatCount);
+        int indexBytes = indexSize * indexCount;
+        if (data.remaining() < HEADER_BYTES + vertexBytes + indexBytes) {
+            throw new IOException("Truncated mesh file: " + name);
+        }
+        return new PackedMesh(slice(data, HEADER_BYTES, vertexBytes),
+            slice(data, HEADER_BYTES + vertexBytes, indexBytes), indexSize, positionFloatCount,
+            texCoordFloatCount, normalFloatCount, indexCount);
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer readFully(InputStream inputStream) throws IOException {
+        try {
+            byte[] bytes = new byte[Math.max(4096, inputStream.available())];
+            int length = 0;
+            int read;
+            while ((read = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, 2 * length);
+                }
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect(length);
+            data.put(bytes, 0, length).rewind();
+            return data;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Returns the vertex block, ready for {@code glBufferData}. Positions start at byte 0,
+     * texture coordinates at {@link #getTexCoordsOffset()} and normals at
+     * {@link #getNormalsOffset()}.
+     */
+    public ByteBuffer getVertexData() {
+        return mVertexData.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /** Returns the index block, ready for {@code glBufferData}. */
+    public ByteBuffer getIndexData() {
+        return mIndexData.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /** Returns a view of the vertex positions, three floats per vertex. */
+    public FloatBuffer getPositions() {
+        FloatBuffer positions = getVertexData().asFloatBuffer();
+        positions.limit(mPositionFloatCount);
+        return positions;
+    }
+
+    /**
+     * Returns a view of the vertex indices, three per triangle, for a mesh with 16-bit indices.
+     * Indices are relative to the base vertex of their part. Covers every level of detail.
+     */
+    public ShortBuffer getIndices() {
+        if (mIndexSize != 2) {
+            throw new IllegalStateException("Mesh has 32-bit indices");
+        }
+        return getIndexData().asShortBuffer();
+    }
+
+    /**
+     * Returns a view of the vertex indices, three per triangle, for a mesh with 32-bit indices.
+     * Covers every level of detail.
+     */
+    public IntBuffer getWideIndices() {
+        if (mIndexSize != 4) {
+            throw new IllegalStateException("Mesh has 16-bit indices");
+        }
+        return getIndexData().asIntBuffer();
+    }
+
+    /** Returns the number of bytes per index, 2 or 4. */
+    public int getIndexSize() {
+        return mIndexSize;
+    }
+
+    /** Returns the size of the index block in bytes. */
+    public int getIndexDataSize() {
+        return mIndexSize * mIndexCount;
+    }
+
+    /** Returns the number of ranges the mesh is drawn in, one per level unless it was split. */
+    public int getPartCount() {
+        return mPartFirstIndices.length;
+    }
+
+    /** Returns the number of levels of detail, including the full mesh at level 0. */
+    public int getLevelCount() {
+        return mLevelFirstParts.length - 1;
+    }
+
+    /** Returns the first part of a level. Its parts are numbered consecutively. */
+    public int getLevelFirstPart(int level) {
+        return mLevelFirstParts[level];
+    }
+
+    public int getLevelPartCount(int level) {
+        return mLevelFirstParts[level + 1] - mLevelFirstParts[level];
+    }
+
+    /** Returns the number of triangles drawn for a level. */
+    public int getLevelTriangleCount(int level) {
+        int indexCount = 0;
+        for (int part = mLevelFirstParts[level]; part < mLevelFirstParts[level + 1]; part++) {
+            indexCount += mPartIndexCounts[part];
+        }
+        return indexCount / 3;
+    }
+
+    /**
+     * Returns a copy of this mesh with simplified levels of detail, made by quadric error edge
+     * collapse with {@link MeshSimplifier}. Each level is simplified from the one before it and
+     * shares the vertices of the full mesh. Levels stop early once simplification no longer
+     * removes a fifth of the triangles, so small or boxy meshes get none.
+     *
+     * @param triangleRatios The triangle count of each level relative to the full mesh, in
+     *     decreasing order.
+     * @return This mesh if no level was worth adding.
+     */
+    public PackedMesh withLevelsOfDetail(float... triangleRatios) {
+        if (getLevelCount() != 1 || getPartCount() != 1) {
+            throw new IllegalStateException("Mesh has levels or parts already");
+        }
+        float[] positions = new float[mPositionFloatCount];
+        getPositions().get(positions);
+        int[][] levels = new int[triangleRatios.length + 1][];
+        levels[0] = new int[mIndexCount];
+        if (mIndexSize == 2) {
+            ShortBuffer indices = getIndices();
+            for (int i = 0; i < mIndexCount; i++) {
+                levels[0][i] = indices.get(i) & 0xffff;
+            }
+        } else {
+            getWideIndices().get(levels[0]);
+        }
+
+        int levelCount = 1;
+        int baseTriangleCount = mIndexCount / 3;
+        for (float ratio : triangleRatios) {
+            int[] previous = levels[levelCount - 1];
+            int[] simplified = MeshSimplifier.simplify(positions, previous,
+                Math.max(1, (int) (ratio * baseTriangleCount)));
+            if (5 * simplified.length > 4 * previous.length) {
+                break;
+            }
+            levels[levelCount++] = simplified;
+        }
+        if (levelCount == 1) {
+            return this;
+        }
+
+        int indexCount = 0;
+        for (int level = 0; level < levelCount; level++) {
+            indexCount += levels[level].length;
+        }
+        ByteBuffer indexData = ByteBuffer.allocateDirect(mIndexSize * indexCount)
+            .order(ByteOrder.nativeOrder());
+        int[] partFirstIndices = new int[levelCount];
+        int[] partIndexCounts = new int[levelCount];
+        int[] levelFirstParts = new int[levelCount + 1];
+        int firstIndex = 0;
+        for (int level = 0; level < levelCount; level++) {
+            for (int index : levels[level]) {
+                if (mIndexSize == 2) {
+                    indexData.putShort((short) index);
+                } else {
+                    indexData.putInt(index);
+                }
+            }
+            partFirstIndices[level] = firstIndex;
+            partIndexCounts[level] = levels[level].length;
+            levelFirstParts[level + 1] = level + 1;
+            firstIndex += levels[level].length;
+        }
+        indexData.rewind();
+
+        return new PackedMesh(mVertexData, indexData, mIndexSize, mPositionFloatCount,
+            mTexCoordFloatCount, mNormalFloatCount, indexCount, partFirstIndices,
+            partIndexCounts, new int[levelCount], levelFirstParts);
+    }
+
+    /** Returns the position of the first index of a part in the index block. */
+    public int getPartFirstIndex(int part) {
+        return mPartFirstIndices[part];
+    }
+
+    public int getPartIndexCount(int part) {
+        return mPartIndexCounts[part];
+    }
+
+    /**
+     * Returns the vertex the indices of a part count from. Drawing a part means pointing the
+     * attributes at this vertex in each attribute array.
+     */
+    public int getPartBaseVertex(int part) {
+        return mPartBaseVertices[part];
+    }
+
+    /**
+     * Returns a copy of this mesh with 16-bit indices, cut into as many parts as needed so that
+     * each part uses at most 65536 vertices. Triangles keep their order; vertices shared by two
+     * parts are duplicated. Every level of detail starts a new part. Returns this mesh if it has
+     * 16-bit indices already.
+     */
+    public PackedMesh splitForShortIndices() {
+        if (mIndexSize == 2) {
+            return this;
+        }
+        IntBuffer indices = getWideIndices();
+        int vertexCount = mPositionFloatCount / 3;
+
+        // Local index of every source vertex in the part that last used it.
+        int[] localIndices = new int[vertexCount];
+        int[] localPart = new int[vertexCount];
+        Arrays.fill(localPart, -1);
+        // Source vertex of every output vertex, part after part.
+        int[] sourceVertices = new int[vertexCount];
+        int outputVertexCount = 0;
+
+        ByteBuffer indexData = ByteBuffer.allocateDirect(2 * mIndexCount)
+            .order(ByteOrder.nativeOrder());
+        ShortBuffer shortIndices = indexData.asShortBuffer();
+        int[] partFirstIndices = new int[4];
+        int[] partBaseVertices = new int[4];
+        int[] levelFirstParts = new int[mLevelFirstParts.length];
+        int partCount = 1;
+        int part = 0;
+        int partVertexCount = 0;
+        int level = 0;
+
+        for (int i = 0; i < mIndexCount; i += 3) {
+            int newVertexCount = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices.get(i + corner);
+                if (localPart[vertex] != part) {
+                    newVertexCount++;
+                }
+            }
+            boolean levelStart = level + 1 < getLevelCount()
+                && i == mPartFirstIndices[mLevelFirstParts[level + 1]];
+            if (levelStart || partVertexCount + newVertexCount > SHORT_INDEX_VERTEX_LIMIT) {
+                // Start a new part. Its vertices follow those of the previous one.
+                if (partCount == partFirstIndices.length) {
+                    partFirstIndices = Arrays.copyOf(partFirstIndices, 2 * partCount);
+                    partBaseVertices = Arrays.copyOf(partBaseVertices, 2 * partCount);
+                }
+                part = partCount++;
+                partFirstIndices[part] = i;
+                partBaseVertices[part] = outputVertexCount;
+                partVertexCount = 0;
+                if (levelStart) {
+                    levelFirstParts[++level] = part;
+                }
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices.get(i + corner);
+                if (localPart[vertex] != part) {
+                    localPart[vertex] = part;
+                    localIndices[vertex] = partVertexCount++;
+                    if (outputVertexCount == sourceVertices.length) {
+                        sourceVertices = Arrays.copyOf(sourceVertices,
+                            sourceVertices.length + sourceVertices.length / 2);
+                    }
+                    sourceVertices[outputVertexCount++] = vertex;
+                }
+                shortIndices.put((short) localIndices[vertex]);
+            }
+        }
+
+        levelFirstParts[level + 1] = partCount;
+        int[] partIndexCounts = new int[partCount];
+        for (int i = 0; i < partCount; i++) {
+            int end = i + 1 < partCount ? partFirstIndices[i + 1] : mIndexCount;
+            partIndexCounts[i] = end - partFirstIndices[i];
+        }
+
+        // Gather the attributes of the output vertices, keeping the planar layout.
+        FloatBuffer source = getVertexData().asFloatBuffer();
+        int texCoordFloatCount = mTexCoordFloatCount > 0 ? 2 * outputVertexCount : 0;
+        int normalFloatCount = mNormalFloatCount > 0 ? 3 * outputVertexCount : 0;
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(
+            4 * (3 * outputVertexCount + texCoordFloatCount + normalFloatCount))
+            .order(ByteOrder.nativeOrder());
+        FloatBuffer vertices = vertexData.asFloatBuffer();
+        gather(source, 0, 3, sourceVertices, outputVertexCount, vertices);
+        if (texCoordFloatCount > 0) {
+            gather(source, mPositionFloatCount, 2, sourceVertices, outputVertexCount, vertices);
+        }
+        if (normalFloatCount > 0) {
+            gather(source, mPositionFloatCount + mTexCoordFloatCount, 3, sourceVertices,
+                outputVertexCount, vertices);
+        }
+
+        return new PackedMesh(vertexData, indexData, 2, 3 * outputVertexCount,
+            texCoordFloatCount, normalFloatCount, mIndexCount,
+            Arrays.copyOf(partFirstIndices, partCount), partIndexCounts,
+            Arrays.copyOf(partBaseVertices, partCount), levelFirstParts);
+    }
+
+    private static void gather(FloatBuffer source, int offset, int size, int[] sourceVertices,
+            int count, FloatBuffer target) {
+        for (int i = 0; i < count; i++) {
+            int start = offset + size * sourceVertices[i];
+            for (int component = 0; component < size; component++) {
+                target.put(source.get(start + component));
+            }
+        }
+    }
+
+    /**
+     * Computes the model space axis aligned bounding box of the vertices.
+     *
+     * @param bounds Receives {minX, minY, minZ, maxX, maxY, maxZ}.
+     */
+    public void computeBounds(float[] bounds) {
+        FloatBuffer positions = getPositions();
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[axis] = positions.limit() > 0 ? Float.POSITIVE_INFINITY : 0.0f;
+            bounds[3 + axis] = positions.limit() > 0 ? Float.NEGATIVE_INFINITY : 0.0f;
+        }
+        for (int i = 0; i < positions.limit(); i += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], positions.get(i + axis));
+                bounds[3 + axis] = Math.max(bounds[3 + axis], positions.get(i + axis));
+            }
+        }
+    }
+
+    /** Returns the byte offset of the texture coordinates in the vertex block. */
+    public int getTexCoordsOffset() {
+        return 4 * mPositionFloatCount;
+    }
+
+    /** Returns the byte offset of the normals in the vertex block. */
+    public int getNormalsOffset() {
+        return 4 * (mPositionFloatCount + mTexCoordFloatCount);
+    }
+
+    /** Returns the size of the vertex block in bytes. */
+    public int getVertexDataSize() {
+        return 4 * (mPositionFloatCount + mTexCoordFloatCount + mNormalFloatCount);
+    }
+
+    public int getVertexCount() {
+        return mPositionFloatCount / 3;
+    }
+
+    public int getIndexCount() {
+        return mIndexCount;
+    }
+}
@@ -15,11 +15,8 @@
 package com.google.ar.core.examples.java.helloar.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
 
 import com.google.ar.core.Camera;
@@ -32,12 +29,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -45,7 +39,7 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * Renders the detected AR planes.
  */
-public class PlaneRenderer {
+public class PlaneRenderer implements AssetLoader.Asset {
     private static final String TAG = PlaneRenderer.class.getSimpleName();
 
     private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
@@ -87,6 +81,7 @@ public class PlaneRenderer {
     private int mDotColorUniform;
     private int mGridControlUniform;
     private int mPlaneUvMatrixUniform;
+    private int mAttributeMask;
 
     private FloatBuffer mVertexBuffer = ByteBuffer.allocateDirect(INITIAL_VERTEX_BUFFER_SIZE_BYTES)
             .order(ByteOrder.nativeOrder()).asFloatBuffer();
@@ -99,10 +94,27 @@ public class PlaneRenderer {
     private float[] mModelViewProjectionMatrix = new float[16];
     private float[] mPlaneColor = new float[4];
     private float[] mPlaneAngleUvMatrix = new float[4]; // 2x2 rotation matrix applied to uv coords.
+    // Scratch for drawPlanes(), reused every frame.
+    private SortablePlane[] mSortedPlanes = new SortablePlane[16];
+    private final float[] mPlaneNormal = new float[3];
+    private final float[] mCameraView = new float[16];
+    private final float[] mPlaneMatrix = new float[16];
 
     private Map<Plane, Integer> mPlaneIndexMap = new HashMap<>();
 
-    public PlaneRenderer() {
+    // Grid texture, decoded by prepare() and uploaded by createOnGlThread().
+    private String mGridDistanceTextureName;
+    private PreparedTexture mPreparedTexture;
+
+    private final GlStateTracker mGlState;
+
+    /**
+     * @param glState Tracker through which GL state is changed, shared with the other renderers.
+     * @param gridDistanceTextureName  Name of the PNG file containing the grid texture.
+     */
+    public PlaneRenderer(GlStateTracker glState, String gridDistanceTextureName) {
+        mGlState = glState;
+        mGridDistanceTextureName = gridDistanceTextureName;
     }
 
     /**
@@ -115,6 +127,29 @@ public class PlaneRenderer {
      */
     public void createOnGlThread(Context context, String gridDistanceTextureName)
             throws IOException {
+        mGridDistanceTextureName = gridDistanceTextureName;
+        prepare(context);
+        createOnGlThread(context);
+    }
+
+    /**
+     * Reads the grid texture, compressed if there is a KTX variant. Needs no GL context, so it may run on any thread.
+     *
+     * @param context Needed to access the texture PNG.
+     */
+    @Override
+    public void prepare(Context context) throws IOException {
+        mPreparedTexture = PreparedTexture.prepare(context, mGridDistanceTextureName);
+    }
+
+    /**
+     * Uploads the texture decoded by {@link #prepare(Context)} and compiles the shaders. Must be
+     * called on the OpenGL thread.
+     *
+     * @param context Needed to access shader source.
+     */
+    @Override
+    public void createOnGlThread(Context context) {
         int vertexShader = ShaderUtil.loadGLShader(TAG, context,
                 GLES20.GL_VERTEX_SHADER, R.raw.plane_vertex);
         int passthroughShader = ShaderUtil.loadGLShader(TAG, context,
@@ -128,26 +163,15 @@ public class PlaneRenderer {
 
         ShaderUtil.checkGLError(TAG, "Program creation");
 
-        // Read the texture.
-        Bitmap textureBitmap = BitmapFactory.decodeStream(
-            context.getAssets().open(gridDistanceTextureName));
-
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
         GLES20.glGenTextures(mTextures.length, mTextures, 0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
-
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-            GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-            GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        mPreparedTexture.upload(context, mTextures[0]);
+        mPreparedTexture = null;
 
         ShaderUtil.checkGLError(TAG, "Texture loading");
 
         mPlaneXZPositionAlphaAttribute = GLES20.glGetAttribLocation(mPlaneProgram,
             "a_XZPositionAlpha");
+        mAttributeMask = GlStateTracker.attributeMask(mPlaneXZPositionAlphaAttribute);
 
         mPlaneModelUniform = GLES20.glGetUniformLocation(mPlaneProgram, "u_Model");
         mPlaneModelViewProjectionUniform =
@@ -158,6 +182,9 @@ public class PlaneRenderer {
         mGridControlUniform = GLES20.glGetUniformLocation(mPlaneProgram, "u_gridControl");
         mPlaneUvMatrixUniform = GLES20.glGetUniformLocation(mPlaneProgram, "u_PlaneUvMatrix");
 
+        // The program and texture were bound around the tracker.
+        mGlState.invalidate();
+
         ShaderUtil.checkGLError(TAG, "Program parameters");
     }
 
@@ -270,12 +297,8 @@ public class PlaneRenderer {
     }
 
     static class SortablePlane {
-        final float mDistance;
-        final Plane mPlane;
-        SortablePlane(float distance, Plane plane) {
-            this.mDistance = distance;
-            this.mPlane = plane;
-        }
+        float mDistance;
+        Plane mPlane;
     }
 
     /**
@@ -290,8 +313,8 @@ public class PlaneRenderer {
             float[] cameraPerspective) {
         // Planes must be sorted by distance from camera so that we draw closer planes first, and
         // they occlude the farther planes.
-        List<SortablePlane> sortedPlanes = new ArrayList<>();
-        float[] normal = new float[3];
+        int sortedPlaneCount = 0;
+        float[] normal = mPlaneNormal;
         float cameraX = cameraPose.tx();
         float cameraY = cameraPose.ty();
         float cameraZ = cameraPose.tz();
@@ -310,17 +333,25 @@ public class PlaneRenderer {
             if (distance < 0) {  // Plane is back-facing.
                 continue;
             }
-            sortedPlanes.add(new SortablePlane(distance, plane));
-        }
-        Collections.sort(sortedPlanes, new Comparator<SortablePlane>() {
-            @Override
-            public int compare(SortablePlane a, SortablePlane b) {
-                return Float.compare(a.mDistance, b.mDistance);
+            if (sortedPlaneCount == mSortedPlanes.length) {
+                mSortedPlanes = Arrays.copyOf(mSortedPlanes, 2 * mSortedPlanes.length);
             }
-        });
-
+            if (mSortedPlanes[sortedPlaneCount] == null) {
+                mSortedPlanes[sortedPlaneCount] = new SortablePlane();
+            }
+            // Insertion sort, there are few planes and it needs no scratch memory.
+            SortablePlane inserted = mSortedPlanes[sortedPlaneCount];
+            int position = sortedPlaneCount++;
+            while (position > 0 && mSortedPlanes[position - 1].mDistance > distance) {
+                mSortedPlanes[position] = mSortedPlanes[position - 1];
+                position--;
+            }
+            inserted.mDistance = distance;
+            inserted.mPlane = plane;
+            mSortedPlanes[position] = inserted;
+        }
 
-        float[] cameraView = new float[16];
+        float[] cameraView = mCameraView;
         cameraPose.inverse().toMatrix(cameraView, 0);
 
         // Planes are drawn with additive blending, masked by the alpha channel for occlusion.
@@ -331,34 +362,39 @@ public class PlaneRenderer {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         GLES20.glColorMask(true, true, true, true);
 
-        // Disable depth write.
-        GLES20.glDepthMask(false);
+        // Depth test, but no depth write.
+        mGlState.setDepthTest(true);
+        mGlState.depthMask(false);
 
         // Additive blending, masked by alpha channel, clearing alpha channel.
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFuncSeparate(
+        mGlState.setBlend(true);
+        mGlState.blendFuncSeparate(
             GLES20.GL_DST_ALPHA, GLES20.GL_ONE,              // RGB (src, dest)
             GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);  // ALPHA (src, dest)
 
         // Set up the shader.
-        GLES20.glUseProgram(mPlaneProgram);
+        mGlState.useProgram(mPlaneProgram);
 
         // Attach the texture.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
+        mGlState.activeTexture(GLES20.GL_TEXTURE0);
+        mGlState.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
         GLES20.glUniform1i(mTextureUniform, 0);
 
         // Shared fragment uniforms.
         GLES20.glUniform4fv(mGridControlUniform, 1, GRID_CONTROL, 0);
 
-        // Enable vertex arrays
-        GLES20.glEnableVertexAttribArray(mPlaneXZPositionAlphaAttribute);
+        // Enable vertex arrays, read with the indices from client memory.
+        mGlState.setVertexAttribArrays(mAttributeMask);
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        mGlState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 
         ShaderUtil.checkGLError(TAG, "Setting up to draw planes");
 
-        for (SortablePlane sortedPlane : sortedPlanes) {
-            Plane plane = sortedPlane.mPlane;
-            float[] planeMatrix = new float[16];
+        float[] planeMatrix = mPlaneMatrix;
+        for (int i = 0; i < sortedPlaneCount; i++) {
+            Plane plane = mSortedPlanes[i].mPlane;
+            // Let go of the plane, the pool outlives it.
+            mSortedPlanes[i].mPlane = null;
             plane.getCenterPose().toMatrix(planeMatrix, 0);
 
             updatePlaneParameters(
@@ -391,13 +427,7 @@ public class PlaneRenderer {
             draw(cameraView, cameraPerspective);
         }
 
-        // Clean up the state we set
-        GLES20.glDisableVertexAttribArray(mPlaneXZPositionAlphaAttribute);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-        GLES20.glDisable(GLES20.GL_BLEND);
-        GLES20.glDepthMask(true);
-
-        ShaderUtil.checkGLError(TAG, "Cleaning up after drawing planes");
+        ShaderUtil.checkGLError(TAG, "Drawing planes");
     }
 
     private static void colorRgbaToFloat(float[] planeColor, int colorRgba) {
@@ -26,7 +26,7 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * Renders a point cloud.
  */
-public class PointCloudRenderer {
+public class PointCloudRenderer implements RenderQueue.Drawable {
     private static final String TAG = PointCloud.class.getSimpleName();
 
     private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
@@ -42,6 +42,7 @@ public class PointCloudRenderer {
     private int mModelViewProjectionUniform;
     private int mColorUniform;
     private int mPointSizeUniform;
+    private int mAttributeMask;
 
     private int mNumPoints = 0;
 
@@ -49,7 +50,14 @@ public class PointCloudRenderer {
     // was not changed.
     private PointCloud mLastPointCloud = null;
 
-    public PointCloudRenderer() {
+    private final GlStateTracker mGlState;
+    private final float[] mModelViewProjection = new float[16];
+
+    /**
+     * @param glState Tracker through which GL state is changed, shared with the other renderers.
+     */
+    public PointCloudRenderer(GlStateTracker glState) {
+        mGlState = glState;
     }
 
     /**
@@ -65,11 +73,10 @@ public class PointCloudRenderer {
         int[] buffers = new int[1];
         GLES20.glGenBuffers(1, buffers, 0);
         mVbo = buffers[0];
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
 
         mVboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
         GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVboSize, null, GLES20.GL_DYNAMIC_DRAW);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
         ShaderUtil.checkGLError(TAG, "buffer alloc");
 
@@ -91,6 +98,10 @@ public class PointCloudRenderer {
         mModelViewProjectionUniform = GLES20.glGetUniformLocation(
             mProgramName, "u_ModelViewProjection");
         mPointSizeUniform = GLES20.glGetUniformLocation(mProgramName, "u_PointSize");
+        mAttributeMask = GlStateTracker.attributeMask(mPositionAttribute);
+
+        // The program was made current around the tracker.
+        mGlState.invalidate();
 
         ShaderUtil.checkGLError(TAG, "program  params");
     }
@@ -107,7 +118,7 @@ public class PointCloudRenderer {
 
         ShaderUtil.checkGLError(TAG, "before update");
 
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
         mLastPointCloud = cloud;
 
         // If the VBO is not large enough to fit the new point cloud, resize it.
@@ -120,11 +131,28 @@ public class PointCloudRenderer {
         }
         GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, mNumPoints * BYTES_PER_POINT,
             mLastPointCloud.getPoints());
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
         ShaderUtil.checkGLError(TAG, "after update");
     }
 
+    /**
+     * Queues the point cloud with the opaque geometry. Points are spread over the whole view,
+     * so they go first.
+     */
+    public void submit(RenderQueue queue) {
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, 0.0f, mProgramName, 0),
+            this, null);
+    }
+
+    /**
+     * Renders the point cloud when issued by a {@link RenderQueue}.
+     */
+    @Override
+    public void draw(float[] modelMatrix, int instance, float[] cameraView,
+            float[] cameraPerspective, float lightIntensity) {
+        draw(cameraView, cameraPerspective);
+    }
+
   /**
    * Renders the point cloud. ArCore point cloud is given in world space.
    *
@@ -134,23 +162,23 @@ public class PointCloudRenderer {
    *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
    */
   public void draw(float[] cameraView, float[] cameraPerspective) {
-        float[] modelViewProjection = new float[16];
-        Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
+        Matrix.multiplyMM(mModelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
 
         ShaderUtil.checkGLError(TAG, "Before draw");
 
-        GLES20.glUseProgram(mProgramName);
-        GLES20.glEnableVertexAttribArray(mPositionAttribute);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+        mGlState.setDepthTest(true);
+        mGlState.depthMask(true);
+        mGlState.setBlend(false);
+        mGlState.useProgram(mProgramName);
+        mGlState.setVertexAttribArrays(mAttributeMask);
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
         GLES20.glVertexAttribPointer(
             mPositionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
         GLES20.glUniform4f(mColorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
-        GLES20.glUniformMatrix4fv(mModelViewProjectionUniform, 1, false, modelViewProjection, 0);
+        GLES20.glUniformMatrix4fv(mModelViewProjectionUniform, 1, false, mModelViewProjection, 0);
         GLES20.glUniform1f(mPointSizeUniform, 5.0f);
 
         GLES20.glDrawArrays(GLES20.GL_POINTS, 0, mNumPoints);
-        GLES20.glDisableVertexAttribArray(mPositionAttribute);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
         ShaderUtil.checkGLError(TAG, "Draw");
     }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A 2D texture read from the assets and waiting to be uploaded. The compressed KTX variant of
+ * the image is preferred; the image itself is decoded when there is no variant, or when the GL
+ * context cannot sample its format.
+ */
+public class PreparedTexture {
+    private static final String TAG = PreparedTexture.class.getSimpleName();
+
+    private final String mImageAssetName;
+    private KtxTexture mCompressedTexture;
+    private Bitmap mBitmap;
+
+    private PreparedTexture(String imageAssetName) {
+        mImageAssetName = imageAssetName;
+    }
+
+    /**
+     * Reads a texture. Needs no GL context, so it may run on any thread.
+     *
+     * @param context Context for loading the assets.
+     * @param imageAssetName Name of the PNG or JPEG file, next to which a KTX variant is looked
+     *     up.
+     */
+    public static PreparedTexture prepare(Context context, String imageAssetName)
+            throws IOException {
+        PreparedTexture texture = new PreparedTexture(imageAssetName);
+        try {
+            texture.mCompressedTexture = KtxTexture.read(
+                context.getAssets().open(KtxTexture.assetNameFor(imageAssetName)));
+        } catch (FileNotFoundException e) {
+            texture.mBitmap = decodeBitmap(context, imageAssetName);
+        }
+        return texture;
+    }
+
+    private static Bitmap decodeBitmap(Context context, String imageAssetName)
+            throws IOException {
+        InputStream inputStream = context.getAssets().open(imageAssetName);
+        try {
+            return BitmapFactory.decodeStream(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Uploads the texture with trilinear filtering and releases the CPU copy. Must be called on
+     * the GL thread, once.
+     *
+     * @param context Context for decoding the image if the compressed variant is unusable.
+     * @param textureId The texture object to fill.
+     */
+    public void upload(Context context, int textureId) {
+        if (mCompressedTexture != null && !mCompressedTexture.isSupported()) {
+            Log.w(TAG, "Compressed format not supported, decoding " + mImageAssetName);
+            mCompressedTexture = null;
+            try {
+                mBitmap = decodeBitmap(context, mImageAssetName);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read " + mImageAssetName, e);
+            }
+        }
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+
+        if (mCompressedTexture != null) {
+            // Compressed mip levels come precomputed and cannot be generated at runtime.
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                mCompressedTexture.hasMipmaps()
+                    ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            mCompressedTexture.upload();
+            mCompressedTexture = null;
+        } else {
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mBitmap, 0);
+            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+}
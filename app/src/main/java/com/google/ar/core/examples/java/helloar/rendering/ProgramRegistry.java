@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiles and links every combination of vertex shader, fragment shader and {@code #define}
+ * set once, and hands the program out to every renderer asking for it. Shader sources are read
+ * from the raw resources once. Programs are reference counted and deleted with their last
+ * release.
+ *
+ * <p>Defines let one shader file provide cheaper variants, for example {@code NO_SPECULAR} in
+ * {@code object_fragment}. They are inserted at the top of both shaders.
+ *
+ * <p>Must only be used on the GL thread.
+ */
+public class ProgramRegistry {
+    private static final String TAG = ProgramRegistry.class.getSimpleName();
+
+    private final HashMap<Integer, String> mSources = new HashMap<>();
+    private final HashMap<String, ShaderProgram> mPrograms = new HashMap<>();
+
+    public ProgramRegistry() {
+    }
+
+    /**
+     * Returns the program for a shader pair and define set, linking it if nobody holds it yet.
+     *
+     * @param context Context for loading the shader sources.
+     * @param vertexShaderResId The raw resource of the vertex shader.
+     * @param fragmentShaderResId The raw resource of the fragment shader.
+     * @param defines Names to {@code #define} in both shaders, in any order.
+     * @return The program, to be released with {@link #release(ShaderProgram)}.
+     */
+    public ShaderProgram acquire(Context context, int vertexShaderResId, int fragmentShaderResId,
+            String... defines) {
+        String[] sortedDefines = defines.clone();
+        Arrays.sort(sortedDefines);
+        StringBuilder header = new StringBuilder();
+        for (String define : sortedDefines) {
+            header.append("#define ").append(define).append('\n');
+        }
+        String key = vertexShaderResId + "/" + fragmentShaderResId + "\n" + header;
+
+        ShaderProgram program = mPrograms.get(key);
+        if (program == null) {
+            program = link(context, vertexShaderResId, fragmentShaderResId, header.toString(),
+                key);
+            mPrograms.put(key, program);
+        }
+        program.mReferenceCount++;
+        return program;
+    }
+
+    /**
+     * Drops one reference to a program, deleting it with the last one.
+     */
+    public void release(ShaderProgram program) {
+        if (mPrograms.get(program.getKey()) != program) {
+            throw new IllegalStateException("Not acquired from this registry");
+        }
+        if (--program.mReferenceCount > 0) {
+            return;
+        }
+        mPrograms.remove(program.getKey());
+        GLES20.glDeleteProgram(program.getId());
+    }
+
+    /**
+     * Forgets every program without deleting it, for when the GL context was lost and took the
+     * programs with it. Sources stay cached.
+     */
+    public void clear() {
+        mPrograms.clear();
+    }
+
+    /** Returns the number of linked programs. */
+    public int getProgramCount() {
+        return mPrograms.size();
+    }
+
+    private ShaderProgram link(Context context, int vertexShaderResId, int fragmentShaderResId,
+            String header, String key) {
+        int vertexShader = ShaderUtil.compileGLShader(TAG, GLES20.GL_VERTEX_SHADER,
+            header + getSource(context, vertexShaderResId));
+        int fragmentShader = ShaderUtil.compileGLShader(TAG, GLES20.GL_FRAGMENT_SHADER,
+            header + getSource(context, fragmentShaderResId));
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+
+        // Get the link status.
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            Log.e(TAG, "Error linking program: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            throw new RuntimeException("Error linking program.");
+        }
+
+        // The shaders are freed together with the program.
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        ShaderUtil.checkGLError(TAG, "Program creation");
+        return new ShaderProgram(program, key);
+    }
+
+    private String getSource(Context context, int resId) {
+        String source = mSources.get(resId);
+        if (source == null) {
+            source = ShaderUtil.readRawTextFile(context, resId);
+            mSources.put(resId, source);
+        }
+        return source;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Collects the draws of a frame and issues them in the order of their 64-bit sort keys, so that
+ * the order follows from what is drawn instead of from the order of the drawing code. From the
+ * most significant bit down, a key holds:
+ * <ul>
+ *   <li>4 bits of layer, drawn in ascending order: background, opaque, blended.
+ *   <li>12 bits of view depth: front to back for opaque draws, so that early depth testing
+ *       rejects hidden fragments, and back to front for blended ones, so that they blend
+ *       correctly. Depth is bucketed logarithmically, so close items share a bucket.
+ *   <li>14 bits of program and 14 bits of texture, so that draws sharing a bucket share state.
+ *   <li>20 bits of submission index, which keep equal keys in submission order and find the
+ *       item of a key.
+ * </ul>
+ *
+ * <p>The keys are sorted with a least significant digit radix sort over primitive arrays, which
+ * allocates nothing once the queue has grown to the frame's item count. Must only be used on the
+ * GL thread.
+ */
+public class RenderQueue {
+    /**
+     * Something that can be drawn from the queue.
+     */
+    public interface Drawable {
+        /**
+         * Draws one submitted item.
+         *
+         * @param modelMatrix The model matrix submitted with the item, or null.
+         * @param instance The instance index submitted with the item.
+         * @param cameraView  A 4x4 view matrix, in column-major order.
+         * @param cameraPerspective  A 4x4 projection matrix, in column-major order.
+         * @param lightIntensity  Illumination intensity.
+         */
+        void draw(float[] modelMatrix, int instance, float[] cameraView,
+            float[] cameraPerspective, float lightIntensity);
+    }
+
+    /** Layer of the camera image, drawn first. */
+    public static final int LAYER_BACKGROUND = 0;
+    /** Layer of opaque geometry, drawn front to back. */
+    public static final int LAYER_OPAQUE = 1;
+    /** Layer of blended geometry, drawn back to front after everything opaque. */
+    public static final int LAYER_BLENDED = 2;
+
+    private static final int INDEX_BITS = 20;
+    private static final int TEXTURE_BITS = 14;
+    private static final int PROGRAM_BITS = 14;
+    private static final int DEPTH_BITS = 12;
+    private static final int TEXTURE_SHIFT = INDEX_BITS;
+    private static final int PROGRAM_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+    private static final int DEPTH_SHIFT = PROGRAM_SHIFT + PROGRAM_BITS;
+    private static final int LAYER_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    private static final int MAX_ITEMS = 1 << INDEX_BITS;
+
+    // Depth range covered by the buckets, in meters. Closer and farther depths share the first
+    // and last bucket.
+    private static final float MIN_DEPTH = 0.1f;
+    private static final float MAX_DEPTH = 100.0f;
+    private static final double DEPTH_SCALE =
+        ((1 << DEPTH_BITS) - 1) / Math.log(MAX_DEPTH / MIN_DEPTH);
+
+    // The submission index is in order already, so only the bits above it are sorted.
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_PASSES = (64 - INDEX_BITS + RADIX_BITS - 1) / RADIX_BITS;
+    private static final int INITIAL_CAPACITY = 32;
+
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private long[] mSortedKeys = new long[INITIAL_CAPACITY];
+    private final int[] mBucketCounts = new int[1 << RADIX_BITS];
+    private Drawable[] mDrawables = new Drawable[INITIAL_CAPACITY];
+    private float[] mModelMatrices = new float[16 * INITIAL_CAPACITY];
+    private boolean[] mHasModelMatrix = new boolean[INITIAL_CAPACITY];
+    private int[] mInstances = new int[INITIAL_CAPACITY];
+    // The model matrix handed to the drawable being issued.
+    private final float[] mItemModelMatrix = new float[16];
+    private int mCount;
+    private int mLastExecutedCount;
+
+    public RenderQueue() {
+    }
+
+    /**
+     * Returns the key of an opaque draw, sorted front to back.
+     *
+     * @param layer The layer, such as {@link #LAYER_OPAQUE}.
+     * @param viewDepth Distance in front of the camera in meters.
+     * @param program The program name, for grouping.
+     * @param texture The texture name, for grouping, or 0.
+     */
+    public static long opaqueKey(int layer, float viewDepth, int program, int texture) {
+        return key(layer, depthBucket(viewDepth), program, texture);
+    }
+
+    /**
+     * Returns the key of a blended draw, sorted back to front.
+     *
+     * @param layer The layer, such as {@link #LAYER_BLENDED}.
+     * @param viewDepth Distance in front of the camera in meters.
+     * @param program The program name, for grouping.
+     * @param texture The texture name, for grouping, or 0.
+     */
+    public static long blendedKey(int layer, float viewDepth, int program, int texture) {
+        return key(layer, (1 << DEPTH_BITS) - 1 - depthBucket(viewDepth), program, texture);
+    }
+
+    /**
+     * Adds a draw to the queue.
+     *
+     * @param key The sort key, from {@link #opaqueKey} or {@link #blendedKey}.
+     * @param drawable What to draw.
+     * @param modelMatrix A model matrix copied for the item and handed back to the drawable, or
+     *     null.
+     */
+    public void submit(long key, Drawable drawable, float[] modelMatrix) {
+        submit(key, drawable, modelMatrix, 0);
+    }
+
+    /**
+     * Adds a draw of one instance of a drawable that keeps state per instance, such as an object
+     * placed on several anchors.
+     *
+     * @param key The sort key, from {@link #opaqueKey} or {@link #blendedKey}.
+     * @param drawable What to draw.
+     * @param modelMatrix A model matrix copied for the item and handed back to the drawable, or
+     *     null.
+     * @param instance An index handed back to the drawable.
+     */
+    public void submit(long key, Drawable drawable, float[] modelMatrix, int instance) {
+        if (mCount == MAX_ITEMS) {
+            throw new IllegalStateException("Render queue is full");
+        }
+        if (mCount == mKeys.length) {
+            grow();
+        }
+        mKeys[mCount] = (key & ~INDEX_MASK) | mCount;
+        mDrawables[mCount] = drawable;
+        mHasModelMatrix[mCount] = modelMatrix != null;
+        mInstances[mCount] = instance;
+        if (modelMatrix != null) {
+            System.arraycopy(modelMatrix, 0, mModelMatrices, 16 * mCount, 16);
+        }
+        mCount++;
+    }
+
+    /**
+     * Sorts the submitted draws, issues them and empties the queue.
+     *
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     * @param cameraPerspective  A 4x4 projection matrix, in column-major order.
+     * @param lightIntensity  Illumination intensity.
+     */
+    public void execute(float[] cameraView, float[] cameraPerspective, float lightIntensity) {
+        sort();
+        for (int i = 0; i < mCount; i++) {
+            int item = (int) (mKeys[i] & INDEX_MASK);
+            float[] itemModelMatrix = null;
+            if (mHasModelMatrix[item]) {
+                System.arraycopy(mModelMatrices, 16 * item, mItemModelMatrix, 0, 16);
+                itemModelMatrix = mItemModelMatrix;
+            }
+            mDrawables[item].draw(itemModelMatrix, mInstances[item], cameraView,
+                cameraPerspective, lightIntensity);
+        }
+        mLastExecutedCount = mCount;
+        clear();
+    }
+
+    /**
+     * Drops every submitted draw without issuing it.
+     */
+    public void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mDrawables[i] = null;
+        }
+        mCount = 0;
+    }
+
+    /** Returns the number of draws issued by the last {@link #execute}. */
+    public int getLastExecutedCount() {
+        return mLastExecutedCount;
+    }
+
+    private static long key(int layer, int depthBucket, int program, int texture) {
+        return ((long) layer << LAYER_SHIFT)
+            | ((long) depthBucket << DEPTH_SHIFT)
+            | ((long) (program & ((1 << PROGRAM_BITS) - 1)) << PROGRAM_SHIFT)
+            | ((long) (texture & ((1 << TEXTURE_BITS) - 1)) << TEXTURE_SHIFT);
+    }
+
+    private static int depthBucket(float viewDepth) {
+        if (!(viewDepth > MIN_DEPTH)) {
+            return 0;
+        }
+        return (int) Math.min((1 << DEPTH_BITS) - 1,
+            Math.log(viewDepth / MIN_DEPTH) * DEPTH_SCALE);
+    }
+
+    /**
+     * Sorts the keys by their bits above the submission index, one radix digit per pass,
+     * skipping passes in which every key has the same digit.
+     */
+    private void sort() {
+        long[] keys = mKeys;
+        long[] sorted = mSortedKeys;
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int shift = INDEX_BITS + pass * RADIX_BITS;
+            int[] counts = mBucketCounts;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < mCount; i++) {
+                counts[(int) ((keys[i] >>> shift) & ((1 << RADIX_BITS) - 1))]++;
+            }
+            if (mCount == 0
+                    || counts[(int) ((keys[0] >>> shift) & ((1 << RADIX_BITS) - 1))] == mCount) {
+                continue;
+            }
+            int offset = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < mCount; i++) {
+                long key = keys[i];
+                sorted[counts[(int) ((key >>> shift) & ((1 << RADIX_BITS) - 1))]++] = key;
+            }
+            long[] swap = keys;
+            keys = sorted;
+            sorted = swap;
+        }
+        mKeys = keys;
+        mSortedKeys = sorted;
+    }
+
+    private void grow() {
+        int capacity = Math.min(MAX_ITEMS, 2 * mKeys.length);
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mSortedKeys = new long[capacity];
+        mDrawables = Arrays.copyOf(mDrawables, capacity);
+        mModelMatrices = Arrays.copyOf(mModelMatrices, 16 * capacity);
+        mHasModelMatrix = Arrays.copyOf(mHasModelMatrix, capacity);
+        mInstances = Arrays.copyOf(mInstances, capacity);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+
+/**
+ * A linked program handed out by {@link ProgramRegistry}. Uniform and attribute locations are
+ * looked up once and cached, so renderers sharing the program do not query them again.
+ *
+ * <p>Must only be used on the GL thread.
+ */
+public class ShaderProgram {
+    private final int mProgramId;
+    private final String mKey;
+    private final HashMap<String, Integer> mUniformLocations = new HashMap<>();
+    private final HashMap<String, Integer> mAttributeLocations = new HashMap<>();
+    int mReferenceCount;
+
+    ShaderProgram(int programId, String key) {
+        mProgramId = programId;
+        mKey = key;
+    }
+
+    /** Returns the GL program object. */
+    public int getId() {
+        return mProgramId;
+    }
+
+    /** Returns the location of a uniform, or -1 if the program has no such active uniform. */
+    public int getUniformLocation(String name) {
+        Integer location = mUniformLocations.get(name);
+        if (location == null) {
+            location = GLES20.glGetUniformLocation(mProgramId, name);
+            mUniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /** Returns the location of an attribute, or -1 if the program has no such active attribute. */
+    public int getAttributeLocation(String name) {
+        Integer location = mAttributeLocations.get(name);
+        if (location == null) {
+            location = GLES20.glGetAttribLocation(mProgramId, name);
+            mAttributeLocations.put(name, location);
+        }
+        return location;
+    }
+
+    String getKey() {
+        return mKey;
+    }
+}
@@ -34,7 +34,17 @@ public class ShaderUtil {
      * @return The shader object handler.
      */
     public static int loadGLShader(String tag, Context context, int type, int resId) {
-        String code = readRawTextFile(context, resId);
+        return compileGLShader(tag, type, readRawTextFile(context, resId));
+    }
+
+    /**
+     * Compiles shader source code into an OpenGL ES shader.
+     *
+     * @param type The type of shader we will be creating.
+     * @param code The shader source code.
+     * @return The shader object handler.
+     */
+    public static int compileGLShader(String tag, int type, String code) {
         int shader = GLES20.glCreateShader(type);
         GLES20.glShaderSource(shader, code);
         GLES20.glCompileShader(shader);
@@ -82,7 +92,7 @@ public class ShaderUtil {
      * @param resId The resource ID of the raw text file about to be turned into a shader.
      * @return The context of the text file, or null in case of error.
      */
-    private static String readRawTextFile(Context context, int resId) {
+    static String readRawTextFile(Context context, int resId) {
         InputStream inputStream = context.getResources().openRawResource(resId);
         try {
             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
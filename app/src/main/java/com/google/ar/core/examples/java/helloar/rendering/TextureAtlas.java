@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs several images into one or a few square atlas pages at load time, so that objects
+ * textured with any of them bind the same texture. Pages are filled with shelf packing: images
+ * are sorted by height and laid out left to right in rows, a new row starting below the tallest
+ * image of the previous one.
+ *
+ * <p>Every image is surrounded by padding filled with copies of its edge pixels, so that
+ * filtering and the smaller mip levels do not bleed neighbouring images in. Images are scaled
+ * down to at most half the page size. KTX variants are not used, as compressed blocks cannot be
+ * combined.
+ *
+ * <p>Once created, the pages are registered in the {@link AssetCache} under the image names, so
+ * renderers acquiring one of the images get its page, and {@link AssetCache#getTextureRegion}
+ * tells them where in the page it is. Images already uploaded on their own are left out.
+ */
+public class TextureAtlas implements AssetLoader.Asset {
+    private static final String TAG = TextureAtlas.class.getSimpleName();
+
+    private final AssetCache mAssetCache;
+    private final int mPageSize;
+    private final int mPadding;
+    private final String[] mImageAssetNames;
+
+    // Placement of every image, in the order of the names: page and pixel rectangle without
+    // the padding.
+    private final int[] mPages;
+    private final int[] mX;
+    private final int[] mY;
+    private final int[] mWidths;
+    private final int[] mHeights;
+    private int mPageCount;
+
+    // Pages composed by prepare() and handed to the GL thread by createOnGlThread().
+    private Bitmap[] mPreparedPages;
+    private int[] mTextureIds = new int[0];
+    private boolean[] mRegistered;
+
+    /**
+     * @param assetCache Cache to register the pages in.
+     * @param pageSize Width and height of every page in pixels, a power of two.
+     * @param padding Pixels of replicated edge around every image. Each mip level halves it, so
+     *     {@code 2^n} pixels keep {@code n} levels clean.
+     * @param imageAssetNames Names of the PNG or JPEG files to pack.
+     */
+    public TextureAtlas(AssetCache assetCache, int pageSize, int padding,
+            String... imageAssetNames) {
+        mAssetCache = assetCache;
+        mPageSize = pageSize;
+        mPadding = padding;
+        mImageAssetNames = imageAssetNames.clone();
+        int count = imageAssetNames.length;
+        mPages = new int[count];
+        mX = new int[count];
+        mY = new int[count];
+        mWidths = new int[count];
+        mHeights = new int[count];
+    }
+
+    /**
+     * Decodes the images, packs them and composes the pages. Needs no GL context, so it may run
+     * on any thread.
+     *
+     * @param context Context for loading the image assets.
+     */
+    @Override
+    public void prepare(Context context) throws IOException {
+        int maxImageSize = mPageSize / 2 - 2 * mPadding;
+        Bitmap[] images = new Bitmap[mImageAssetNames.length];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = decodeBitmap(context, mImageAssetNames[i]);
+            int width = images[i].getWidth();
+            int height = images[i].getHeight();
+            if (width > maxImageSize || height > maxImageSize) {
+                float scale = (float) maxImageSize / Math.max(width, height);
+                width = Math.max(1, Math.round(width * scale));
+                height = Math.max(1, Math.round(height * scale));
+                Bitmap scaled = Bitmap.createScaledBitmap(images[i], width, height, true);
+                images[i].recycle();
+                images[i] = scaled;
+            }
+            mWidths[i] = width;
+            mHeights[i] = height;
+        }
+
+        pack();
+
+        int[][] pixels = new int[mPageCount][mPageSize * mPageSize];
+        for (int i = 0; i < images.length; i++) {
+            copyPadded(images[i], pixels[mPages[i]], mX[i], mY[i]);
+            images[i].recycle();
+        }
+        mPreparedPages = new Bitmap[mPageCount];
+        for (int page = 0; page < mPageCount; page++) {
+            mPreparedPages[page] = Bitmap.createBitmap(pixels[page], mPageSize, mPageSize,
+                Bitmap.Config.ARGB_8888);
+            pixels[page] = null;
+        }
+
+        Log.i(TAG, String.format("Packed %d images into %d pages of %dx%d, %.0f%% occupied",
+            images.length, mPageCount, mPageSize, mPageSize, 100.0f * getOccupancy()));
+    }
+
+    /**
+     * Uploads the pages with trilinear filtering and registers the images in the cache. Must be
+     * called on the GL thread.
+     *
+     * @param context Unused.
+     */
+    @Override
+    public void createOnGlThread(Context context) {
+        mTextureIds = new int[mPageCount];
+        GLES20.glGenTextures(mPageCount, mTextureIds, 0);
+        for (int page = 0; page < mPageCount; page++) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[page]);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mPreparedPages[page], 0);
+            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            mPreparedPages[page].recycle();
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        mAssetCache.getGlStateTracker().invalidate();
+        mPreparedPages = null;
+        ShaderUtil.checkGLError(TAG, "Atlas loading");
+
+        boolean[] pageUsed = new boolean[mPageCount];
+        mRegistered = new boolean[mImageAssetNames.length];
+        float[] region = new float[4];
+        for (int i = 0; i < mImageAssetNames.length; i++) {
+            getRegion(i, region);
+            mRegistered[i] = mAssetCache.putAtlasImage(
+                mImageAssetNames[i], mTextureIds[mPages[i]], region);
+            if (mRegistered[i]) {
+                pageUsed[mPages[i]] = true;
+            } else {
+                Log.w(TAG, mImageAssetNames[i] + " is uploaded on its own already");
+            }
+        }
+        for (int page = 0; page < mPageCount; page++) {
+            if (!pageUsed[page]) {
+                GLES20.glDeleteTextures(1, mTextureIds, page);
+            }
+        }
+    }
+
+    /**
+     * Drops the atlas's references to the images. Each page is deleted once no renderer uses
+     * any of its images anymore. Must be called on the GL thread.
+     */
+    public void releaseOnGlThread() {
+        for (int i = 0; i < mImageAssetNames.length; i++) {
+            if (mRegistered != null && mRegistered[i]) {
+                mAssetCache.releaseTexture(mImageAssetNames[i]);
+            }
+        }
+        onGlContextLost();
+    }
+
+    /**
+     * Forgets the pages without deleting them, for when the GL context was lost and took them
+     * with it.
+     */
+    public void onGlContextLost() {
+        mTextureIds = new int[0];
+        mRegistered = null;
+    }
+
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * Returns the share of the page area covered by images, without their padding, after
+     * {@link #prepare(Context)}.
+     */
+    public float getOccupancy() {
+        if (mPageCount == 0) {
+            return 0.0f;
+        }
+        long usedArea = 0;
+        for (int i = 0; i < mWidths.length; i++) {
+            usedArea += (long) mWidths[i] * mHeights[i];
+        }
+        return (float) usedArea / ((long) mPageCount * mPageSize * mPageSize);
+    }
+
+    /**
+     * Writes the texture coordinate region of an image, as {u offset, v offset, u scale,
+     * v scale}. Images are stored top row first, while texture coordinates start at the bottom
+     * as in the OBJ files.
+     */
+    private void getRegion(int image, float[] region) {
+        region[0] = (float) mX[image] / mPageSize;
+        region[1] = (float) (mPageSize - mY[image] - mHeights[image]) / mPageSize;
+        region[2] = (float) mWidths[image] / mPageSize;
+        region[3] = (float) mHeights[image] / mPageSize;
+    }
+
+    /**
+     * Places every image, tallest first, on the first shelf with room left, opening a new shelf
+     * or page if there is none.
+     */
+    private void pack() {
+        Integer[] order = new Integer[mImageAssetNames.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return mHeights[b] - mHeights[a];
+            }
+        });
+
+        // Every shelf as page, top, height and used width, all including the padding.
+        ArrayList<int[]> shelves = new ArrayList<>();
+        int[] pageBottoms = new int[order.length];
+        mPageCount = 0;
+        for (int image : order) {
+            int cellWidth = mWidths[image] + 2 * mPadding;
+            int cellHeight = mHeights[image] + 2 * mPadding;
+            int[] target = null;
+            for (int[] shelf : shelves) {
+                if (shelf[2] >= cellHeight && mPageSize - shelf[3] >= cellWidth) {
+                    target = shelf;
+                    break;
+                }
+            }
+            if (target == null) {
+                int page = mPageCount - 1;
+                if (page < 0 || mPageSize - pageBottoms[page] < cellHeight) {
+                    page = mPageCount++;
+                }
+                target = new int[] {page, pageBottoms[page], cellHeight, 0};
+                pageBottoms[page] += cellHeight;
+                shelves.add(target);
+            }
+            mPages[image] = target[0];
+            mX[image] = target[3] + mPadding;
+            mY[image] = target[1] + mPadding;
+            target[3] += cellWidth;
+        }
+    }
+
+    /**
+     * Copies an image into a page at (x, y) and repeats its edge pixels over the padding.
+     */
+    private void copyPadded(Bitmap image, int[] page, int x, int y) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        image.getPixels(page, y * mPageSize + x, mPageSize, 0, 0, width, height);
+        for (int row = y; row < y + height; row++) {
+            int rowStart = row * mPageSize;
+            Arrays.fill(page, rowStart + x - mPadding, rowStart + x, page[rowStart + x]);
+            Arrays.fill(page, rowStart + x + width, rowStart + x + width + mPadding,
+                page[rowStart + x + width - 1]);
+        }
+        int left = x - mPadding;
+        int paddedWidth = width + 2 * mPadding;
+        for (int i = 1; i <= mPadding; i++) {
+            System.arraycopy(page, y * mPageSize + left, page, (y - i) * mPageSize + left,
+                paddedWidth);
+            System.arraycopy(page, (y + height - 1) * mPageSize + left,
+                page, (y + height - 1 + i) * mPageSize + left, paddedWidth);
+        }
+    }
+
+    private static Bitmap decodeBitmap(Context context, String imageAssetName)
+            throws IOException {
+        InputStream inputStream = context.getAssets().open(imageAssetName);
+        try {
+            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+            if (bitmap == null) {
+                throw new IOException("Failed to decode " + imageAssetName);
+            }
+            return bitmap;
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.Matrix;
+
+import com.google.ar.core.examples.java.helloar.R;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Draws many objects sharing a mesh and a texture, typically the tiles of every pinboard, with
+ * one draw call per mesh and texture instead of one per object. Objects are queued every frame
+ * with {@link #add(ObjectRenderer, float[], float[])}, which snapshots their model matrix,
+ * texture region and highlight, and are drawn together by
+ * {@link #draw(float[], float[], float)}.
+ *
+ * <p>With instancing, the per-object values go into an instance buffer and each batch is one
+ * {@code glDrawElementsInstanced}. Without it, the objects are transformed on the CPU into one
+ * merged stream buffer and drawn with one {@code glDrawElements}, split only where the merged
+ * vertices would overflow 16-bit indices.
+ *
+ * <p>Limitations: all batches are queued as one opaque item, at the depth of the closest
+ * object, so they are never sorted against each other or drawn blended. The objects of a batch
+ * are drawn with the material properties and the light direction of the first one, and only
+ * with the full level of detail. Must only be used on the GL thread.
+ */
+public class TileBatchRenderer implements RenderQueue.Drawable {
+    private static final String TAG = TileBatchRenderer.class.getSimpleName();
+
+    // Per instance: model matrix, texture region and ambient.
+    private static final int INSTANCE_FLOATS = 16 + 4 + 1;
+    private static final int REGION_OFFSET = 16;
+    private static final int AMBIENT_OFFSET = 20;
+    // Per merged vertex: position, normal, texture coordinates and ambient.
+    private static final int MERGED_VERTEX_FLOATS = 3 + 3 + 2 + 1;
+    private static final int INITIAL_INSTANCE_CAPACITY = 16;
+
+    private static final float[] IDENTITY_REGION = {0.0f, 0.0f, 1.0f, 1.0f};
+
+    private final AssetCache mAssetCache;
+    private final GlStateTracker mGlState;
+    private String[] mShaderDefines = {"INSTANCE_AMBIENT"};
+
+    // Objects queued since begin(), with their per-instance values.
+    private ObjectRenderer[] mObjects = new ObjectRenderer[INITIAL_INSTANCE_CAPACITY];
+    private float[] mInstanceData = new float[INSTANCE_FLOATS * INITIAL_INSTANCE_CAPACITY];
+    private boolean[] mDrawn = new boolean[INITIAL_INSTANCE_CAPACITY];
+    private int[] mBatch = new int[INITIAL_INSTANCE_CAPACITY];
+    private int mInstanceCount;
+
+    private ShaderProgram mShaderProgram;
+    private boolean mInstanced;
+    // Instance buffer, or merged vertex buffer, and merged index buffer.
+    private final int[] mStreamBuffers = new int[2];
+    private ByteBuffer mStreamVertexData;
+    private ByteBuffer mStreamIndexData;
+    // Views of the stream data, made when it grows.
+    private FloatBuffer mStreamVertexFloats;
+    private ShortBuffer mStreamIndexShorts;
+
+    private int mViewUniform;
+    private int mViewProjectionUniform;
+    private int mTextureUniform;
+    private int mLightingParametersUniform;
+    private int mMaterialParametersUniform;
+    private int mPositionAttribute;
+    private int mNormalAttribute;
+    private int mTexCoordAttribute;
+    private int mModelAttribute;
+    private int mTexRegionAttribute;
+    private int mAmbientAttribute;
+    // Attribute arrays of the mesh, and of the instance values.
+    private int mMeshAttributeMask;
+    private int mInstanceAttributeMask;
+    private int mAmbientAttributeMask;
+
+    private final float[] mViewProjectionMatrix = new float[16];
+    private final float[] mModelViewMatrix = new float[16];
+    private final float[] mViewLightDirection = new float[4];
+
+    private int mDrawCallCount;
+
+    /**
+     * @param assetCache Cache holding the meshes, textures and programs of the queued objects.
+     */
+    public TileBatchRenderer(AssetCache assetCache) {
+        mAssetCache = assetCache;
+        mGlState = assetCache.getGlStateTracker();
+    }
+
+    /**
+     * Selects a variant of the object fragment shader, see
+     * {@link ObjectRenderer#setShaderDefines(String...)}. Must be called before
+     * {@link #createOnGlThread(Context)}.
+     *
+     * @param defines Names to {@code #define} in the shaders.
+     */
+    public void setShaderDefines(String... defines) {
+        mShaderDefines = new String[defines.length + 1];
+        System.arraycopy(defines, 0, mShaderDefines, 0, defines.length);
+        mShaderDefines[defines.length] = "INSTANCE_AMBIENT";
+    }
+
+    /**
+     * Compiles the shaders and creates the stream buffers. Must be called on the GL thread after
+     * {@link AssetCache#queryCapabilities()}.
+     *
+     * @param context Context for loading the shaders.
+     */
+    public void createOnGlThread(Context context) {
+        mInstanced = mAssetCache.isInstancingSupported();
+        mShaderProgram = mAssetCache.getProgramRegistry().acquire(context, R.raw.tile_vertex,
+            R.raw.object_fragment, mShaderDefines);
+
+        mViewUniform = mShaderProgram.getUniformLocation("u_View");
+        mViewProjectionUniform = mShaderProgram.getUniformLocation("u_ViewProjection");
+        mTextureUniform = mShaderProgram.getUniformLocation("u_Texture");
+        mLightingParametersUniform = mShaderProgram.getUniformLocation("u_LightingParameters");
+        mMaterialParametersUniform = mShaderProgram.getUniformLocation("u_MaterialParameters");
+
+        mPositionAttribute = mShaderProgram.getAttributeLocation("a_Position");
+        mNormalAttribute = mShaderProgram.getAttributeLocation("a_Normal");
+        mTexCoordAttribute = mShaderProgram.getAttributeLocation("a_TexCoord");
+        // The matrix takes four consecutive locations, one per column.
+        mModelAttribute = mShaderProgram.getAttributeLocation("a_Model");
+        mTexRegionAttribute = mShaderProgram.getAttributeLocation("a_TexRegion");
+        mAmbientAttribute = mShaderProgram.getAttributeLocation("a_Ambient");
+        mMeshAttributeMask = GlStateTracker.attributeMask(
+            mPositionAttribute, mNormalAttribute, mTexCoordAttribute);
+        mInstanceAttributeMask = GlStateTracker.attributeMask(mModelAttribute,
+            mModelAttribute + 1, mModelAttribute + 2, mModelAttribute + 3, mTexRegionAttribute,
+            mAmbientAttribute);
+        mAmbientAttributeMask = GlStateTracker.attributeMask(mAmbientAttribute);
+
+        GLES20.glGenBuffers(2, mStreamBuffers, 0);
+        ShaderUtil.checkGLError(TAG, "Program parameters");
+    }
+
+    /**
+     * Releases the program and the stream buffers. Must be called on the GL thread.
+     */
+    public void releaseOnGlThread() {
+        mAssetCache.getProgramRegistry().release(mShaderProgram);
+        GLES20.glDeleteBuffers(2, mStreamBuffers, 0);
+        mGlState.invalidate();
+        onGlContextLost();
+    }
+
+    /**
+     * Forgets the GL resources without deleting them, for when the GL context was lost and took
+     * them with it.
+     */
+    public void onGlContextLost() {
+        mShaderProgram = null;
+        mInstanceCount = 0;
+    }
+
+    /**
+     * Empties the queue, at the start of every frame.
+     */
+    public void begin() {
+        for (int i = 0; i < mInstanceCount; i++) {
+            mObjects[i] = null;
+        }
+        mInstanceCount = 0;
+    }
+
+    /**
+     * Queues an object with its current model matrix, texture region and highlight, and updates
+     * its model view projection matrix and screen bounds for picking. Objects that are not
+     * created are skipped. An object may be queued several times, for example once per board.
+     *
+     * @param object The object to draw.
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     * @param cameraPerspective  A 4x4 projection matrix, in column-major order.
+     */
+    public void add(ObjectRenderer object, float[] cameraView, float[] cameraPerspective) {
+        if (!object.isCreated()) {
+            return;
+        }
+        object.updateViewProjection(cameraView, cameraPerspective);
+
+        if (mInstanceCount == mObjects.length) {
+            int capacity = 2 * mObjects.length;
+            ObjectRenderer[] objects = new ObjectRenderer[capacity];
+            System.arraycopy(mObjects, 0, objects, 0, mInstanceCount);
+            mObjects = objects;
+            float[] instanceData = new float[INSTANCE_FLOATS * capacity];
+            System.arraycopy(mInstanceData, 0, instanceData, 0, INSTANCE_FLOATS * mInstanceCount);
+            mInstanceData = instanceData;
+            mDrawn = new boolean[capacity];
+            mBatch = new int[capacity];
+        }
+        int base = INSTANCE_FLOATS * mInstanceCount;
+        System.arraycopy(object.getModelMatrix(), 0, mInstanceData, base, 16);
+        System.arraycopy(object.getTextureRegion(), 0, mInstanceData, base + REGION_OFFSET, 4);
+        mInstanceData[base + AMBIENT_OFFSET] = object.getAmbient();
+        mObjects[mInstanceCount++] = object;
+    }
+
+    /**
+     * Queues the batches as one opaque item, at the depth of the closest object origin. Does
+     * nothing if no object was added.
+     *
+     * @param queue The queue of the frame.
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     */
+    public void submit(RenderQueue queue, float[] cameraView) {
+        if (mShaderProgram == null || mInstanceCount == 0) {
+            return;
+        }
+        float viewDepth = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < mInstanceCount; i++) {
+            int base = INSTANCE_FLOATS * i;
+            // Depth is the negated view space z of the model space origin.
+            float z = cameraView[2] * mInstanceData[base + 12]
+                + cameraView[6] * mInstanceData[base + 13]
+                + cameraView[10] * mInstanceData[base + 14] + cameraView[14];
+            viewDepth = Math.min(viewDepth, -z);
+        }
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, viewDepth,
+            mShaderProgram.getId(), mObjects[0].getTextureId()), this, null);
+    }
+
+    /**
+     * Draws every queued object when issued by a {@link RenderQueue}.
+     */
+    @Override
+    public void draw(float[] modelMatrix, int instance, float[] cameraView,
+            float[] cameraPerspective, float lightIntensity) {
+        draw(cameraView, cameraPerspective, lightIntensity);
+    }
+
+    /**
+     * Draws every queued object, one batch per mesh and texture.
+     *
+     * @param cameraView  A 4x4 view matrix, in column-major order.
+     * @param cameraPerspective  A 4x4 projection matrix, in column-major order.
+     * @param lightIntensity  Illumination intensity.
+     */
+    public void draw(float[] cameraView, float[] cameraPerspective, float lightIntensity) {
+        mDrawCallCount = 0;
+        if (mShaderProgram == null || mInstanceCount == 0) {
+            return;
+        }
+        ShaderUtil.checkGLError(TAG, "Before draw");
+
+        mGlState.useProgram(mShaderProgram.getId());
+        Matrix.multiplyMM(mViewProjectionMatrix, 0, cameraPerspective, 0, cameraView, 0);
+        GLES20.glUniformMatrix4fv(mViewUniform, 1, false, cameraView, 0);
+        GLES20.glUniformMatrix4fv(mViewProjectionUniform, 1, false, mViewProjectionMatrix, 0);
+        mGlState.activeTexture(GLES20.GL_TEXTURE0);
+        GLES20.glUniform1i(mTextureUniform, 0);
+        mGlState.setDepthTest(true);
+        mGlState.depthMask(true);
+        mGlState.setBlend(false);
+
+        for (int i = 0; i < mInstanceCount; i++) {
+            mDrawn[i] = false;
+        }
+        for (int i = 0; i < mInstanceCount; i++) {
+            if (mDrawn[i]) {
+                continue;
+            }
+            // Gather the objects sharing the mesh and texture of the first undrawn one.
+            ObjectRenderer first = mObjects[i];
+            AssetCache.MeshBuffers mesh = first.getMeshBuffers();
+            int batchSize = 0;
+            for (int j = i; j < mInstanceCount; j++) {
+                if (!mDrawn[j] && mObjects[j].getMeshBuffers() == mesh
+                        && mObjects[j].getTextureId() == first.getTextureId()) {
+                    mDrawn[j] = true;
+                    mBatch[batchSize++] = j;
+                }
+            }
+            setMaterial(first, cameraView, lightIntensity);
+
+            if (mInstanced) {
+                drawInstanced(mesh, batchSize);
+            } else if (mesh.cpuMesh != null
+                    && PackedMesh.fitsShortIndices(mesh.cpuMesh.getVertexCount())) {
+                drawMerged(mesh, batchSize);
+            } else {
+                drawSeparately(mesh, batchSize);
+            }
+        }
+
+        ShaderUtil.checkGLError(TAG, "After draw");
+    }
+
+    /**
+     * Returns the number of draw calls issued by the last {@link #draw(float[], float[], float)}.
+     */
+    public int getDrawCallCount() {
+        return mDrawCallCount;
+    }
+
+    /**
+     * Sets the texture, material and light of a batch from its first object. The light is fixed
+     * in model space, as in {@link ObjectRenderer}, so it follows the first object's rotation.
+     */
+    private void setMaterial(ObjectRenderer first, float[] cameraView, float lightIntensity) {
+        mGlState.bindTexture(GLES20.GL_TEXTURE_2D, first.getTextureId());
+
+        Matrix.multiplyMM(mModelViewMatrix, 0, cameraView, 0, first.getModelMatrix(), 0);
+        Matrix.multiplyMV(mViewLightDirection, 0, mModelViewMatrix, 0,
+            ObjectRenderer.LIGHT_DIRECTION, 0);
+        float reciprocalLength = 1.0f / (float) Math.sqrt(
+            mViewLightDirection[0] * mViewLightDirection[0]
+                + mViewLightDirection[1] * mViewLightDirection[1]
+                + mViewLightDirection[2] * mViewLightDirection[2]);
+        GLES20.glUniform4f(mLightingParametersUniform,
+            mViewLightDirection[0] * reciprocalLength, mViewLightDirection[1] * reciprocalLength,
+            mViewLightDirection[2] * reciprocalLength, lightIntensity);
+        GLES20.glUniform4f(mMaterialParametersUniform, first.getAmbient(), first.getDiffuse(),
+            first.getSpecular(), first.getSpecularPower());
+    }
+
+    /**
+     * Uploads the per-object values of the batch as instance attributes and draws every part of
+     * the full level of detail once for all of them.
+     */
+    private void drawInstanced(AssetCache.MeshBuffers mesh, int batchSize) {
+        FloatBuffer instanceFloats = streamVertexFloats(INSTANCE_FLOATS * batchSize);
+        for (int k = 0; k < batchSize; k++) {
+            instanceFloats.put(mInstanceData, INSTANCE_FLOATS * mBatch[k], INSTANCE_FLOATS);
+        }
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mStreamBuffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 4 * INSTANCE_FLOATS * batchSize,
+            mStreamVertexData, GLES20.GL_STREAM_DRAW);
+
+        mGlState.setVertexAttribArrays(mMeshAttributeMask | mInstanceAttributeMask);
+        int stride = 4 * INSTANCE_FLOATS;
+        for (int column = 0; column < 4; column++) {
+            setInstanceAttribute(mModelAttribute + column, 4, stride, 4 * 4 * column);
+        }
+        setInstanceAttribute(mTexRegionAttribute, 4, stride, 4 * REGION_OFFSET);
+        setInstanceAttribute(mAmbientAttribute, 1, stride, 4 * AMBIENT_OFFSET);
+
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.vertexBufferId);
+        mGlState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexBufferId);
+        for (int part = mesh.levelFirstParts[0]; part < mesh.levelFirstParts[1]; part++) {
+            setMeshAttributes(mesh, part);
+            GLES30.glDrawElementsInstanced(GLES20.GL_TRIANGLES, mesh.partIndexCounts[part],
+                mesh.indexType, mesh.partIndexOffsets[part], batchSize);
+            mDrawCallCount++;
+        }
+
+        // Other renderers use the same locations without instancing.
+        for (int column = 0; column < 4; column++) {
+            GLES30.glVertexAttribDivisor(mModelAttribute + column, 0);
+        }
+        GLES30.glVertexAttribDivisor(mTexRegionAttribute, 0);
+        GLES30.glVertexAttribDivisor(mAmbientAttribute, 0);
+    }
+
+    /**
+     * Transforms the full level of detail of every object of the batch into one stream buffer,
+     * with the texture region and ambient baked into the vertices, and draws it with as few
+     * calls as 16-bit indices allow.
+     */
+    private void drawMerged(AssetCache.MeshBuffers mesh, int batchSize) {
+        PackedMesh cpuMesh = mesh.cpuMesh;
+        int vertexCount = cpuMesh.getVertexCount();
+        FloatBuffer vertexFloats = mesh.cpuVertices;
+        int texCoordsStart = cpuMesh.getTexCoordsOffset() / 4;
+        int normalsStart = cpuMesh.getNormalsOffset() / 4;
+        boolean hasTexCoords = normalsStart > texCoordsStart;
+        boolean hasNormals = cpuMesh.getVertexDataSize() / 4 > normalsStart;
+        int levelIndexCount = 0;
+        for (int part = mesh.levelFirstParts[0]; part < mesh.levelFirstParts[1]; part++) {
+            levelIndexCount += mesh.partIndexCounts[part];
+        }
+        int instancesPerDraw = PackedMesh.SHORT_INDEX_VERTEX_LIMIT / vertexCount;
+
+        // The per-object values are baked in, so the instance attributes stay constant.
+        GLES20.glVertexAttrib4f(mModelAttribute, 1.0f, 0.0f, 0.0f, 0.0f);
+        GLES20.glVertexAttrib4f(mModelAttribute + 1, 0.0f, 1.0f, 0.0f, 0.0f);
+        GLES20.glVertexAttrib4f(mModelAttribute + 2, 0.0f, 0.0f, 1.0f, 0.0f);
+        GLES20.glVertexAttrib4f(mModelAttribute + 3, 0.0f, 0.0f, 0.0f, 1.0f);
+        GLES20.glVertexAttrib4fv(mTexRegionAttribute, IDENTITY_REGION, 0);
+        mGlState.setVertexAttribArrays(mMeshAttributeMask | mAmbientAttributeMask,
+            mInstanceAttributeMask & ~mAmbientAttributeMask);
+
+        for (int start = 0; start < batchSize; start += instancesPerDraw) {
+            int count = Math.min(instancesPerDraw, batchSize - start);
+            FloatBuffer merged = streamVertexFloats(MERGED_VERTEX_FLOATS * vertexCount * count);
+            ShortBuffer mergedIndices = streamIndexShorts(levelIndexCount * count);
+            ShortBuffer shortIndices = mesh.cpuIndices;
+
+            for (int k = 0; k < count; k++) {
+                int base = INSTANCE_FLOATS * mBatch[start + k];
+                float[] m = mInstanceData;
+                float regionU = m[base + REGION_OFFSET];
+                float regionV = m[base + REGION_OFFSET + 1];
+                float regionWidth = m[base + REGION_OFFSET + 2];
+                float regionHeight = m[base + REGION_OFFSET + 3];
+                float ambient = m[base + AMBIENT_OFFSET];
+                for (int v = 0; v < vertexCount; v++) {
+                    float x = vertexFloats.get(3 * v);
+                    float y = vertexFloats.get(3 * v + 1);
+                    float z = vertexFloats.get(3 * v + 2);
+                    merged.put(m[base] * x + m[base + 4] * y + m[base + 8] * z + m[base + 12]);
+                    merged.put(m[base + 1] * x + m[base + 5] * y + m[base + 9] * z + m[base + 13]);
+                    merged.put(m[base + 2] * x + m[base + 6] * y + m[base + 10] * z + m[base + 14]);
+                    if (hasNormals) {
+                        float nx = vertexFloats.get(normalsStart + 3 * v);
+                        float ny = vertexFloats.get(normalsStart + 3 * v + 1);
+                        float nz = vertexFloats.get(normalsStart + 3 * v + 2);
+                        merged.put(m[base] * nx + m[base + 4] * ny + m[base + 8] * nz);
+                        merged.put(m[base + 1] * nx + m[base + 5] * ny + m[base + 9] * nz);
+                        merged.put(m[base + 2] * nx + m[base + 6] * ny + m[base + 10] * nz);
+                    } else {
+                        merged.put(0.0f).put(0.0f).put(0.0f);
+                    }
+                    if (hasTexCoords) {
+                        merged.put(
+                            regionU + vertexFloats.get(texCoordsStart + 2 * v) * regionWidth);
+                        merged.put(
+                            regionV + vertexFloats.get(texCoordsStart + 2 * v + 1) * regionHeight);
+                    } else {
+                        merged.put(regionU).put(regionV);
+                    }
+                    merged.put(ambient);
+                }
+
+                int vertexOffset = k * vertexCount;
+                for (int part = mesh.levelFirstParts[0]; part < mesh.levelFirstParts[1];
+                        part++) {
+                    int first = cpuMesh.getPartFirstIndex(part);
+                    int partBase = vertexOffset + mesh.partBaseVertices[part];
+                    for (int i = 0; i < mesh.partIndexCounts[part]; i++) {
+                        mergedIndices.put(
+                            (short) (partBase + (shortIndices.get(first + i) & 0xffff)));
+                    }
+                }
+            }
+
+            mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mStreamBuffers[0]);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 4 * merged.position(),
+                mStreamVertexData, GLES20.GL_STREAM_DRAW);
+            mGlState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mStreamBuffers[1]);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * mergedIndices.position(),
+                mStreamIndexData, GLES20.GL_STREAM_DRAW);
+
+            int stride = 4 * MERGED_VERTEX_FLOATS;
+            GLES20.glVertexAttribPointer(mPositionAttribute, 3, GLES20.GL_FLOAT, false, stride, 0);
+            GLES20.glVertexAttribPointer(mNormalAttribute, 3, GLES20.GL_FLOAT, false, stride,
+                4 * 3);
+            GLES20.glVertexAttribPointer(mTexCoordAttribute, 2, GLES20.GL_FLOAT, false, stride,
+                4 * 6);
+            GLES20.glVertexAttribPointer(mAmbientAttribute, 1, GLES20.GL_FLOAT, false, stride,
+                4 * 8);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, mergedIndices.position(),
+                GLES20.GL_UNSIGNED_SHORT, 0);
+            mDrawCallCount++;
+        }
+    }
+
+    /**
+     * Draws the objects of the batch one by one with constant instance attributes, for meshes
+     * too large to merge on devices without instancing.
+     */
+    private void drawSeparately(AssetCache.MeshBuffers mesh, int batchSize) {
+        mGlState.setVertexAttribArrays(mMeshAttributeMask, mInstanceAttributeMask);
+        mGlState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.vertexBufferId);
+        mGlState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexBufferId);
+        for (int k = 0; k < batchSize; k++) {
+            int base = INSTANCE_FLOATS * mBatch[k];
+            for (int column = 0; column < 4; column++) {
+                GLES20.glVertexAttrib4fv(mModelAttribute + column, mInstanceData,
+                    base + 4 * column);
+            }
+            GLES20.glVertexAttrib4fv(mTexRegionAttribute, mInstanceData, base + REGION_OFFSET);
+            GLES20.glVertexAttrib1f(mAmbientAttribute, mInstanceData[base + AMBIENT_OFFSET]);
+            for (int part = mesh.levelFirstParts[0]; part < mesh.levelFirstParts[1]; part++) {
+                setMeshAttributes(mesh, part);
+                GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.partIndexCounts[part],
+                    mesh.indexType, mesh.partIndexOffsets[part]);
+                mDrawCallCount++;
+            }
+        }
+    }
+
+    /** Points the vertex attributes at a part of the bound mesh vertex buffer. */
+    private void setMeshAttributes(AssetCache.MeshBuffers mesh, int part) {
+        int baseVertex = mesh.partBaseVertices[part];
+        GLES20.glVertexAttribPointer(mPositionAttribute, 3, GLES20.GL_FLOAT, false, 0,
+            4 * 3 * baseVertex);
+        GLES20.glVertexAttribPointer(mNormalAttribute, 3, GLES20.GL_FLOAT, false, 0,
+            mesh.normalsOffset + 4 * 3 * baseVertex);
+        GLES20.glVertexAttribPointer(mTexCoordAttribute, 2, GLES20.GL_FLOAT, false, 0,
+            mesh.texCoordsOffset + 4 * 2 * baseVertex);
+    }
+
+    private static void setInstanceAttribute(int location, int size, int stride, int offset) {
+        GLES20.glVertexAttribPointer(location, size, GLES20.GL_FLOAT, false, stride, offset);
+        GLES30.glVertexAttribDivisor(location, 1);
+    }
+
+    /**
+     * Returns the cleared float view of the vertex scratch buffer, grown to at least the given
+     * number of floats. The buffer itself stays at position 0, ready for {@code glBufferData}.
+     */
+    private FloatBuffer streamVertexFloats(int floatCount) {
+        if (mStreamVertexFloats == null || mStreamVertexFloats.capacity() < floatCount) {
+            mStreamVertexData = ByteBuffer.allocateDirect(4 * Math.max(floatCount,
+                2 * (mStreamVertexFloats == null ? 0 : mStreamVertexFloats.capacity())))
+                .order(ByteOrder.nativeOrder());
+            mStreamVertexFloats = mStreamVertexData.asFloatBuffer();
+        }
+        mStreamVertexFloats.clear();
+        return mStreamVertexFloats;
+    }
+
+    /**
+     * Returns the cleared short view of the index scratch buffer, grown to at least the given
+     * number of indices. The buffer itself stays at position 0, ready for {@code glBufferData}.
+     */
+    private ShortBuffer streamIndexShorts(int indexCount) {
+        if (mStreamIndexShorts == null || mStreamIndexShorts.capacity() < indexCount) {
+            mStreamIndexData = ByteBuffer.allocateDirect(2 * Math.max(indexCount,
+                2 * (mStreamIndexShorts == null ? 0 : mStreamIndexShorts.capacity())))
+                .order(ByteOrder.nativeOrder());
+            mStreamIndexShorts = mStreamIndexData.asShortBuffer();
+        }
+        mStreamIndexShorts.clear();
+        return mStreamIndexShorts;
+    }
+}
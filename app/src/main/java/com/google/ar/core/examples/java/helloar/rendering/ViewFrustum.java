@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+/**
+ * The six clip planes of a camera in world space, for skipping objects outside the view before
+ * they are drawn. The planes are extracted from the view projection matrix once per frame with
+ * {@link #update(float[])}; objects are then tested by their world space bounding sphere.
+ *
+ * <p>Counts the tests that passed and failed since the last update, so the savings can be
+ * logged. Must only be used on the GL thread.
+ */
+public class ViewFrustum {
+    private static final int PLANE_COUNT = 6;
+
+    // a, b, c, d of every plane, with (a, b, c) the unit normal pointing into the frustum.
+    private final float[] mPlanes = new float[4 * PLANE_COUNT];
+    private int mVisibleCount;
+    private int mCulledCount;
+
+    /**
+     * Extracts the planes of a view projection matrix and resets the counters.
+     *
+     * @param viewProjection A 4x4 projection times view matrix, in column-major order.
+     */
+    public void update(float[] viewProjection) {
+        float[] m = viewProjection;
+        // A point is inside where -w <= x, y, z <= w in clip space, which gives a plane per
+        // bound as the sum or difference of the last row of the matrix with the first three.
+        for (int row = 0; row < 3; row++) {
+            setPlane(2 * row, m[3] + m[row], m[7] + m[4 + row], m[11] + m[8 + row],
+                m[15] + m[12 + row]);
+            setPlane(2 * row + 1, m[3] - m[row], m[7] - m[4 + row], m[11] - m[8 + row],
+                m[15] - m[12 + row]);
+        }
+        mVisibleCount = 0;
+        mCulledCount = 0;
+    }
+
+    /**
+     * Returns whether a sphere is at least partly inside the frustum, and counts the result.
+     * Spheres near a corner may pass while being outside, never the other way around.
+     *
+     * @param x World space x of the centre.
+     * @param y World space y of the centre.
+     * @param z World space z of the centre.
+     * @param radius Radius in world units.
+     */
+    public boolean isSphereVisible(float x, float y, float z, float radius) {
+        for (int i = 0; i < 4 * PLANE_COUNT; i += 4) {
+            float distance = mPlanes[i] * x + mPlanes[i + 1] * y + mPlanes[i + 2] * z
+                + mPlanes[i + 3];
+            if (distance < -radius) {
+                mCulledCount++;
+                return false;
+            }
+        }
+        mVisibleCount++;
+        return true;
+    }
+
+    /** Returns the number of tests passed since the last {@link #update(float[])}. */
+    public int getVisibleCount() {
+        return mVisibleCount;
+    }
+
+    /** Returns the number of tests failed since the last {@link #update(float[])}. */
+    public int getCulledCount() {
+        return mCulledCount;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float reciprocalLength = 1.0f / (float) Math.sqrt(a * a + b * b + c * c);
+        int i = 4 * plane;
+        mPlanes[i] = a * reciprocalLength;
+        mPlanes[i + 1] = b * reciprocalLength;
+        mPlanes[i + 2] = c * reciprocalLength;
+        mPlanes[i + 3] = d * reciprocalLength;
+    }
+}
@@ -13,6 +13,10 @@
  * limitations under the License.
  */
 
+// Variants, selected with #define by the program registry:
+// NO_SPECULAR skips the specular term, NO_GAMMA skips the sRGB gamma conversions,
+// INSTANCE_AMBIENT takes the ambient term from the vertex shader instead of the material.
+
 precision mediump float;
 
 uniform sampler2D u_Texture;
@@ -23,6 +27,9 @@ uniform vec4 u_MaterialParameters;
 varying vec3 v_ViewPosition;
 varying vec3 v_ViewNormal;
 varying vec2 v_TexCoord;
+#ifdef INSTANCE_AMBIENT
+varying float v_Ambient;
+#endif
 
 void main() {
     // We support approximate sRGB gamma.
@@ -45,22 +52,36 @@ void main() {
     // Apply inverse SRGB gamma to the texture before making lighting calculations.
     // Flip the y-texture coordinate to address the texture from top-left.
     vec4 objectColor = texture2D(u_Texture, vec2(v_TexCoord.x, 1.0 - v_TexCoord.y));
+#ifndef NO_GAMMA
     objectColor.rgb = pow(objectColor.rgb, vec3(kInverseGamma));
+#endif
 
     // Ambient light is unaffected by the light intensity.
+#ifdef INSTANCE_AMBIENT
+    float ambient = v_Ambient;
+#else
     float ambient = materialAmbient;
+#endif
 
     // Approximate a hemisphere light (not a harsh directional light).
     float diffuse = lightIntensity * materialDiffuse *
             0.5 * (dot(viewNormal, viewLightDirection) + 1.0);
 
+#ifdef NO_SPECULAR
+    float specular = 0.0;
+#else
     // Compute specular light.
     vec3 reflectedLightDirection = reflect(viewLightDirection, viewNormal);
     float specularStrength = max(0.0, dot(viewFragmentDirection, reflectedLightDirection));
     float specular = lightIntensity * materialSpecular *
             pow(specularStrength, materialSpecularPower);
+#endif
 
     // Apply SRGB gamma before writing the fragment color.
     gl_FragColor.a = objectColor.a;
+#ifdef NO_GAMMA
+    gl_FragColor.rgb = objectColor.rgb * (ambient + diffuse) + specular;
+#else
     gl_FragColor.rgb = pow(objectColor.rgb * (ambient + diffuse) + specular, vec3(kGamma));
+#endif
 }
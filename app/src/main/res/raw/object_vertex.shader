@@ -15,6 +15,8 @@
 
 uniform mat4 u_ModelView;
 uniform mat4 u_ModelViewProjection;
+// Region of the texture the mesh maps to, as (u offset, v offset, u scale, v scale).
+uniform vec4 u_TexRegion;
 
 attribute vec4 a_Position;
 attribute vec3 a_Normal;
@@ -27,6 +29,6 @@ varying vec2 v_TexCoord;
 void main() {
     v_ViewPosition = (u_ModelView * a_Position).xyz;
     v_ViewNormal = normalize((u_ModelView * vec4(a_Normal, 0.0)).xyz);
-    v_TexCoord = a_TexCoord;
+    v_TexCoord = u_TexRegion.xy + a_TexCoord * u_TexRegion.zw;
     gl_Position = u_ModelViewProjection * a_Position;
 }
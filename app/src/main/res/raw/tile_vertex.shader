@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Draws many tiles at once. The per-tile attributes come from an instance buffer when
+// instancing is available, and are constant when the tiles were merged into one buffer.
+// Needs INSTANCE_AMBIENT in the fragment shader.
+
+uniform mat4 u_View;
+uniform mat4 u_ViewProjection;
+
+attribute vec4 a_Position;
+attribute vec3 a_Normal;
+attribute vec2 a_TexCoord;
+
+// Per tile: model matrix, texture region as (u offset, v offset, u scale, v scale), ambient.
+attribute mat4 a_Model;
+attribute vec4 a_TexRegion;
+attribute float a_Ambient;
+
+varying vec3 v_ViewPosition;
+varying vec3 v_ViewNormal;
+varying vec2 v_TexCoord;
+varying float v_Ambient;
+
+void main() {
+    vec4 worldPosition = a_Model * a_Position;
+    v_ViewPosition = (u_View * worldPosition).xyz;
+    v_ViewNormal = normalize((u_View * (a_Model * vec4(a_Normal, 0.0))).xyz);
+    v_TexCoord = a_TexRegion.xy + a_TexCoord * a_TexRegion.zw;
+    v_Ambient = a_Ambient;
+    gl_Position = u_ViewProjection * worldPosition;
+}
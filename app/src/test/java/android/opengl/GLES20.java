@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.opengl;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+
+/**
+ * The methods of {@code android.opengl.GLES20} used by the app, for local unit tests that create
+ * and draw renderers. Takes the place of the mockable android.jar's stubs on the test classpath,
+ * like {@link Matrix}. Nothing is drawn: object names are handed out in sequence, shaders compile
+ * and programs link, every query reads zero, and no call allocates.
+ */
+public class GLES20 {
+    private static final int GL_TRUE = 1;
+    private static final int GL_VERSION = 0x1F02;
+
+    private static int sNextName = 1;
+
+    private static void generate(int n, int[] names, int offset) {
+        for (int i = 0; i < n; i++) {
+            names[offset + i] = sNextName++;
+        }
+    }
+
+    public static void glActiveTexture(int texture) {
+    }
+
+    public static void glAttachShader(int program, int shader) {
+    }
+
+    public static void glBindBuffer(int target, int buffer) {
+    }
+
+    public static void glBindTexture(int target, int texture) {
+    }
+
+    public static void glBlendFunc(int sfactor, int dfactor) {
+    }
+
+    public static void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    }
+
+    public static void glBufferData(int target, int size, Buffer data, int usage) {
+    }
+
+    public static void glBufferSubData(int target, int offset, int size, Buffer data) {
+    }
+
+    public static void glClear(int mask) {
+    }
+
+    public static void glClearColor(float red, float green, float blue, float alpha) {
+    }
+
+    public static void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    }
+
+    public static void glCompileShader(int shader) {
+    }
+
+    public static void glCompressedTexImage2D(int target, int level, int internalformat,
+            int width, int height, int border, int imageSize, Buffer data) {
+    }
+
+    public static int glCreateProgram() {
+        return sNextName++;
+    }
+
+    public static int glCreateShader(int type) {
+        return sNextName++;
+    }
+
+    public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+    }
+
+    public static void glDeleteProgram(int program) {
+    }
+
+    public static void glDeleteShader(int shader) {
+    }
+
+    public static void glDeleteTextures(int n, int[] textures, int offset) {
+    }
+
+    public static void glDepthMask(boolean flag) {
+    }
+
+    public static void glDisable(int cap) {
+    }
+
+    public static void glDisableVertexAttribArray(int index) {
+    }
+
+    public static void glDrawArrays(int mode, int first, int count) {
+    }
+
+    public static void glDrawElements(int mode, int count, int type, int offset) {
+    }
+
+    public static void glDrawElements(int mode, int count, int type, Buffer indices) {
+    }
+
+    public static void glEnable(int cap) {
+    }
+
+    public static void glEnableVertexAttribArray(int index) {
+    }
+
+    public static void glGenBuffers(int n, int[] buffers, int offset) {
+        generate(n, buffers, offset);
+    }
+
+    public static void glGenTextures(int n, int[] textures, int offset) {
+        generate(n, textures, offset);
+    }
+
+    public static void glGenerateMipmap(int target) {
+    }
+
+    public static int glGetAttribLocation(int program, String name) {
+        return 0;
+    }
+
+    public static int glGetError() {
+        return 0;
+    }
+
+    public static void glGetIntegerv(int pname, int[] params, int offset) {
+        params[offset] = 0;
+    }
+
+    public static void glGetIntegerv(int pname, IntBuffer params) {
+        params.put(params.position(), 0);
+    }
+
+    public static String glGetProgramInfoLog(int program) {
+        return "";
+    }
+
+    public static void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        params[offset] = GL_TRUE;
+    }
+
+    public static String glGetShaderInfoLog(int shader) {
+        return "";
+    }
+
+    public static void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        params[offset] = GL_TRUE;
+    }
+
+    /** Reports an ES 2.0 context without extensions, the least any device offers. */
+    public static String glGetString(int name) {
+        return name == GL_VERSION ? "OpenGL ES 2.0" : "";
+    }
+
+    public static int glGetUniformLocation(int program, String name) {
+        return 0;
+    }
+
+    public static void glLinkProgram(int program) {
+    }
+
+    public static void glShaderSource(int shader, String string) {
+    }
+
+    public static void glTexParameteri(int target, int pname, int param) {
+    }
+
+    public static void glUniform1f(int location, float x) {
+    }
+
+    public static void glUniform1i(int location, int x) {
+    }
+
+    public static void glUniform4f(int location, float x, float y, float z, float w) {
+    }
+
+    public static void glUniform4fv(int location, int count, float[] v, int offset) {
+    }
+
+    public static void glUniformMatrix2fv(int location, int count, boolean transpose,
+            float[] value, int offset) {
+    }
+
+    public static void glUniformMatrix4fv(int location, int count, boolean transpose,
+            float[] value, int offset) {
+    }
+
+    public static void glUseProgram(int program) {
+    }
+
+    public static void glVertexAttrib1f(int indx, float x) {
+    }
+
+    public static void glVertexAttrib4f(int indx, float x, float y, float z, float w) {
+    }
+
+    public static void glVertexAttrib4fv(int indx, float[] values, int offset) {
+    }
+
+    public static void glVertexAttribPointer(int indx, int size, int type, boolean normalized,
+            int stride, int offset) {
+    }
+
+    public static void glVertexAttribPointer(int indx, int size, int type, boolean normalized,
+            int stride, Buffer ptr) {
+    }
+
+    public static void glViewport(int x, int y, int width, int height) {
+    }
+}
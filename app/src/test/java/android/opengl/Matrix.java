@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.opengl;
+
+/**
+ * The methods of {@code android.opengl.Matrix} used by the app, for local unit tests. The
+ * mockable android.jar those run against stubs every framework method out, so this copy takes
+ * its place on the test classpath. Like the framework, the methods allocate nothing, and results
+ * must not overlap the inputs.
+ */
+public class Matrix {
+    private Matrix() {
+    }
+
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+            float[] rhs, int rhsOffset) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0.0f;
+                for (int k = 0; k < 4; k++) {
+                    sum += lhs[lhsOffset + 4 * k + row] * rhs[rhsOffset + 4 * column + k];
+                }
+                result[resultOffset + 4 * column + row] = sum;
+            }
+        }
+    }
+
+    public static void multiplyMV(float[] resultVec, int resultVecOffset, float[] lhsMat,
+            int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+        for (int row = 0; row < 4; row++) {
+            float sum = 0.0f;
+            for (int k = 0; k < 4; k++) {
+                sum += lhsMat[lhsMatOffset + 4 * k + row] * rhsVec[rhsVecOffset + k];
+            }
+            resultVec[resultVecOffset + row] = sum;
+        }
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) {
+            sm[smOffset + i] = i % 5 == 0 ? 1.0f : 0.0f;
+        }
+    }
+
+    public static void translateM(float[] tm, int tmOffset, float[] m, int mOffset, float x,
+            float y, float z) {
+        for (int i = 0; i < 12; i++) {
+            tm[tmOffset + i] = m[mOffset + i];
+        }
+        for (int i = 0; i < 4; i++) {
+            tm[tmOffset + 12 + i] = m[mOffset + i] * x + m[mOffset + 4 + i] * y
+                + m[mOffset + 8 + i] * z + m[mOffset + 12 + i];
+        }
+    }
+
+    public static void scaleM(float[] sm, int smOffset, float[] m, int mOffset, float x,
+            float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            sm[smOffset + i] = m[mOffset + i] * x;
+            sm[smOffset + 4 + i] = m[mOffset + 4 + i] * y;
+            sm[smOffset + 8 + i] = m[mOffset + 8 + i] * z;
+            sm[smOffset + 12 + i] = m[mOffset + 12 + i];
+        }
+    }
+
+    /** Inverts with cofactors; returns false, leaving mInv untouched, if m is singular. */
+    public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+        float m0 = m[mOffset], m1 = m[mOffset + 1], m2 = m[mOffset + 2], m3 = m[mOffset + 3];
+        float m4 = m[mOffset + 4], m5 = m[mOffset + 5], m6 = m[mOffset + 6];
+        float m7 = m[mOffset + 7], m8 = m[mOffset + 8], m9 = m[mOffset + 9];
+        float m10 = m[mOffset + 10], m11 = m[mOffset + 11], m12 = m[mOffset + 12];
+        float m13 = m[mOffset + 13], m14 = m[mOffset + 14], m15 = m[mOffset + 15];
+
+        float i0 = m5 * m10 * m15 - m5 * m11 * m14 - m9 * m6 * m15 + m9 * m7 * m14
+            + m13 * m6 * m11 - m13 * m7 * m10;
+        float i4 = -m4 * m10 * m15 + m4 * m11 * m14 + m8 * m6 * m15 - m8 * m7 * m14
+            - m12 * m6 * m11 + m12 * m7 * m10;
+        float i8 = m4 * m9 * m15 - m4 * m11 * m13 - m8 * m5 * m15 + m8 * m7 * m13
+            + m12 * m5 * m11 - m12 * m7 * m9;
+        float i12 = -m4 * m9 * m14 + m4 * m10 * m13 + m8 * m5 * m14 - m8 * m6 * m13
+            - m12 * m5 * m10 + m12 * m6 * m9;
+        float determinant = m0 * i0 + m1 * i4 + m2 * i8 + m3 * i12;
+        if (determinant == 0.0f) {
+            return false;
+        }
+        float i1 = -m1 * m10 * m15 + m1 * m11 * m14 + m9 * m2 * m15 - m9 * m3 * m14
+            - m13 * m2 * m11 + m13 * m3 * m10;
+        float i5 = m0 * m10 * m15 - m0 * m11 * m14 - m8 * m2 * m15 + m8 * m3 * m14
+            + m12 * m2 * m11 - m12 * m3 * m10;
+        float i9 = -m0 * m9 * m15 + m0 * m11 * m13 + m8 * m1 * m15 - m8 * m3 * m13
+            - m12 * m1 * m11 + m12 * m3 * m9;
+        float i13 = m0 * m9 * m14 - m0 * m10 * m13 - m8 * m1 * m14 + m8 * m2 * m13
+            + m12 * m1 * m10 - m12 * m2 * m9;
+        float i2 = m1 * m6 * m15 - m1 * m7 * m14 - m5 * m2 * m15 + m5 * m3 * m14
+            + m13 * m2 * m7 - m13 * m3 * m6;
+        float i6 = -m0 * m6 * m15 + m0 * m7 * m14 + m4 * m2 * m15 - m4 * m3 * m14
+            - m12 * m2 * m7 + m12 * m3 * m6;
+        float i10 = m0 * m5 * m15 - m0 * m7 * m13 - m4 * m1 * m15 + m4 * m3 * m13
+            + m12 * m1 * m7 - m12 * m3 * m5;
+        float i14 = -m0 * m5 * m14 + m0 * m6 * m13 + m4 * m1 * m14 - m4 * m2 * m13
+            - m12 * m1 * m6 + m12 * m2 * m5;
+        float i3 = -m1 * m6 * m11 + m1 * m7 * m10 + m5 * m2 * m11 - m5 * m3 * m10
+            - m9 * m2 * m7 + m9 * m3 * m6;
+        float i7 = m0 * m6 * m11 - m0 * m7 * m10 - m4 * m2 * m11 + m4 * m3 * m10
+            + m8 * m2 * m7 - m8 * m3 * m6;
+        float i11 = -m0 * m5 * m11 + m0 * m7 * m9 + m4 * m1 * m11 - m4 * m3 * m9
+            - m8 * m1 * m7 + m8 * m3 * m5;
+        float i15 = m0 * m5 * m10 - m0 * m6 * m9 - m4 * m1 * m10 + m4 * m2 * m9
+            + m8 * m1 * m6 - m8 * m2 * m5;
+
+        float reciprocal = 1.0f / determinant;
+        mInv[mInvOffset] = i0 * reciprocal;
+        mInv[mInvOffset + 1] = i1 * reciprocal;
+        mInv[mInvOffset + 2] = i2 * reciprocal;
+        mInv[mInvOffset + 3] = i3 * reciprocal;
+        mInv[mInvOffset + 4] = i4 * reciprocal;
+        mInv[mInvOffset + 5] = i5 * reciprocal;
+        mInv[mInvOffset + 6] = i6 * reciprocal;
+        mInv[mInvOffset + 7] = i7 * reciprocal;
+        mInv[mInvOffset + 8] = i8 * reciprocal;
+        mInv[mInvOffset + 9] = i9 * reciprocal;
+        mInv[mInvOffset + 10] = i10 * reciprocal;
+        mInv[mInvOffset + 11] = i11 * reciprocal;
+        mInv[mInvOffset + 12] = i12 * reciprocal;
+        mInv[mInvOffset + 13] = i13 * reciprocal;
+        mInv[mInvOffset + 14] = i14 * reciprocal;
+        mInv[mInvOffset + 15] = i15 * reciprocal;
+        return true;
+    }
+}
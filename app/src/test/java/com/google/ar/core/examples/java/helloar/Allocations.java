@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures what threads allocate, for tests that hold code to allocating nothing.
+ * Relies on the HotSpot extension of {@link java.lang.management.ThreadMXBean}, which the local
+ * unit test JVM provides.
+ */
+public final class Allocations {
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    /**
+     * Returns the number of bytes the calling thread allocated while running the action, less
+     * what the measurement itself allocates.
+     */
+    public static long measure(Runnable action) {
+        long overhead = allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        return allocatedBytes(action) - overhead;
+    }
+
+    /**
+     * Returns the number of bytes a thread has allocated since it started. Sample it before and
+     * after a run to see what a worker thread allocated on behalf of the calling one.
+     */
+    public static long allocatedBytes(Thread thread) {
+        return THREADS.getThreadAllocatedBytes(thread.getId());
+    }
+
+    private static long allocatedBytes(Runnable action) {
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        action.run();
+        return THREADS.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+import com.google.ar.core.examples.java.helloar.model.Pinboard;
+import com.google.ar.core.examples.java.helloar.model.PinboardTiles;
+import com.google.ar.core.examples.java.helloar.model.TileStreamer;
+import com.google.ar.core.examples.java.helloar.picking.CollisionMesh;
+import com.google.ar.core.examples.java.helloar.picking.GazePicker;
+import com.google.ar.core.examples.java.helloar.picking.HitTestMode;
+import com.google.ar.core.examples.java.helloar.picking.PickResult;
+import com.google.ar.core.examples.java.helloar.picking.PickingService;
+import com.google.ar.core.examples.java.helloar.picking.TapRingBuffer;
+import com.google.ar.core.examples.java.helloar.picking.TriangleBvh;
+import com.google.ar.core.examples.java.helloar.rendering.AssetCache;
+import com.google.ar.core.examples.java.helloar.rendering.AssetLoader;
+import com.google.ar.core.examples.java.helloar.rendering.FrameArena;
+import com.google.ar.core.examples.java.helloar.rendering.ObjStreamReader;
+import com.google.ar.core.examples.java.helloar.rendering.ObjectRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.PackedMesh;
+import com.google.ar.core.examples.java.helloar.rendering.RenderQueue;
+import com.google.ar.core.examples.java.helloar.rendering.TileBatchRenderer;
+import com.google.ar.core.examples.java.helloar.rendering.ViewFrustum;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives {@link BoardScene} the way {@link HelloArActivity#onDrawFrame} does, with the app's
+ * meshes and renderers drawing into the GLES20 test double, and fails if a warmed-up frame
+ * allocates. The camera sways so that gaze is picked again every frame, the user taps and drags
+ * tiles, and the boards leave the streaming range and come back.
+ */
+public class FrameLoopAllocationTest {
+    private static final int WARM_UP_FRAMES = 2000;
+    private static final int MEASURED_FRAMES = 400;
+    // The JVM compiles hot loops in the background, and swapping one in on the stack can
+    // allocate once on this thread. A frame that allocates does so in every block.
+    private static final int MEASURED_BLOCKS = 3;
+    // Every cycle starts with the boards out of range for a quarter of it.
+    private static final int RANGE_CYCLE_FRAMES = 200;
+    private static final int DRAG_CYCLE_FRAMES = 50;
+    private static final long FRAME_MILLIS = 16;
+    private static final int VIEW_SIZE = 1000;
+
+    private static final String ASSETS = "src/main/assets/";
+    private static final String BOARD_MESH = "pinboard5.obj";
+    private static final String BOARD_TEXTURE =
+        "6443928-large-corkboard-texture-or-background--Stock-Photo.jpg";
+    private static final String[] TILE_MESHES = {"newsTileNew.obj", "funnyTileNew2.obj"};
+    private static final String[] TILE_TEXTURES = {"newsTile.jpg", "funnyTile.jpg"};
+    private static final Tile[] TILE_IDS = {Tile.NEWS, Tile.FUNNY};
+    private static final float LOAD_DISTANCE = 5.0f;
+    private static final long UNLOAD_DELAY_MILLIS = 10000;
+    // Three boards side by side in front of the camera, each an anchor of its own.
+    private static final float[] BOARD_X = {-1.0f, 0.0f, 1.0f};
+    private static final float BOARD_DISTANCE = 1.5f;
+    private static final float OUT_OF_RANGE_DISTANCE = 2.0f * LOAD_DISTANCE;
+
+    // 60 degree vertical field of view, square viewport, from 0.1 to 100.
+    private static final float[] PROJECTION = {
+        1.7320508f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.7320508f, 0.0f, 0.0f,
+        0.0f, 0.0f, -100.1f / 99.9f, -1.0f,
+        0.0f, 0.0f, -20.0f / 99.9f, 0.0f,
+    };
+
+    private static final PickingService.Listener IGNORE_PICKS = new PickingService.Listener() {
+        @Override
+        public void onTilePicked(PickResult result) {
+        }
+    };
+    private static final GazePicker.Listener IGNORE_FOCUS = new GazePicker.Listener() {
+        @Override
+        public void onFocusChanged(Tile tile) {
+        }
+    };
+
+    private final TestContext mContext = new TestContext();
+    private final AssetCache mAssetCache = new AssetCache();
+    private final FrameArena mFrameArena = new FrameArena(8, 4);
+    private final ViewFrustum mViewFrustum = new ViewFrustum();
+    private final RenderQueue mRenderQueue = new RenderQueue();
+    private final TapRingBuffer mQueuedTaps = new TapRingBuffer(16);
+    private final TapRingBuffer.Batch mTapBatch = mQueuedTaps.createBatch();
+    private final float[][] mAnchorMatrices = new float[BOARD_X.length][];
+    private final int[] mAnchorIds = new int[BOARD_X.length];
+
+    private ObjectRenderer mBoard;
+    private ObjectRenderer[] mTiles;
+    private TileBatchRenderer mTileBatchRenderer;
+    private Pinboard mPinboard;
+    private AssetLoader mAssetLoader;
+    private PickingService mPickingService;
+    private BoardScene mScene;
+    private int mFrame;
+
+    @Before
+    public void createScene() throws IOException {
+        mAssetCache.queryCapabilities();
+        mBoard = createRenderer(BOARD_MESH, BOARD_TEXTURE, 1);
+        mTiles = new ObjectRenderer[TILE_MESHES.length];
+        PinboardTiles[] pinboardTiles = new PinboardTiles[TILE_MESHES.length];
+        for (int i = 0; i < mTiles.length; i++) {
+            // Both tiles in one atlas page, like the app's.
+            mTiles[i] = createRenderer(TILE_MESHES[i], TILE_TEXTURES[i], 2);
+            pinboardTiles[i] = new PinboardTiles(TILE_IDS[i].name(), "category", "content");
+            pinboardTiles[i].setTileVirtualObject(mTiles[i]);
+        }
+        mTileBatchRenderer = new TileBatchRenderer(mAssetCache);
+        mTileBatchRenderer.setShaderDefines("NO_SPECULAR");
+        mTileBatchRenderer.createOnGlThread(mContext);
+
+        mPinboard = new Pinboard("Board", "qr", null, Arrays.asList(pinboardTiles));
+        mAssetLoader = new AssetLoader(mContext);
+        mPickingService = new PickingService(IGNORE_PICKS, mTiles.length, 16);
+        mScene = new BoardScene(mBoard, mTiles, TILE_IDS, mTileBatchRenderer, mPinboard,
+            new TileStreamer(mAssetLoader, LOAD_DISTANCE, UNLOAD_DELAY_MILLIS),
+            mPickingService, new GazePicker(IGNORE_FOCUS), mFrameArena, mViewFrustum,
+            mRenderQueue);
+        mScene.setHitTestMode(HitTestMode.RAY);
+        mScene.setViewportSize(VIEW_SIZE, VIEW_SIZE);
+        for (int a = 0; a < mAnchorIds.length; a++) {
+            mAnchorIds[a] = a;
+        }
+    }
+
+    @After
+    public void shutDown() {
+        mPickingService.shutdown();
+        mAssetLoader.shutdown();
+    }
+
+    @Test
+    public void frame_steadyState_allocatesNothing() {
+        Runnable frames = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < MEASURED_FRAMES; i++) {
+                    runFrame();
+                }
+            }
+        };
+        for (int i = 0; i < WARM_UP_FRAMES / MEASURED_FRAMES; i++) {
+            frames.run();
+        }
+
+        long allocated = Allocations.measure(frames);
+        for (int i = 1; i < MEASURED_BLOCKS && allocated != 0; i++) {
+            allocated = Allocations.measure(frames);
+        }
+        assertEquals(0, allocated);
+        // The loop really ran: the last frame drew boards and tiles, which stayed loaded while
+        // out of range.
+        assertTrue(mViewFrustum.getVisibleCount() > 0);
+        assertTrue(mTileBatchRenderer.getDrawCallCount() > 0);
+        assertTrue(mPinboard.isInRange());
+        assertTrue(mTiles[0].isCreated());
+    }
+
+    /** One frame, shaped like the onDrawFrame of the activity. */
+    private void runFrame() {
+        int frame = mFrame++;
+        mFrameArena.reset();
+        mRenderQueue.clear();
+
+        queueTouches(frame);
+        mQueuedTaps.drainTo(mTapBatch);
+        if (mTapBatch.getCount() > 0) {
+            mScene.handleTaps(mTapBatch, /*tracking=*/ true);
+        }
+
+        float[] projection = mFrameArena.matrix();
+        System.arraycopy(PROJECTION, 0, projection, 0, 16);
+        // Sway the camera about the vertical axis.
+        float[] view = mFrameArena.matrix();
+        setRotationY(view, 0.2f * (float) Math.sin(0.05 * frame));
+        float[] cameraPosition = mFrameArena.vector();
+        Arrays.fill(cameraPosition, 0.0f);
+
+        boolean inRange = frame % RANGE_CYCLE_FRAMES >= RANGE_CYCLE_FRAMES / 4;
+        for (int a = 0; a < mAnchorMatrices.length; a++) {
+            float[] anchorMatrix = mFrameArena.matrix();
+            setRotationY(anchorMatrix, 0.0f);
+            anchorMatrix[12] = BOARD_X[a];
+            anchorMatrix[14] = -(inRange ? BOARD_DISTANCE : OUT_OF_RANGE_DISTANCE);
+            mAnchorMatrices[a] = anchorMatrix;
+        }
+
+        mScene.update(view, projection, cameraPosition, mAnchorMatrices, mAnchorIds,
+            mAnchorMatrices.length, frame * FRAME_MILLIS);
+        mRenderQueue.execute(view, projection, 1.0f);
+    }
+
+    /** A tap beside the boards every frame, and a drag of the tile at the centre now and then. */
+    private void queueTouches(int frame) {
+        mQueuedTaps.offer(0.0f, 0.0f, frame, TapRingBuffer.Kind.SINGLE_TAP);
+        float centre = 0.5f * VIEW_SIZE;
+        switch (frame % DRAG_CYCLE_FRAMES) {
+            case 0:
+                mQueuedTaps.offer(centre, centre, frame, TapRingBuffer.Kind.LONG_PRESS);
+                break;
+            case 1:
+            case 2:
+                mQueuedTaps.offer(centre + 10.0f, centre, frame, TapRingBuffer.Kind.DRAG_MOVE);
+                break;
+            case 3:
+                mQueuedTaps.offer(centre, centre, frame, TapRingBuffer.Kind.DRAG_MOVE);
+                break;
+            case 4:
+                mQueuedTaps.offer(centre, centre, frame, TapRingBuffer.Kind.DRAG_END);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Creates a renderer the way the app's asset loader does, with the mesh read from the
+     * module's assets and the texture registered as a region of an atlas page.
+     */
+    private ObjectRenderer createRenderer(String objAssetName, String textureAssetName,
+            int texturePage) throws IOException {
+        PackedMesh mesh;
+        try (FileInputStream input = new FileInputStream(ASSETS + objAssetName)) {
+            mesh = ObjStreamReader.read(input);
+        }
+        CollisionMesh collisionMesh = CollisionMesh.copyOf(mesh.getPositions(), mesh.getIndices());
+        float[] bounds = new float[6];
+        mesh.computeBounds(bounds);
+        mAssetCache.acquireMesh(objAssetName, new AssetCache.PreparedMesh(mesh, bounds,
+            ObjectRenderer.CollisionShape.Mesh.name(), collisionMesh,
+            new TriangleBvh(collisionMesh)));
+        mAssetCache.putAtlasImage(textureAssetName, texturePage,
+            new float[] {0.0f, 0.0f, 1.0f, 1.0f});
+
+        ObjectRenderer renderer = new ObjectRenderer(mAssetCache, objAssetName,
+            textureAssetName);
+        renderer.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+        renderer.prepare(mContext);
+        renderer.createOnGlThread(mContext);
+        return renderer;
+    }
+
+    /** Sets a rotation about the y axis. */
+    private static void setRotationY(float[] matrix, float radians) {
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        Arrays.fill(matrix, 0.0f);
+        matrix[0] = cos;
+        matrix[2] = -sin;
+        matrix[5] = 1.0f;
+        matrix[8] = sin;
+        matrix[10] = cos;
+        matrix[15] = 1.0f;
+    }
+}
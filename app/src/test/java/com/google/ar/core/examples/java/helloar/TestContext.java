@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A context for local unit tests that create renderers against the GLES20 test double. Every raw
+ * resource reads as an empty shader; assets cannot be opened, so tests put meshes and textures
+ * into the asset cache before creating a renderer.
+ */
+public class TestContext extends ContextWrapper {
+    private static final byte[] SHADER = "void main() {}\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Resources mResources = new Resources(null, null, null) {
+        @Override
+        public InputStream openRawResource(int id) {
+            return new ByteArrayInputStream(SHADER);
+        }
+    };
+
+    public TestContext() {
+        super(null);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.Matrix;
+
+import com.google.ar.core.examples.java.helloar.content.Tile;
+import com.google.ar.core.examples.java.helloar.rendering.ObjStreamReader;
+import com.google.ar.core.examples.java.helloar.rendering.PackedMesh;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class GazePickerTest {
+    // Looks down -z from the origin with a 90 degree field of view, from 0.1 to 100.
+    private static final float[] PROJECTION = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, -100.1f / 99.9f, -1.0f,
+        0.0f, 0.0f, -20.0f / 99.9f, 0.0f,
+    };
+    private static final float[] IDENTITY = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, 1.0f, 0.0f,
+        0.0f, 0.0f, 0.0f, 1.0f,
+    };
+    private static final GazePicker.Listener IGNORE_FOCUS = new GazePicker.Listener() {
+        @Override
+        public void onFocusChanged(Tile tile) {
+        }
+    };
+    private static final Tile[] TILES = {Tile.FUNNY, Tile.NEWS, Tile.OTHERS};
+
+    // The benchmark scene: the two tiles of the app on a board 1.5 m in front of the camera.
+    private static final String ASSETS = "src/main/assets/";
+    private static final String[] TILE_ASSETS = {"funnyTileNew2.obj", "newsTileNew.obj"};
+    private static final float BOARD_DISTANCE = 1.5f;
+    private static final int WARM_UP_FRAMES = 5000;
+    private static final int MEASURED_FRAMES = 1000;
+
+    /** An object drawn with a model view projection matrix, optionally slow to pick. */
+    private static class Target implements Pickable {
+        private final CollisionMesh mMesh;
+        private final TriangleBvh mBvh;
+        private final ScreenBounds mScreenBounds = new ScreenBounds();
+        private final float[] mModelViewProjection = new float[16];
+        boolean mSlow;
+
+        Target(CollisionMesh mesh) {
+            mMesh = mesh;
+            mBvh = new TriangleBvh(mesh);
+            setModelViewProjection(PROJECTION);
+        }
+
+        /** A unit square at z = -2, centred on x. */
+        static Target square(float x) {
+            return new Target(new CollisionMesh(new float[] {
+                x - 0.5f, -0.5f, -2.0f,
+                x + 0.5f, -0.5f, -2.0f,
+                x + 0.5f, 0.5f, -2.0f,
+                x - 0.5f, 0.5f, -2.0f,
+            }, new int[] {0, 1, 2, 0, 2, 3}));
+        }
+
+        void setModelViewProjection(float[] modelViewProjection) {
+            System.arraycopy(modelViewProjection, 0, mModelViewProjection, 0, 16);
+            mScreenBounds.update(mModelViewProjection, mMesh.getBounds());
+        }
+
+        @Override
+        public float[] getModelViewProjectionMatrix() {
+            if (mSlow) {
+                long end = System.nanoTime() + 2 * GazePicker.FRAME_BUDGET_NANOS;
+                while (System.nanoTime() < end) {
+                    // Spins past the budget.
+                }
+            }
+            return mModelViewProjection;
+        }
+
+        @Override
+        public CollisionMesh getCollisionMesh() {
+            return mMesh;
+        }
+
+        @Override
+        public TriangleBvh getBvh() {
+            return mBvh;
+        }
+
+        @Override
+        public ScreenBounds getScreenBounds() {
+            return mScreenBounds;
+        }
+    }
+
+    @Test
+    public void update_findsTheTileAtTheCentre() {
+        GazePicker picker = new GazePicker(IGNORE_FOCUS);
+        Pickable[] targets = {Target.square(-3.0f), Target.square(0.0f)};
+
+        assertEquals(1, picker.update(IDENTITY, IDENTITY, targets, TILES));
+        assertEquals(Tile.NEWS, picker.getFocusedTile());
+        assertEquals(0, picker.getOverBudgetCount());
+    }
+
+    @Test
+    public void update_outOfTime_resumesWithTheNextTileInTheNextFrame() {
+        GazePicker picker = new GazePicker(IGNORE_FOCUS);
+        Target[] targets = {Target.square(-3.0f), Target.square(3.0f), Target.square(0.0f)};
+        for (Target target : targets) {
+            target.mSlow = true;
+        }
+
+        // Every miss runs over the budget, so each frame tests one tile.
+        assertEquals(-1, picker.update(IDENTITY, IDENTITY, targets, TILES));
+        assertEquals(-1, picker.update(IDENTITY, IDENTITY, targets, TILES));
+        assertEquals(2, picker.update(IDENTITY, IDENTITY, targets, TILES));
+        assertEquals(3, picker.getOverBudgetCount());
+    }
+
+    @Test
+    public void update_outOfTimeAfterAFullResult_resumesWhileTheCameraStaysStill() {
+        GazePicker picker = new GazePicker(IGNORE_FOCUS);
+        Target[] targets = {Target.square(-3.0f), Target.square(0.0f), Target.square(3.0f)};
+        float[] shifted = new float[16];
+        Matrix.translateM(shifted, 0, PROJECTION, 0, -3.0f, 0.0f, 0.0f);
+        for (Target target : targets) {
+            target.setModelViewProjection(shifted);
+        }
+        assertEquals(2, picker.update(IDENTITY, IDENTITY, targets, TILES));
+
+        // The camera turns to the middle tile, and picking turns slow.
+        float[] turnedView = IDENTITY.clone();
+        turnedView[12] = 3.0f;
+        for (Target target : targets) {
+            target.setModelViewProjection(PROJECTION);
+            target.mSlow = true;
+        }
+        assertEquals(2, picker.update(turnedView, IDENTITY, targets, TILES));
+
+        // The search goes on although nothing moves any more.
+        assertEquals(1, picker.update(turnedView, IDENTITY, targets, TILES));
+        assertEquals(1, picker.update(turnedView, IDENTITY, targets, TILES));
+        assertEquals(Tile.NEWS, picker.getFocusedTile());
+    }
+
+    @Test
+    public void clear_dropsTheFocus() {
+        GazePicker picker = new GazePicker(IGNORE_FOCUS);
+        Pickable[] targets = {Target.square(0.0f)};
+        picker.update(IDENTITY, IDENTITY, targets, TILES);
+
+        picker.clear();
+
+        assertNull(picker.getFocusedTile());
+        // Nothing moved, but the cleared result is not reused.
+        assertEquals(0, picker.update(IDENTITY, IDENTITY, targets, TILES));
+    }
+
+    @Test
+    public void update_tileBenchmarkScene_staysWithinFrameBudget() throws IOException {
+        GazePicker picker = new GazePicker(IGNORE_FOCUS);
+        Target[] targets = new Target[TILE_ASSETS.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = new Target(readCollisionMesh(ASSETS + TILE_ASSETS[i]));
+        }
+        float[] perspective = perspective(60.0f, 16.0f / 9.0f, 0.1f, 100.0f);
+        float[] view = new float[16];
+        float[] viewProjection = new float[16];
+        long[] durations = new long[MEASURED_FRAMES];
+        int focusedFrames = 0;
+
+        for (int frame = 0; frame < WARM_UP_FRAMES + MEASURED_FRAMES; frame++) {
+            // The camera sweeps across the board, moving enough every frame for a new pick.
+            Matrix.setIdentityM(view, 0);
+            view[12] = -0.8f + 1.6f * (frame % 200) / 200.0f;
+            view[13] = -0.1f;
+            view[14] = -BOARD_DISTANCE;
+            Matrix.multiplyMM(viewProjection, 0, perspective, 0, view, 0);
+            for (Target target : targets) {
+                target.setModelViewProjection(viewProjection);
+            }
+
+            long start = System.nanoTime();
+            int focused = picker.update(view, IDENTITY, targets, TILES);
+            long duration = System.nanoTime() - start;
+            if (frame >= WARM_UP_FRAMES) {
+                durations[frame - WARM_UP_FRAMES] = duration;
+                if (focused >= 0) {
+                    focusedFrames++;
+                }
+            }
+        }
+
+        // The sweep looks at a tile part of the time, so both hits and misses are timed.
+        assertTrue(focusedFrames > 0 && focusedFrames < MEASURED_FRAMES);
+        // The median, as single frames may be stretched by the test machine.
+        Arrays.sort(durations);
+        long median = durations[MEASURED_FRAMES / 2];
+        assertTrue("Median update took " + median + " ns",
+            median < GazePicker.FRAME_BUDGET_NANOS);
+    }
+
+    private static CollisionMesh readCollisionMesh(String path) throws IOException {
+        PackedMesh mesh = ObjStreamReader.read(new FileInputStream(path));
+        if (mesh.getIndexSize() == 4) {
+            return CollisionMesh.copyOf(mesh.getPositions(), mesh.getWideIndices());
+        }
+        return CollisionMesh.copyOf(mesh.getPositions(), mesh.getIndices());
+    }
+
+    /** Returns a perspective projection, as android.opengl.Matrix.perspectiveM would. */
+    private static float[] perspective(float fovY, float aspect, float near, float far) {
+        float f = 1.0f / (float) Math.tan(Math.toRadians(fovY) / 2.0);
+        float[] m = new float[16];
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1.0f;
+        m[14] = 2.0f * far * near / (near - far);
+        return m;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.ar.core.examples.java.helloar.Allocations;
+import com.google.ar.core.examples.java.helloar.content.Tile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Test;
+
+public class PickingServiceTest {
+    // Looks down -z from the origin with a 90 degree field of view, from 0.1 to 100.
+    private static final float[] PROJECTION = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, -100.1f / 99.9f, -1.0f,
+        0.0f, 0.0f, -20.0f / 99.9f, 0.0f,
+    };
+    // A unit square at z = -2, covering the centre of the screen.
+    private static final CollisionMesh SQUARE = new CollisionMesh(new float[] {
+        -0.5f, -0.5f, -2.0f,
+        0.5f, -0.5f, -2.0f,
+        0.5f, 0.5f, -2.0f,
+        -0.5f, 0.5f, -2.0f,
+    }, new int[] {0, 1, 2, 0, 2, 3});
+    private static final TriangleBvh SQUARE_BVH = new TriangleBvh(SQUARE);
+    private static final int WARM_UP_TAPS = 20000;
+    private static final int MEASURED_TAPS = 1000;
+
+    /** Counts the results, and remembers the thread they arrive on. */
+    private static class CountingListener implements PickingService.Listener {
+        volatile int mPicks;
+        volatile Tile mLastTile;
+        volatile Thread mThread;
+
+        @Override
+        public void onTilePicked(PickResult result) {
+            mLastTile = result.getTile();
+            mThread = Thread.currentThread();
+            mPicks++;
+        }
+    }
+
+    /** Runs deliveries on the worker thread, like a main looper that is always idle. */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /** Holds deliveries until the test runs them, like a busy main thread. */
+    private static class HeldExecutor implements Executor {
+        final List<Runnable> mHeld = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            mHeld.add(command);
+        }
+
+        synchronized int getHeldCount() {
+            return mHeld.size();
+        }
+
+        synchronized void runAll() {
+            for (Runnable command : mHeld) {
+                command.run();
+            }
+            mHeld.clear();
+        }
+    }
+
+    private final ScreenBounds mSquareBounds = new ScreenBounds();
+    private PickingService mService;
+
+    public PickingServiceTest() {
+        mSquareBounds.update(PROJECTION, SQUARE.getBounds());
+    }
+
+    @After
+    public void shutDown() {
+        if (mService != null) {
+            mService.shutdown();
+        }
+    }
+
+    @Test
+    public void submit_hitIsDelivered() {
+        CountingListener listener = new CountingListener();
+        mService = new PickingService(listener, DIRECT, 1, 1);
+        tap(0.0f, 0.0f);
+        waitForPicks(listener, 1);
+        assertSame(Tile.NEWS, listener.mLastTile);
+    }
+
+    @Test
+    public void obtainSnapshot_bothSnapshotsBusy_returnsNullUntilDelivered() {
+        CountingListener listener = new CountingListener();
+        HeldExecutor mainThread = new HeldExecutor();
+        mService = new PickingService(listener, mainThread, 1, 1);
+        tap(0.0f, 0.0f);
+        tap(0.0f, 0.0f);
+        while (mainThread.getHeldCount() < 2) {
+            Thread.yield();
+        }
+        assertNull(mService.obtainSnapshot());
+
+        mainThread.runAll();
+        assertEquals(2, listener.mPicks);
+        PickingSnapshot snapshot = mService.obtainSnapshot();
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.getTargetCount());
+        assertEquals(0, snapshot.getTouchCount());
+    }
+
+    @Test(timeout = 10000)
+    public void submit_miss_freesTheSnapshot() {
+        CountingListener listener = new CountingListener();
+        mService = new PickingService(listener, DIRECT, 1, 1);
+        for (int i = 0; i < 10; i++) {
+            tap(0.9f, 0.9f);
+        }
+        assertEquals(0, listener.mPicks);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addTouch_afterSubmit_throws() {
+        mService = new PickingService(new CountingListener(), new HeldExecutor(), 1, 1);
+        // A hit, so the held delivery keeps the snapshot from being recycled.
+        PickingSnapshot snapshot = mService.obtainSnapshot();
+        snapshot.addTarget(Tile.NEWS, PROJECTION, SQUARE, SQUARE_BVH, mSquareBounds);
+        snapshot.addTouch(0.0f, 0.0f);
+        mService.submit(snapshot);
+        snapshot.addTouch(0.0f, 0.0f);
+    }
+
+    @Test
+    public void tap_steadyState_allocatesNothingOnEitherThread() {
+        final CountingListener listener = new CountingListener();
+        mService = new PickingService(listener, DIRECT, 1, 1);
+        tapAndWait(listener, WARM_UP_TAPS);
+        Thread worker = listener.mThread;
+
+        long workerBefore = Allocations.allocatedBytes(worker);
+        long glThread = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                tapAndWait(listener, MEASURED_TAPS);
+            }
+        });
+        long workerBytes = Allocations.allocatedBytes(worker) - workerBefore;
+
+        assertEquals(0L, glThread);
+        assertEquals(0L, workerBytes);
+    }
+
+    /** Fills a snapshot the way the activity does, waiting for a free one. */
+    private void tap(float ndcX, float ndcY) {
+        PickingSnapshot snapshot = mService.obtainSnapshot();
+        while (snapshot == null) {
+            Thread.yield();
+            snapshot = mService.obtainSnapshot();
+        }
+        snapshot.addTarget(Tile.NEWS, PROJECTION, SQUARE, SQUARE_BVH, mSquareBounds);
+        snapshot.addTouch(ndcX, ndcY);
+        mService.submit(snapshot);
+    }
+
+    private void tapAndWait(CountingListener listener, int taps) {
+        int picks = listener.mPicks + taps;
+        for (int i = 0; i < taps; i++) {
+            tap(0.0f, 0.0f);
+        }
+        waitForPicks(listener, picks);
+    }
+
+    private static void waitForPicks(CountingListener listener, int picks) {
+        while (listener.mPicks < picks) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.ar.core.examples.java.helloar.Allocations;
+
+import org.junit.Test;
+
+public class ScreenSpaceHitTesterTest {
+    private static final int WARM_UP_TAPS = 20000;
+    private static final int MEASURED_TAPS = 1000;
+    private static final int GRID_SIZE = 16;
+
+    // Looks down -z from the origin with a 90 degree field of view; clip w is -z.
+    private static final float[] PROJECTION = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, -1.0f, -1.0f,
+        0.0f, 0.0f, -0.2f, 0.0f,
+    };
+
+    @Test
+    public void hitTest_pointOnMesh_hitsAtDepth() {
+        ScreenSpaceHitTester tester = new ScreenSpaceHitTester();
+
+        assertTrue(tester.hitTest(PROJECTION, createGrid(-2.0f), 0.1f, 0.1f));
+        assertEquals(2.0f, tester.getHitDepth(), 1e-4f);
+    }
+
+    @Test
+    public void hitTest_pointBesideMesh_misses() {
+        ScreenSpaceHitTester tester = new ScreenSpaceHitTester();
+
+        assertFalse(tester.hitTest(PROJECTION, createGrid(-2.0f), 0.9f, 0.9f));
+    }
+
+    @Test
+    public void hitTest_steadyState_allocatesNothing() {
+        final ScreenSpaceHitTester tester = new ScreenSpaceHitTester();
+        final CollisionMesh mesh = createGrid(-2.0f);
+        Runnable taps = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < MEASURED_TAPS; i++) {
+                    float ndc = (i % 100) / 50.0f - 1.0f;
+                    tester.hitTest(PROJECTION, mesh, ndc, -ndc);
+                }
+            }
+        };
+        // Grows the scratch buffer to the mesh and lets the JIT settle.
+        for (int i = 0; i < WARM_UP_TAPS / MEASURED_TAPS; i++) {
+            taps.run();
+        }
+
+        assertEquals(0, Allocations.measure(taps));
+    }
+
+    /** Returns a flat grid from -0.5 to 0.5 in x and y, at the given z. */
+    private static CollisionMesh createGrid(float z) {
+        int side = GRID_SIZE + 1;
+        float[] positions = new float[3 * side * side];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int i = 3 * (y * side + x);
+                positions[i] = (float) x / GRID_SIZE - 0.5f;
+                positions[i + 1] = (float) y / GRID_SIZE - 0.5f;
+                positions[i + 2] = z;
+            }
+        }
+        int[] indices = new int[6 * GRID_SIZE * GRID_SIZE];
+        int next = 0;
+        for (int y = 0; y < GRID_SIZE; y++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                int corner = y * side + x;
+                indices[next++] = corner;
+                indices[next++] = corner + 1;
+                indices[next++] = corner + side;
+                indices[next++] = corner + 1;
+                indices[next++] = corner + side + 1;
+                indices[next++] = corner + side;
+            }
+        }
+        return new CollisionMesh(positions, indices);
+    }
+}
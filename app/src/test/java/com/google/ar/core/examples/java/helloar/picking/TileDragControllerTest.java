@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TileDragControllerTest {
+    // Looks down -z from the origin with a 90 degree field of view, from 0.1 to 100; clip w is
+    // -z.
+    private static final float[] PROJECTION = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, -100.1f / 99.9f, -1.0f,
+        0.0f, 0.0f, -20.0f / 99.9f, 0.0f,
+    };
+
+    /** A unit square facing the camera, drawn with the board's matrix. */
+    private static class Square implements Pickable {
+        private final CollisionMesh mMesh;
+        private final TriangleBvh mBvh;
+        private final ScreenBounds mScreenBounds = new ScreenBounds();
+
+        Square(float z) {
+            mMesh = new CollisionMesh(new float[] {
+                -0.5f, -0.5f, z,
+                0.5f, -0.5f, z,
+                0.5f, 0.5f, z,
+                -0.5f, 0.5f, z,
+            }, new int[] {0, 1, 2, 0, 2, 3});
+            mBvh = new TriangleBvh(mMesh);
+            mScreenBounds.update(PROJECTION, mMesh.getBounds());
+        }
+
+        @Override
+        public float[] getModelViewProjectionMatrix() {
+            return PROJECTION;
+        }
+
+        @Override
+        public CollisionMesh getCollisionMesh() {
+            return mMesh;
+        }
+
+        @Override
+        public TriangleBvh getBvh() {
+            return mBvh;
+        }
+
+        @Override
+        public ScreenBounds getScreenBounds() {
+            return mScreenBounds;
+        }
+    }
+
+    @Test
+    public void begin_overlappingTiles_grabsTheClosest() {
+        TileDragController controller = new TileDragController(3);
+        Pickable[] tiles = {new Square(-4.0f), new Square(-2.0f), new Square(-3.0f)};
+
+        assertEquals(1, controller.begin(tiles, PROJECTION, 0.05f, 0.05f));
+    }
+
+    @Test
+    public void begin_overlappingTiles_grabsTheClosestInScreenSpace() {
+        TileDragController controller = new TileDragController(3);
+        controller.setHitTestMode(HitTestMode.SCREEN_SPACE);
+        Pickable[] tiles = {new Square(-4.0f), new Square(-3.0f), new Square(-2.0f)};
+
+        assertEquals(2, controller.begin(tiles, PROJECTION, 0.05f, 0.05f));
+    }
+
+    @Test
+    public void move_keepsTheGrabbedPointUnderTheTouch() {
+        TileDragController controller = new TileDragController(1);
+        Pickable[] tiles = {new Square(-2.0f)};
+        controller.begin(tiles, PROJECTION, 0.0f, 0.0f);
+
+        // At depth 2, a tenth of the half screen is 0.2 in board space.
+        controller.move(PROJECTION, 0.1f, 0.0f);
+
+        assertEquals(0.2f, controller.getOffsetX(0), 1e-4f);
+        assertEquals(0.0f, controller.getOffsetY(0), 1e-4f);
+    }
+
+    @Test
+    public void begin_besideEveryTile_grabsNothing() {
+        TileDragController controller = new TileDragController(1);
+
+        assertEquals(-1, controller.begin(new Pickable[] {new Square(-2.0f)}, PROJECTION,
+            0.9f, 0.9f));
+        assertEquals(-1, controller.getDraggedTile());
+    }
+}
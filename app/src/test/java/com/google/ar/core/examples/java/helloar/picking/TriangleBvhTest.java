@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.picking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TriangleBvhTest {
+    private static final int STRIP_LENGTH = 16;
+
+    @Test
+    public void raycast_obliqueRay_hitsAtDistance() {
+        TriangleBvh bvh = new TriangleBvh(createStrip());
+        RayHit hit = new RayHit();
+
+        assertTrue(bvh.raycast(new float[] {2.5f, 0.5f, 0.0f}, new float[] {0.25f, 0.0f, -1.0f},
+            hit));
+        assertEquals(2.0f, hit.getDistance(), 1e-5f);
+    }
+
+    @Test
+    public void raycast_axisAlignedRayOnInnerNodeBounds_hits() {
+        TriangleBvh bvh = new TriangleBvh(createStrip());
+        RayHit hit = new RayHit();
+
+        // x = 8 is where the root splits, so the origin lies on the bounds of both children.
+        assertTrue(bvh.raycast(new float[] {8.0f, 0.5f, 0.0f}, new float[] {0.0f, 0.0f, -1.0f},
+            hit));
+        assertEquals(2.0f, hit.getDistance(), 1e-5f);
+    }
+
+    @Test
+    public void raycast_axisAlignedRayOnOuterBounds_hits() {
+        TriangleBvh bvh = new TriangleBvh(createStrip());
+        RayHit hit = new RayHit();
+
+        assertTrue(bvh.raycast(new float[] {0.0f, 0.0f, 0.0f}, new float[] {-0.0f, 0.0f, -1.0f},
+            hit));
+        assertEquals(2.0f, hit.getDistance(), 1e-5f);
+    }
+
+    @Test
+    public void raycast_axisAlignedRayBesideBounds_misses() {
+        TriangleBvh bvh = new TriangleBvh(createStrip());
+
+        assertFalse(bvh.raycast(new float[] {8.0f, 1.5f, 0.0f}, new float[] {0.0f, 0.0f, -1.0f},
+            new RayHit()));
+    }
+
+    /** Returns a row of unit squares from x = 0 to STRIP_LENGTH, y = 0 to 1, at z = -2. */
+    private static CollisionMesh createStrip() {
+        float[] positions = new float[3 * 2 * (STRIP_LENGTH + 1)];
+        for (int x = 0; x <= STRIP_LENGTH; x++) {
+            for (int y = 0; y < 2; y++) {
+                int i = 3 * (2 * x + y);
+                positions[i] = x;
+                positions[i + 1] = y;
+                positions[i + 2] = -2.0f;
+            }
+        }
+        int[] indices = new int[6 * STRIP_LENGTH];
+        for (int x = 0; x < STRIP_LENGTH; x++) {
+            int corner = 2 * x;
+            indices[6 * x] = corner;
+            indices[6 * x + 1] = corner + 2;
+            indices[6 * x + 2] = corner + 1;
+            indices[6 * x + 3] = corner + 1;
+            indices[6 * x + 4] = corner + 2;
+            indices[6 * x + 5] = corner + 3;
+        }
+        return new CollisionMesh(positions, indices);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.ar.core.examples.java.helloar.picking.CollisionMesh;
+import com.google.ar.core.examples.java.helloar.picking.TriangleBvh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class AssetCacheTest {
+    private static final String QUAD_OBJ = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+        + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\nvn 0 0 1\n"
+        + "f 1/1/1 2/2/1 3/3/1\nf 1/1/1 3/3/1 4/4/1\n";
+
+    private static AssetCache.PreparedMesh prepareQuad(String collisionKey) throws IOException {
+        PackedMesh mesh = ObjStreamReader.read(
+            new ByteArrayInputStream(QUAD_OBJ.getBytes(StandardCharsets.US_ASCII)));
+        CollisionMesh collisionMesh = CollisionMesh.copyOf(mesh.getPositions(), mesh.getIndices());
+        float[] bounds = new float[6];
+        mesh.computeBounds(bounds);
+        return new AssetCache.PreparedMesh(mesh, bounds, collisionKey, collisionMesh,
+            new TriangleBvh(collisionMesh));
+    }
+
+    @Test
+    public void acquireMesh_keepsPickingGeometryForLaterRenderers() throws IOException {
+        AssetCache cache = new AssetCache();
+        AssetCache.PreparedMesh prepared = prepareQuad("Mesh");
+
+        AssetCache.MeshBuffers first = cache.acquireMesh("quad.obj", prepared);
+        AssetCache.MeshBuffers second = cache.acquireMesh("quad.obj", null);
+
+        assertSame(first, second);
+        assertSame(prepared.collisionMesh, second.collisionMesh);
+        assertSame(prepared.bvh, second.bvh);
+        assertSame(prepared.bounds, second.bounds);
+    }
+
+    @Test
+    public void containsMesh_matchesTheCollisionKey() throws IOException {
+        AssetCache cache = new AssetCache();
+        assertFalse(cache.containsMesh("quad.obj", "Mesh"));
+
+        cache.acquireMesh("quad.obj", prepareQuad("Mesh"));
+
+        assertTrue(cache.containsMesh("quad.obj", "Mesh"));
+        assertFalse(cache.containsMesh("quad.obj", "BoundingBox"));
+    }
+
+    @Test
+    public void containsMesh_falseAfterLastRelease() throws IOException {
+        AssetCache cache = new AssetCache();
+        cache.acquireMesh("quad.obj", prepareQuad("Mesh"));
+        cache.acquireMesh("quad.obj", null);
+
+        cache.releaseMesh("quad.obj");
+        assertTrue(cache.containsMesh("quad.obj", "Mesh"));
+        cache.releaseMesh("quad.obj");
+
+        assertFalse(cache.containsMesh("quad.obj", "Mesh"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void acquireMesh_withoutPreparedMesh_throwsIfNotUploaded() {
+        new AssetCache().acquireMesh("quad.obj", null);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class FrameArenaTest {
+    @Test
+    public void reset_handsOutTheSameArraysAgain() {
+        FrameArena arena = new FrameArena(2, 1);
+        float[] first = arena.matrix();
+        float[] second = arena.matrix();
+        float[] vector = arena.vector();
+
+        arena.reset();
+
+        assertSame(first, arena.matrix());
+        assertSame(second, arena.matrix());
+        assertSame(vector, arena.vector());
+    }
+
+    @Test
+    public void matrix_beyondCapacity_growsAndKeepsHandedOutArrays() {
+        FrameArena arena = new FrameArena(1, 1);
+        float[] first = arena.matrix();
+        float[] second = arena.matrix();
+
+        assertNotSame(first, second);
+        assertEquals(16, second.length);
+        assertEquals(2, arena.getMatrixCount());
+        arena.reset();
+        assertSame(first, arena.matrix());
+        assertSame(second, arena.matrix());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GlStateTrackerTest {
+    @Test
+    public void setVertexAttribArrays_afterInvalidate_onlyTouchesRequestedLocations() {
+        GlStateTracker tracker = new GlStateTracker();
+        tracker.beginFrame();
+
+        tracker.setVertexAttribArrays(GlStateTracker.attributeMask(0, 1, 2));
+
+        assertCalls(tracker, 3, 0);
+    }
+
+    @Test
+    public void setVertexAttribArrays_sameMask_isSkipped() {
+        GlStateTracker tracker = new GlStateTracker();
+        int mask = GlStateTracker.attributeMask(0, 1, 2);
+        tracker.setVertexAttribArrays(mask);
+        tracker.beginFrame();
+
+        tracker.setVertexAttribArrays(mask);
+
+        assertCalls(tracker, 0, 3);
+    }
+
+    @Test
+    public void setVertexAttribArrays_smallerMask_disablesOnlyWhatItEnabled() {
+        GlStateTracker tracker = new GlStateTracker();
+        tracker.setVertexAttribArrays(GlStateTracker.attributeMask(0, 1, 2));
+        tracker.beginFrame();
+
+        tracker.setVertexAttribArrays(GlStateTracker.attributeMask(0));
+
+        // Location 0 stays, 1 and 2 are disabled.
+        assertCalls(tracker, 2, 1);
+    }
+
+    @Test
+    public void setVertexAttribArrays_disabledMask_disablesUnknownLocationsOnce() {
+        GlStateTracker tracker = new GlStateTracker();
+        tracker.beginFrame();
+
+        tracker.setVertexAttribArrays(GlStateTracker.attributeMask(0),
+            GlStateTracker.attributeMask(4, 5));
+        tracker.setVertexAttribArrays(GlStateTracker.attributeMask(0),
+            GlStateTracker.attributeMask(4, 5));
+
+        assertCalls(tracker, 3, 3);
+    }
+
+    @Test
+    public void invalidate_forgetsEnabledArrays() {
+        GlStateTracker tracker = new GlStateTracker();
+        int mask = GlStateTracker.attributeMask(0, 1);
+        tracker.setVertexAttribArrays(mask);
+        tracker.invalidate();
+        tracker.beginFrame();
+
+        tracker.setVertexAttribArrays(mask);
+
+        assertCalls(tracker, 2, 0);
+    }
+
+    /** Ends the frame and checks the calls counted in it. */
+    private static void assertCalls(GlStateTracker tracker, int issued, int skipped) {
+        tracker.beginFrame();
+        assertEquals(issued, tracker.getIssuedCallCount());
+        assertEquals(skipped, tracker.getSkippedCallCount());
+    }
+}
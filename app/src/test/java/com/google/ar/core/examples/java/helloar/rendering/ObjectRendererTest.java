@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.Matrix;
+
+import com.google.ar.core.examples.java.helloar.TestContext;
+import com.google.ar.core.examples.java.helloar.picking.CollisionMesh;
+import com.google.ar.core.examples.java.helloar.picking.TriangleBvh;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ObjectRendererTest {
+    private static final String ASSETS = "src/main/assets/";
+    private static final float[] TRIANGLE_RATIOS = {0.5f, 0.2f, 0.05f};
+
+    // 60 degree vertical field of view, square viewport, from 0.1 to 100.
+    private static final float[] PROJECTION = {
+        1.7320508f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.7320508f, 0.0f, 0.0f,
+        0.0f, 0.0f, -100.1f / 99.9f, -1.0f,
+        0.0f, 0.0f, -20.0f / 99.9f, 0.0f,
+    };
+
+    private final TestContext mContext = new TestContext();
+    private final AssetCache mAssetCache = new AssetCache();
+    private final float[] mBounds = new float[6];
+    private final float[] mCameraView = new float[16];
+    private final float[] mModelMatrix = new float[16];
+    private ObjectRenderer mRenderer;
+
+    @Before
+    public void createRenderer() throws IOException {
+        PackedMesh mesh;
+        try (InputStream input = new FileInputStream(ASSETS + "andy.obj")) {
+            mesh = ObjStreamReader.read(input);
+        }
+        CollisionMesh collisionMesh = CollisionMesh.copyOf(mesh.getPositions(), mesh.getIndices());
+        mesh.computeBounds(mBounds);
+        mAssetCache.queryCapabilities();
+        mAssetCache.acquireMesh("andy.obj", new AssetCache.PreparedMesh(
+            mesh.withLevelsOfDetail(TRIANGLE_RATIOS), mBounds,
+            ObjectRenderer.CollisionShape.Mesh.name(), collisionMesh,
+            new TriangleBvh(collisionMesh)));
+        mAssetCache.putAtlasImage("andy.png", 1, new float[] {0.0f, 0.0f, 1.0f, 1.0f});
+
+        mRenderer = new ObjectRenderer(mAssetCache, "andy.obj", "andy.png");
+        mRenderer.prepare(mContext);
+        mRenderer.createOnGlThread(mContext);
+        Matrix.setIdentityM(mCameraView, 0);
+    }
+
+    @Test
+    public void selectLevel_shrinking_dropsALevelOncePastTheHysteresis() {
+        float threshold = ObjectRenderer.LOD_SCREEN_SIZES[0];
+        float hysteresis = ObjectRenderer.LOD_HYSTERESIS;
+
+        assertEquals(0, drawAtScreenSize(0, 1.0f));
+        assertEquals(0, drawAtScreenSize(0, threshold * (1.0f - 0.5f * hysteresis)));
+        assertEquals(1, drawAtScreenSize(0, threshold * (1.0f - 2.0f * hysteresis)));
+    }
+
+    @Test
+    public void selectLevel_growing_raisesALevelOncePastTheHysteresis() {
+        float threshold = ObjectRenderer.LOD_SCREEN_SIZES[0];
+        float hysteresis = ObjectRenderer.LOD_HYSTERESIS;
+        assertEquals(1, drawAtScreenSize(0, threshold * (1.0f - 2.0f * hysteresis)));
+
+        // Back just above the threshold, within the hysteresis, the level stays.
+        assertEquals(1, drawAtScreenSize(0, threshold * (1.0f + 0.5f * hysteresis)));
+        assertEquals(0, drawAtScreenSize(0, threshold * (1.0f + 2.0f * hysteresis)));
+    }
+
+    @Test
+    public void selectLevel_farAway_skipsToTheLastLevel() {
+        assertEquals(0, drawAtScreenSize(0, 1.0f));
+
+        assertEquals(TRIANGLE_RATIOS.length, drawAtScreenSize(0, 0.01f));
+    }
+
+    @Test
+    public void selectLevel_cameraInsideTheBounds_drawsTheFullMesh() {
+        assertEquals(TRIANGLE_RATIOS.length, drawAtScreenSize(0, 0.01f));
+
+        assertEquals(0, drawAtDistance(0, 0.0f));
+    }
+
+    @Test
+    public void selectLevel_keepsTheLevelOfEveryInstance() {
+        float threshold = ObjectRenderer.LOD_SCREEN_SIZES[0];
+        float hysteresis = ObjectRenderer.LOD_HYSTERESIS;
+        float withinHysteresis = threshold * (1.0f - 0.5f * hysteresis);
+
+        assertEquals(1, drawAtScreenSize(0, threshold * (1.0f - 2.0f * hysteresis)));
+        assertEquals(0, drawAtScreenSize(1, withinHysteresis));
+        assertEquals(1, drawAtScreenSize(0, withinHysteresis));
+    }
+
+    /**
+     * Draws an instance with its bounding sphere covering a share of the viewport height, and
+     * returns the level it was drawn with.
+     */
+    private int drawAtScreenSize(int instance, float screenSize) {
+        return drawAtDistance(instance, boundsRadius() * PROJECTION[5] / screenSize);
+    }
+
+    /** Draws an instance with its bounds centred in front of the camera. */
+    private int drawAtDistance(int instance, float distance) {
+        Matrix.setIdentityM(mModelMatrix, 0);
+        mModelMatrix[12] = -0.5f * (mBounds[0] + mBounds[3]);
+        mModelMatrix[13] = -0.5f * (mBounds[1] + mBounds[4]);
+        mModelMatrix[14] = -0.5f * (mBounds[2] + mBounds[5]) - distance;
+        mRenderer.draw(mModelMatrix, instance, mCameraView, PROJECTION, 1.0f);
+        return mRenderer.getLevel(instance);
+    }
+
+    private float boundsRadius() {
+        float dx = mBounds[3] - mBounds[0];
+        float dy = mBounds[4] - mBounds[1];
+        float dz = mBounds[5] - mBounds[2];
+        return 0.5f * (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class PackedMeshTest {
+    private static final String ASSETS = "src/main/assets/";
+    // The ratios ObjectRenderer asks for.
+    private static final float[] TRIANGLE_RATIOS = {0.5f, 0.2f, 0.05f};
+    private static final String QUAD_OBJ = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+        + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\nvn 0 0 1\n"
+        + "f 1/1/1 2/2/1 3/3/1\nf 1/1/1 3/3/1 4/4/1\n";
+
+    private static PackedMesh readAsset(String objAssetName) throws IOException {
+        try (InputStream input = new FileInputStream(ASSETS + objAssetName)) {
+            return ObjStreamReader.read(input);
+        }
+    }
+
+    @Test
+    public void withLevelsOfDetail_andy_reachesEveryTarget() throws IOException {
+        PackedMesh mesh = readAsset("andy.obj");
+        int triangleCount = mesh.getIndexCount() / 3;
+
+        PackedMesh simplified = mesh.withLevelsOfDetail(TRIANGLE_RATIOS);
+
+        // Andy's texture seams run all over the body, so they must not hold collapses back.
+        assertEquals(TRIANGLE_RATIOS.length + 1, simplified.getLevelCount());
+        assertEquals(triangleCount, simplified.getLevelTriangleCount(0));
+        for (int level = 1; level < simplified.getLevelCount(); level++) {
+            int target = (int) (TRIANGLE_RATIOS[level - 1] * triangleCount);
+            assertTrue("level " + level + " has " + simplified.getLevelTriangleCount(level),
+                simplified.getLevelTriangleCount(level) <= target * 11 / 10);
+        }
+    }
+
+    @Test
+    public void withLevelsOfDetail_andy_keepsEveryTriangleOnOneSideOfASeam() throws IOException {
+        PackedMesh mesh = readAsset("andy.obj");
+        PackedMesh simplified = mesh.withLevelsOfDetail(TRIANGLE_RATIOS);
+
+        // The vertices of the full mesh fall apart into texture charts at the seams. A triangle
+        // joining two charts would stretch the texture across the seam.
+        int[] charts = new int[mesh.getVertexCount()];
+        for (int v = 0; v < charts.length; v++) {
+            charts[v] = v;
+        }
+        ShortBuffer indices = simplified.getIndices();
+        int fullIndexCount = simplified.getPartIndexCount(0);
+        for (int i = 0; i < fullIndexCount; i += 3) {
+            union(charts, indices.get(i) & 0xffff, indices.get(i + 1) & 0xffff);
+            union(charts, indices.get(i) & 0xffff, indices.get(i + 2) & 0xffff);
+        }
+
+        assertEquals(mesh.getVertexCount(), simplified.getVertexCount());
+        for (int part = 1; part < simplified.getPartCount(); part++) {
+            int first = simplified.getPartFirstIndex(part);
+            for (int i = first; i < first + simplified.getPartIndexCount(part); i += 3) {
+                int chart = find(charts, indices.get(i) & 0xffff);
+                assertEquals(chart, find(charts, indices.get(i + 1) & 0xffff));
+                assertEquals(chart, find(charts, indices.get(i + 2) & 0xffff));
+            }
+        }
+    }
+
+    @Test
+    public void withLevelsOfDetail_fewTriangles_returnsTheMesh() throws IOException {
+        PackedMesh mesh = ObjStreamReader.read(
+            new ByteArrayInputStream(QUAD_OBJ.getBytes(StandardCharsets.US_ASCII)));
+
+        assertSame(mesh, mesh.withLevelsOfDetail(TRIANGLE_RATIOS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void withLevelsOfDetail_twice_throws() throws IOException {
+        readAsset("andy.obj").withLevelsOfDetail(TRIANGLE_RATIOS)
+            .withLevelsOfDetail(TRIANGLE_RATIOS);
+    }
+
+    private static int find(int[] parents, int v) {
+        while (parents[v] != v) {
+            v = parents[v];
+        }
+        return v;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        parents[find(parents, a)] = find(parents, b);
+    }
+}
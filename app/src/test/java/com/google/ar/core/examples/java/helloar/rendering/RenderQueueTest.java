@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.helloar.rendering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class RenderQueueTest {
+    private static final float[] IDENTITY = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, 1.0f, 0.0f,
+        0.0f, 0.0f, 0.0f, 1.0f,
+    };
+
+    /** Records the order it is drawn in. */
+    private static class RecordingDrawable implements RenderQueue.Drawable {
+        final String mName;
+        final List<String> mLog;
+        float[] mLastModelMatrix;
+
+        RecordingDrawable(String name, List<String> log) {
+            mName = name;
+            mLog = log;
+        }
+
+        @Override
+        public void draw(float[] modelMatrix, int instance, float[] cameraView,
+                float[] cameraPerspective, float lightIntensity) {
+            mLog.add(mName + instance);
+            mLastModelMatrix = modelMatrix == null ? null : modelMatrix.clone();
+        }
+    }
+
+    @Test
+    public void execute_sortsByLayerThenOpaqueFrontToBackThenBlendedBackToFront() {
+        List<String> log = new ArrayList<>();
+        RenderQueue queue = new RenderQueue();
+        queue.submit(RenderQueue.blendedKey(RenderQueue.LAYER_BLENDED, 1.0f, 1, 0),
+            new RecordingDrawable("blendedNear", log), null);
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, 5.0f, 1, 0),
+            new RecordingDrawable("opaqueFar", log), null);
+        queue.submit(RenderQueue.blendedKey(RenderQueue.LAYER_BLENDED, 5.0f, 1, 0),
+            new RecordingDrawable("blendedFar", log), null);
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_BACKGROUND, 0.0f, 2, 0),
+            new RecordingDrawable("background", log), null);
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, 1.0f, 1, 0),
+            new RecordingDrawable("opaqueNear", log), null);
+
+        queue.execute(IDENTITY, IDENTITY, 1.0f);
+
+        assertEquals(5, queue.getLastExecutedCount());
+        assertEquals("[background0, opaqueNear0, opaqueFar0, blendedFar0, blendedNear0]",
+            log.toString());
+    }
+
+    @Test
+    public void execute_equalKeys_keepSubmissionOrderAndModelMatrices() {
+        List<String> log = new ArrayList<>();
+        RenderQueue queue = new RenderQueue();
+        long key = RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, 2.0f, 3, 4);
+        float[] translated = IDENTITY.clone();
+        translated[12] = 7.0f;
+        RecordingDrawable first = new RecordingDrawable("first", log);
+        RecordingDrawable second = new RecordingDrawable("second", log);
+        queue.submit(key, first, translated);
+        // The queue copies the matrix, so the caller may reuse it right away.
+        translated[12] = 0.0f;
+        queue.submit(key, second, null);
+
+        queue.execute(IDENTITY, IDENTITY, 1.0f);
+
+        assertEquals("[first0, second0]", log.toString());
+        assertEquals(7.0f, first.mLastModelMatrix[12], 0.0f);
+        assertNull(second.mLastModelMatrix);
+        assertArrayEquals(IDENTITY, translated, 0.0f);
+    }
+
+    @Test
+    public void execute_handsEachItemItsInstance() {
+        List<String> log = new ArrayList<>();
+        RenderQueue queue = new RenderQueue();
+        RecordingDrawable board = new RecordingDrawable("board", log);
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, 3.0f, 1, 0), board,
+            IDENTITY, 2);
+        queue.submit(RenderQueue.opaqueKey(RenderQueue.LAYER_OPAQUE, 1.0f, 1, 0), board,
+            IDENTITY, 5);
+
+        queue.execute(IDENTITY, IDENTITY, 1.0f);
+
+        assertEquals("[board5, board2]", log.toString());
+    }
+}